@@ -0,0 +1,80 @@
+package com.example.api;
+
+import com.example.api.request.BookRequestDTO;
+import com.example.api.response.BookResponseDTO;
+import com.example.model.Book;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.jeasy.random.EasyRandom;
+import org.jeasy.random.EasyRandomParameters;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping between entities and DTOs, and JSON serialization of responses, as done on every request.
+ * Books have 1-5 authors and categories each.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BookMappingBenchmark {
+
+    @Param({ "1", "50", "500" })
+    private int booksCount;
+
+    private List<Book> books;
+    private Book book;
+    private BookRequestDTO bookRequest;
+    private List<BookResponseDTO> booksResponse;
+
+    private ObjectMapper objectMapper;
+
+    @Setup
+    public void setUp() {
+
+        var easyRandom = new EasyRandom(new EasyRandomParameters()
+                .seed(42)
+                .collectionSizeRange(1, 5)
+                .stringLengthRange(5, 40)
+                .randomizationDepth(2));
+
+        books = easyRandom.objects(Book.class, booksCount).toList();
+        book = books.getFirst();
+        bookRequest = easyRandom.nextObject(BookRequestDTO.class);
+        booksResponse = BookResponseDTO.fromBooks(books);
+
+        // Configured the same way as the one of Spring Boot (dates as strings, java.time module)
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    }
+
+    @Benchmark
+    public BookResponseDTO fromBook() {
+        return BookResponseDTO.fromBook(book);
+    }
+
+    @Benchmark
+    public List<BookResponseDTO> fromBooks() {
+        return BookResponseDTO.fromBooks(books);
+    }
+
+    @Benchmark
+    public Book toBook() {
+        return bookRequest.toBook();
+    }
+
+    @Benchmark
+    public byte[] writeBooksResponseAsJson() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(booksResponse);
+    }
+
+    @Benchmark
+    public byte[] mapAndWriteBooksAsJson() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(BookResponseDTO.fromBooks(books));
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.controller;
+
+import com.example.BookTrackerAPIApplication;
+import com.example.model.Author;
+import com.example.model.Book;
+import com.example.model.Category;
+import com.example.repository.BookRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Load test of the read endpoints with 2000 concurrent clients, on platform threads (Tomcat pool of 200 threads)
+ * and on virtual threads (with the database access limited to the connection pool of 10).
+ * Runs against embedded H2 (configuration of the tests), each client waits for its response before sending the next request.
+ * Throughput is reported in requests per second of all the clients together.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+@Threads(BookControllerLoadBenchmark.CLIENTS)
+public class BookControllerLoadBenchmark {
+
+    static final int CLIENTS = 2_000;
+
+    private static final int BOOKS = 1_000;
+    private static final int AUTHORS = 100;
+
+    @Param({ "false", "true" })
+    public boolean virtualThreads;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient httpClient;
+    private String baseURI;
+
+    @Setup
+    public void setUp() {
+
+        context = new SpringApplicationBuilder(BookTrackerAPIApplication.class)
+                .run("--server.port=0", "--spring.jpa.show-sql=false", "--logging.level.root=WARN",
+                        "--spring.threads.virtual.enabled=" + virtualThreads,
+                        "--spring.datasource.hikari.maximum-pool-size=10",
+                        "--server.tomcat.max-connections=" + (CLIENTS * 2));
+
+        context.getBean(BookRepository.class).saveAllCascading(IntStream.range(0, BOOKS)
+                .mapToObj(this::newBook)
+                .toList());
+
+        baseURI = "http://localhost:" + context.getEnvironment().getProperty("local.server.port") + "/api/v1/books";
+        httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(30))
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        httpClient.close();
+        context.close();
+    }
+
+    @Benchmark
+    public int getAllBooks() throws IOException, InterruptedException {
+        return send(baseURI + "?size=20");
+    }
+
+    @Benchmark
+    public int getBooksByAuthor() throws IOException, InterruptedException {
+        return send(baseURI + "/author/author-" + ThreadLocalRandom.current().nextInt(AUTHORS));
+    }
+
+    private int send(String uri) throws IOException, InterruptedException {
+        var request = HttpRequest.newBuilder(URI.create(uri)).GET().build();
+        var response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Unexpected status " + response.statusCode() + " of " + uri);
+        }
+        return response.statusCode();
+    }
+
+    private Book newBook(int i) {
+
+        var book = new Book();
+        book.setTitle("book-" + i);
+        book.setPublishedAt(LocalDate.of(2000, 1, 1).plusDays(i));
+        book.setTotalPages(100 + i);
+        book.setAddedAt(LocalDateTime.now());
+        book.setNew(true);
+
+        book.setAuthors(new HashSet<>(Set.of(new Author(null, "author-" + (i % AUTHORS), new HashSet<>()))));
+        book.setCategories(new HashSet<>(Set.of(new Category(null, "category-" + (i % 10), new HashSet<>()))));
+
+        return book;
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.controller;
+
+import com.example.BookTrackerAPIApplication;
+import com.example.model.Author;
+import com.example.model.Book;
+import com.example.model.Category;
+import com.example.repository.BookRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Export of the whole catalog against embedded H2 (configuration of the tests): the time to the first byte of the response
+ * and the time of the whole response. Run it with "-prof gc" to see that the allocations don't hold the catalog in memory,
+ * and with a larger BOOKS to see that the first byte doesn't depend on the size of the catalog.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class BookExportBenchmark {
+
+    private static final int BOOKS = 50_000;
+
+    @Param({ "ndjson", "csv" })
+    public String format;
+
+    @Param({ "false", "true" })
+    public boolean gzip;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient httpClient;
+    private HttpRequest request;
+    private InputStream body;
+
+    @Setup
+    public void setUp() {
+
+        context = new SpringApplicationBuilder(BookTrackerAPIApplication.class)
+                .run("--server.port=0", "--spring.jpa.show-sql=false", "--logging.level.root=WARN");
+
+        context.getBean(BookRepository.class).saveAllCascading(IntStream.range(0, BOOKS)
+                .mapToObj(this::newBook)
+                .toList());
+
+        var uri = "http://localhost:" + context.getEnvironment().getProperty("local.server.port")
+                + "/api/v1/books/export?format=" + format;
+        var requestBuilder = HttpRequest.newBuilder(URI.create(uri)).GET();
+        if (gzip) {
+            requestBuilder.header("Accept-Encoding", "gzip");
+        }
+        request = requestBuilder.build();
+        httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        httpClient.close();
+        context.close();
+    }
+
+    @Benchmark
+    public int timeToFirstByte() throws IOException, InterruptedException {
+        body = send();
+        return body.read();
+    }
+
+    // The rest of the response is read outside the measurement, so the next export doesn't compete with this one
+    @TearDown(Level.Invocation)
+    public void readRestOfBody() throws IOException {
+        if (body != null) {
+            try (var rest = body) {
+                rest.transferTo(OutputStream.nullOutputStream());
+            }
+            body = null;
+        }
+    }
+
+    @Benchmark
+    public long wholeExport() throws IOException, InterruptedException {
+        try (var body = send()) {
+            return body.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+
+    private InputStream send() throws IOException, InterruptedException {
+        var response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        if (response.statusCode() != 200) {
+            response.body().close();
+            throw new IllegalStateException("Unexpected status " + response.statusCode() + " of " + request.uri());
+        }
+        return response.body();
+    }
+
+    private Book newBook(int i) {
+
+        var book = new Book();
+        book.setTitle("book-" + i);
+        book.setPublishedAt(LocalDate.of(2000, 1, 1).plusDays(i % 9_000));
+        book.setTotalPages(100 + i % 900);
+        book.setAddedAt(LocalDateTime.now());
+        book.setNew(true);
+
+        book.setAuthors(new HashSet<>(Set.of(new Author(null, "author-" + (i % 1_000), new HashSet<>()))));
+        book.setCategories(new HashSet<>(Set.of(new Category(null, "category-" + (i % 20), new HashSet<>()))));
+
+        return book;
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.repository;
+
+import com.example.BookTrackerAPIApplication;
+import com.example.model.Author;
+import com.example.model.Book;
+import com.example.model.Category;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Pages of the book queries (keys of a page) against embedded H2 (configuration of the tests).
+ * H2 plans say nothing about the PostgreSQL ones, which the indexes are made for, those are checked by BookQueryPlanPostgresTest.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class BookQueryBenchmark {
+
+    private static final int BOOKS = 20_000;
+    private static final int AUTHORS = 200;
+    private static final int CATEGORIES = 20;
+    private static final int PAGE_SIZE = 20;
+
+    private static final LocalDate PUBLISHED_AT_START = LocalDate.of(2000, 1, 1);
+    private static final LocalDateTime ADDED_AT_START = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    // Filter name -> filter, each one matches a small part of the books
+    private static final Map<String, Specification<Book>> FILTERS = Map.of(
+            "publishedAt", BookSpecifications.publishedBetween(PUBLISHED_AT_START.plusDays(1_000), PUBLISHED_AT_START.plusDays(1_365)),
+            "totalPages", BookSpecifications.totalPagesBetween(100, 120),
+            "addedAt", BookSpecifications.addedBetween(ADDED_AT_START.plusMinutes(5_000), null),
+            "author", BookSpecifications.hasAuthor("author-7"),
+            "category", BookSpecifications.hasCategory("category-3"));
+
+    @Param({ "publishedAt", "totalPages", "addedAt", "author", "category",
+             "publishedAt+author", "totalPages+category", "publishedAt+totalPages+addedAt+author+category" })
+    public String filters;
+
+    @Param({ "id", "title,desc", "publishedAt" })
+    public String sort;
+
+    private ConfigurableApplicationContext context;
+    private BookRepository bookRepository;
+
+    private Specification<Book> filter;
+    private BookSort bookSort;
+    private boolean descending;
+
+    @Setup
+    public void setUp() {
+
+        context = new SpringApplicationBuilder(BookTrackerAPIApplication.class)
+                .run("--server.port=0", "--spring.jpa.show-sql=false", "--logging.level.root=WARN");
+        bookRepository = context.getBean(BookRepository.class);
+
+        bookRepository.saveAllCascading(IntStream.range(0, BOOKS)
+                .mapToObj(this::newBook)
+                .toList());
+
+        filter = filterOf(filters);
+        var sortParts = sort.split(",");
+        bookSort = BookSort.ofField(sortParts[0]);
+        descending = sortParts.length == 2;
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<BookSortKey> findKeys() {
+        return bookRepository.findKeys(filter, bookSort, descending, null, PAGE_SIZE + 1);
+    }
+
+    private static Specification<Book> filterOf(String filterNames) {
+        if (filterNames.isEmpty()) {
+            return null;
+        }
+        return Specification.allOf(Arrays.stream(filterNames.split("\\+"))
+                .map(FILTERS::get)
+                .toList());
+    }
+
+    private Book newBook(int i) {
+
+        var book = new Book();
+        book.setTitle("book-" + i);
+        book.setPublishedAt(PUBLISHED_AT_START.plusDays(i % 9_000));
+        book.setTotalPages(1 + (i * 7) % 1_000);
+        book.setAddedAt(ADDED_AT_START.plusMinutes(i));
+        book.setNew(true);
+
+        book.setAuthors(new HashSet<>(Set.of(new Author(null, "author-" + (i % AUTHORS), new HashSet<>()))));
+        book.setCategories(new HashSet<>(Set.of(new Category(null, "category-" + (i % CATEGORIES), new HashSet<>()))));
+
+        return book;
+    }
+}
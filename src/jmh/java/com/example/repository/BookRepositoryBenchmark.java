@@ -0,0 +1,90 @@
+package com.example.repository;
+
+import com.example.BookTrackerAPIApplication;
+import com.example.model.Author;
+import com.example.model.Book;
+import com.example.model.Category;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Saving of a new book with its authors and categories against embedded H2 (configuration of the tests).
+ * Names are picked from a fixed pool, so most of them exist already, like in a catalog which is filled for a while.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BookRepositoryBenchmark {
+
+    private static final int NAMES_POOL_SIZE = 1_000;
+    private static final int IMPORT_SIZE = 1_000;
+
+    private ConfigurableApplicationContext context;
+    private BookRepository bookRepository;
+
+    private final AtomicLong titles = new AtomicLong();
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(BookTrackerAPIApplication.class)
+                .run("--server.port=0", "--spring.jpa.show-sql=false", "--logging.level.root=WARN");
+        bookRepository = context.getBean(BookRepository.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Book saveCascading() {
+        return bookRepository.saveCascading(newBook());
+    }
+
+    // Time per book of a bulk import
+    @Benchmark
+    @OperationsPerInvocation(IMPORT_SIZE)
+    public List<Book> saveAllCascading() {
+        var books = new ArrayList<Book>(IMPORT_SIZE);
+        for (int i = 0; i < IMPORT_SIZE; i++) {
+            books.add(newBook());
+        }
+        return bookRepository.saveAllCascading(books);
+    }
+
+    private Book newBook() {
+
+        var random = ThreadLocalRandom.current();
+
+        var book = new Book();
+        book.setTitle("book-" + titles.incrementAndGet());
+        book.setPublishedAt(LocalDate.of(2000, 1, 1).plusDays(random.nextInt(9_000)));
+        book.setTotalPages(1 + random.nextInt(1_000));
+        book.setAddedAt(LocalDateTime.now());
+        book.setNew(true);
+
+        book.setAuthors(IntStream.range(0, 3)
+                .mapToObj(i -> new Author(null, "author-" + random.nextInt(NAMES_POOL_SIZE), new HashSet<>()))
+                .collect(Collectors.toSet()));
+        book.setCategories(IntStream.range(0, 2)
+                .mapToObj(i -> new Category(null, "category-" + random.nextInt(NAMES_POOL_SIZE), new HashSet<>()))
+                .collect(Collectors.toSet()));
+
+        return book;
+    }
+}
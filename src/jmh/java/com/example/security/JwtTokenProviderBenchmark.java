@@ -0,0 +1,87 @@
+package com.example.security;
+
+import com.example.model.Role;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request cost of token verification.
+ * "newParserPerCall" reproduces how every request was verified before the parser, key and verified-token cache were reused.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtTokenProviderBenchmark {
+
+    private static final String SECRET_KEY = "benchmarkKey-benchmarkKey-benchmarkKey";
+
+    private JwtTokenProvider jwtTokenProvider;
+    private JwtParser jwtParser;
+    private String encodedSecretKey;
+    private String token;
+
+    @Setup
+    public void setUp() {
+
+        UserDetailsService userDetailsService = username -> {
+            throw new UnsupportedOperationException("Stateless mode must not load users");
+        };
+
+        jwtTokenProvider = new JwtTokenProvider(userDetailsService);
+        ReflectionTestUtils.setField(jwtTokenProvider, "requestHeader", "authorization");
+        ReflectionTestUtils.setField(jwtTokenProvider, "secretKey", SECRET_KEY);
+        ReflectionTestUtils.setField(jwtTokenProvider, "validityInSeconds", 3600L);
+        ReflectionTestUtils.setField(jwtTokenProvider, "stateless", true);
+        ReflectionTestUtils.setField(jwtTokenProvider, "tokenVersion", 1);
+        ReflectionTestUtils.setField(jwtTokenProvider, "verifiedTokensCacheSize", 10_000L);
+        ReflectionTestUtils.invokeMethod(jwtTokenProvider, "init");
+
+        encodedSecretKey = Base64.getEncoder().encodeToString(SECRET_KEY.getBytes());
+        jwtParser = Jwts.parser().verifyWith(Keys.hmacShaKeyFor(encodedSecretKey.getBytes())).build();
+
+        token = jwtTokenProvider.createToken("admin", List.of(Role.ADMIN));
+    }
+
+    @Benchmark
+    public Claims parseTokenWithNewParserPerCall() {
+        var signingKey = Keys.hmacShaKeyFor(encodedSecretKey.getBytes());
+        return Jwts.parser().verifyWith(signingKey).build().parseSignedClaims(token).getPayload();
+    }
+
+    @Benchmark
+    public Claims parseTokenWithSharedParser() {
+        return jwtParser.parseSignedClaims(token).getPayload();
+    }
+
+    @Benchmark
+    public Claims parseTokenWithVerifiedTokensCache() {
+        return jwtTokenProvider.parseToken(token);
+    }
+
+    @Benchmark
+    public boolean validateToken() {
+        return jwtTokenProvider.validateToken(token);
+    }
+
+    @Benchmark
+    public Object authenticateRequest() {
+        return jwtTokenProvider.getAuthentication(jwtTokenProvider.parseToken(token));
+    }
+
+    @Benchmark
+    public String createToken() {
+        return jwtTokenProvider.createToken("admin", List.of(Role.ADMIN));
+    }
+}
@@ -0,0 +1,129 @@
+-- Query plans and latencies of the join tables before and after V5__Add_Join_Tables_Keys.sql.
+-- Runs on a generated catalog in a scratch schema inside one transaction, which is rolled back at the end,
+-- so it is repeatable and leaves the database untouched:
+--
+--   psql -h localhost -U postgres -d book-tracker-api -f src/jmh/sql/join-tables-keys.sql > target/join-tables-keys.txt
+--
+-- Catalog size can be changed with: -v books=1000000 -v authors=200000 -v categories=2000
+
+\set ON_ERROR_STOP on
+\if :{?books}
+\else
+    \set books 200000
+\endif
+\if :{?authors}
+\else
+    \set authors 50000
+\endif
+\if :{?categories}
+\else
+    \set categories 1000
+\endif
+
+BEGIN;
+
+CREATE SCHEMA join_tables_benchmark;
+SET LOCAL search_path TO join_tables_benchmark;
+
+-- Tables as V1 creates them: join tables have foreign keys only
+CREATE TABLE authors (id BIGINT PRIMARY KEY, name VARCHAR(255) NOT NULL UNIQUE);
+CREATE TABLE categories (id INTEGER PRIMARY KEY, name VARCHAR(500) NOT NULL UNIQUE);
+CREATE TABLE books (id BIGINT PRIMARY KEY, title VARCHAR(500) NOT NULL, published_at DATE NOT NULL,
+                    total_pages INTEGER NOT NULL, added_at TIMESTAMP(6) NOT NULL);
+CREATE TABLE books_authors (book_id BIGINT NOT NULL REFERENCES books, author_id BIGINT NOT NULL REFERENCES authors);
+CREATE TABLE books_categories (book_id BIGINT NOT NULL REFERENCES books, category_id INTEGER NOT NULL REFERENCES categories);
+
+INSERT INTO authors SELECT i, 'author-' || i FROM generate_series(1, :authors) i;
+INSERT INTO categories SELECT i, 'category-' || i FROM generate_series(1, :categories) i;
+INSERT INTO books SELECT i, 'book-' || i, DATE '1950-01-01' + (i % 25000), 100 + i % 900, now()
+                  FROM generate_series(1, :books) i;
+
+-- 3 authors and 2 categories per book
+INSERT INTO books_authors SELECT i, 1 + (i * k) % :authors FROM generate_series(1, :books) i, generate_series(1, 3) k;
+INSERT INTO books_categories SELECT i, 1 + (i * k * 7) % :categories FROM generate_series(1, :books) i, generate_series(1, 2) k;
+
+-- Some duplicate pairs, as nothing prevented them before
+INSERT INTO books_authors SELECT book_id, author_id FROM books_authors WHERE book_id % 100 = 0;
+INSERT INTO books_categories SELECT book_id, category_id FROM books_categories WHERE book_id % 100 = 0;
+
+ANALYZE;
+
+\timing on
+
+\echo '==================== BEFORE ===================='
+
+\echo '--- Books of an author (AuthorService.getBooksByAuthorName)'
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT b.* FROM authors a
+    JOIN books_authors ba ON ba.author_id = a.id
+    JOIN books b ON b.id = ba.book_id
+WHERE a.name = 'author-4242';
+
+\echo '--- Books of a category (CategoryService.getBooksByCategoryName)'
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT b.* FROM categories c
+    JOIN books_categories bc ON bc.category_id = c.id
+    JOIN books b ON b.id = bc.book_id
+WHERE c.name = 'category-42';
+
+\echo '--- Authors and categories of a page of books (BookRepositoryCustomImpl.findAllWithAssociationsByIdIn)'
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT ba.book_id, a.* FROM books_authors ba JOIN authors a ON a.id = ba.author_id
+WHERE ba.book_id BETWEEN 100001 AND 100050;
+
+\echo '--- Deleting join rows of a book (BookService.deleteById)'
+SAVEPOINT before_delete;
+EXPLAIN (ANALYZE, BUFFERS) DELETE FROM books_authors WHERE book_id = 4242;
+EXPLAIN (ANALYZE, BUFFERS) DELETE FROM books_categories WHERE book_id = 4242;
+ROLLBACK TO SAVEPOINT before_delete;
+
+\timing off
+
+-- The migration itself, timed
+\echo '==================== MIGRATION ===================='
+\timing on
+\ir ../../main/resources/db/migration/V5__Add_Join_Tables_Keys.sql
+\timing off
+
+ANALYZE books_authors;
+ANALYZE books_categories;
+
+\timing on
+
+\echo '==================== AFTER ===================='
+
+\echo '--- Books of an author (AuthorService.getBooksByAuthorName)'
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT b.* FROM authors a
+    JOIN books_authors ba ON ba.author_id = a.id
+    JOIN books b ON b.id = ba.book_id
+WHERE a.name = 'author-4242';
+
+\echo '--- Books of a category (CategoryService.getBooksByCategoryName)'
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT b.* FROM categories c
+    JOIN books_categories bc ON bc.category_id = c.id
+    JOIN books b ON b.id = bc.book_id
+WHERE c.name = 'category-42';
+
+\echo '--- Authors and categories of a page of books (BookRepositoryCustomImpl.findAllWithAssociationsByIdIn)'
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT ba.book_id, a.* FROM books_authors ba JOIN authors a ON a.id = ba.author_id
+WHERE ba.book_id BETWEEN 100001 AND 100050;
+
+\echo '--- Deleting join rows of a book (BookService.deleteById)'
+SAVEPOINT before_delete;
+EXPLAIN (ANALYZE, BUFFERS) DELETE FROM books_authors WHERE book_id = 4242;
+EXPLAIN (ANALYZE, BUFFERS) DELETE FROM books_categories WHERE book_id = 4242;
+ROLLBACK TO SAVEPOINT before_delete;
+
+\echo '--- Duplicate pairs are rejected now'
+SAVEPOINT before_duplicate;
+\set ON_ERROR_STOP off
+INSERT INTO books_authors (book_id, author_id) SELECT book_id, author_id FROM books_authors LIMIT 1;
+\set ON_ERROR_STOP on
+ROLLBACK TO SAVEPOINT before_duplicate;
+
+\timing off
+
+ROLLBACK;
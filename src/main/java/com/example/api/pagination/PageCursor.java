@@ -0,0 +1,63 @@
+package com.example.api.pagination;
+
+import com.example.api.request.InvalidRequestException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Opaque keyset cursor. Holds the sort keys of the last row of a page,
+ * so the next page can be requested with "WHERE key > last key" instead of an offset.
+ */
+public record PageCursor(List<String> keys) {
+
+    // Postgres text can't contain NUL, so it is safe to use as a separator
+    private static final String SEPARATOR = "\u0000";
+
+    public static PageCursor of(Object... keys) {
+        var keysAsStrings = Arrays.stream(keys)
+                .map(key -> Objects.requireNonNull(key, "Cursor key cannot be null").toString())
+                .toList();
+        return new PageCursor(keysAsStrings);
+    }
+
+    public static PageCursor decode(String cursor) {
+        try {
+            var decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            return new PageCursor(List.of(decoded.split(SEPARATOR, -1)));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidRequestException("Malformed page cursor '" + cursor + "'", e);
+        }
+    }
+
+    public String encode() {
+        var joined = String.join(SEPARATOR, keys);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(joined.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public String key(int index) {
+        if (index >= keys.size()) {
+            throw new InvalidRequestException("Malformed page cursor, expected at least " + (index + 1) + " keys");
+        }
+        return keys.get(index);
+    }
+
+    public Long keyAsLong(int index) {
+        try {
+            return Long.valueOf(key(index));
+        } catch (NumberFormatException e) {
+            throw new InvalidRequestException("Malformed page cursor, key " + index + " is not a number", e);
+        }
+    }
+
+    public Float keyAsFloat(int index) {
+        try {
+            return Float.valueOf(key(index));
+        } catch (NumberFormatException e) {
+            throw new InvalidRequestException("Malformed page cursor, key " + index + " is not a number", e);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.api.request;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * JSON Merge Patch (RFC 7396) of the own fields of a book: a member that is present is set, an absent one is left as it is.
+ * All the fields of a book are mandatory, so null (the removal of a member) is rejected,
+ * and so are categories and authors, they have endpoints of their own.
+ */
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+@EqualsAndHashCode
+@ToString
+public class BookPatchDTO {
+
+    private static final DateTimeFormatter ADDED_AT_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+
+    // Field of the entity -> parser of its JSON value
+    private static final Map<String, Function<JsonNode, Object>> PARSERS = Map.of(
+            "title", node -> node.isTextual() ? node.asText() : null,
+            "publishedAt", node -> node.isTextual() ? LocalDate.parse(node.asText(), DateTimeFormatter.ISO_LOCAL_DATE) : null,
+            "totalPages", node -> node.canConvertToInt() && node.isIntegralNumber() ? node.asInt() : null,
+            "addedAt", node -> node.isTextual() ? LocalDateTime.parse(node.asText(), ADDED_AT_FORMAT) : null
+    );
+
+    private final Map<String, Object> fields;
+
+    public static BookPatchDTO fromJson(JsonNode json) {
+
+        if (json == null || !json.isObject()) {
+            throw new InvalidRequestException("Patch of a book must be a JSON object");
+        }
+        if (json.isEmpty()) {
+            throw new InvalidRequestException("Patch of a book has no fields");
+        }
+
+        var fields = new LinkedHashMap<String, Object>();
+
+        for (var entry : json.properties()) {
+
+            var name = entry.getKey();
+            var parser = PARSERS.get(name);
+            if (parser == null) {
+                throw new InvalidRequestException(String.format("Field '%s' of a book cannot be patched", name));
+            }
+
+            var node = entry.getValue();
+            if (node.isNull()) {
+                throw new InvalidRequestException(String.format("Field '%s' of a book cannot be removed", name));
+            }
+
+            Object value;
+            try {
+                value = parser.apply(node);
+            } catch (DateTimeParseException e) {
+                value = null;
+            }
+            if (value == null) {
+                throw new InvalidRequestException(String.format("Field '%s' of a book has invalid value: %s", name, node));
+            }
+
+            fields.put(name, value);
+        }
+
+        return new BookPatchDTO(fields);
+    }
+
+    // In the order of the patch
+    public Map<String, Object> getFields() {
+        return Collections.unmodifiableMap(fields);
+    }
+}
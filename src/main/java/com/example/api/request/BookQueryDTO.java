@@ -0,0 +1,37 @@
+package com.example.api.request;
+
+import lombok.*;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Filters of a book query, bound from the query parameters. Every filter is optional, the bounds of a range are inclusive.
+ */
+@NoArgsConstructor @AllArgsConstructor
+@Getter @Setter
+@EqualsAndHashCode
+@ToString
+public class BookQueryDTO {
+
+    @DateTimeFormat(pattern = "yyyy-MM-dd")
+    private LocalDate publishedFrom;
+
+    @DateTimeFormat(pattern = "yyyy-MM-dd")
+    private LocalDate publishedTo;
+
+    private Integer totalPagesMin;
+
+    private Integer totalPagesMax;
+
+    @DateTimeFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private LocalDateTime addedFrom;
+
+    @DateTimeFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private LocalDateTime addedTo;
+
+    private String author;
+
+    private String category;
+}
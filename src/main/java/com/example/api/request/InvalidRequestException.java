@@ -0,0 +1,16 @@
+package com.example.api.request;
+
+/**
+ * A malformed request or one the API doesn't support: a page cursor, a sort, a page size, a patch, a name or a filter.
+ * Answered with 400, unlike an IllegalArgumentException, which is a bug of the code itself.
+ */
+public class InvalidRequestException extends RuntimeException {
+
+    public InvalidRequestException(String message) {
+        super(message);
+    }
+
+    public InvalidRequestException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -1,6 +1,7 @@
 package com.example.api.response;
 
 import com.example.model.Book;
+import com.example.model.BookView;
 import com.fasterxml.jackson.annotation.JsonFormat;
 import lombok.*;
 
@@ -30,6 +31,11 @@ public class BookResponseDTO {
     @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
     private LocalDateTime addedAt;
 
+    private Long version;
+
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private LocalDateTime updatedAt;
+
     private Set<CategoryResponseDTO> categories;
 
     private Set<AuthorResponseDTO> authors;
@@ -43,6 +49,8 @@ public class BookResponseDTO {
         bookDTO.setPublishedAt(book.getPublishedAt());
         bookDTO.setTotalPages(book.getTotalPages());
         bookDTO.setAddedAt(book.getAddedAt());
+        bookDTO.setVersion(book.getVersion());
+        bookDTO.setUpdatedAt(book.getUpdatedAt());
 
         bookDTO.setAuthors(AuthorResponseDTO.fromAuthors(book.getAuthors()));
         bookDTO.setCategories(CategoryResponseDTO.fromCategories(book.getCategories()));
@@ -50,6 +58,28 @@ public class BookResponseDTO {
         return bookDTO;
     }
 
+    public static BookResponseDTO fromBookView(BookView bookView) {
+
+        var bookDTO = new BookResponseDTO();
+
+        bookDTO.setId(bookView.getId());
+        bookDTO.setTitle(bookView.getTitle());
+        bookDTO.setPublishedAt(bookView.getPublishedAt());
+        bookDTO.setTotalPages(bookView.getTotalPages());
+        bookDTO.setAddedAt(bookView.getAddedAt());
+        bookDTO.setVersion(bookView.getVersion());
+        bookDTO.setUpdatedAt(bookView.getUpdatedAt());
+
+        bookDTO.setAuthors(bookView.getAuthors().stream()
+                .map(author -> new AuthorResponseDTO(author.id(), author.name()))
+                .collect(Collectors.toSet()));
+        bookDTO.setCategories(bookView.getCategories().stream()
+                .map(category -> new CategoryResponseDTO(category.id().intValue(), category.name()))
+                .collect(Collectors.toSet()));
+
+        return bookDTO;
+    }
+
     public static List<BookResponseDTO> fromBooks(Collection<Book> books) {
         if (books == null) {
             return Collections.emptyList();
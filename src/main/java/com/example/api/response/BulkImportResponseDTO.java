@@ -0,0 +1,17 @@
+package com.example.api.response;
+
+import lombok.*;
+
+import java.util.List;
+
+@NoArgsConstructor @AllArgsConstructor
+@Getter @Setter
+@EqualsAndHashCode
+@ToString
+public class BulkImportResponseDTO {
+
+    private int imported;
+
+    // Ids of the created books, in the order of the request
+    private List<Long> ids;
+}
@@ -0,0 +1,17 @@
+package com.example.api.response;
+
+import lombok.*;
+
+import java.util.List;
+
+@NoArgsConstructor @AllArgsConstructor
+@Getter @Setter
+@EqualsAndHashCode
+@ToString
+public class PageResponseDTO<T> {
+
+    private List<T> content;
+
+    // Opaque cursor of the next page, null if this page is the last one
+    private String next;
+}
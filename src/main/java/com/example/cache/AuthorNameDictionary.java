@@ -0,0 +1,29 @@
+package com.example.cache;
+
+import com.example.repository.AuthorRepository;
+import com.example.repository.NameId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.stream.Collectors;
+
+@Component
+public class AuthorNameDictionary extends NameDictionary<Long> {
+
+    private final AuthorRepository authorRepository;
+
+    public AuthorNameDictionary(AuthorRepository authorRepository,
+                                @Value("${books.names.dictionary-size:100000}") int maximumSize) {
+        super("authors", maximumSize);
+        this.authorRepository = authorRepository;
+    }
+
+    @Override
+    protected Map<String, Long> loadLatest(int limit) {
+        return authorRepository.findLatestNames(Limit.of(limit))
+                .stream()
+                .collect(Collectors.toMap(NameId::name, nameId -> nameId.id().longValue()));
+    }
+}
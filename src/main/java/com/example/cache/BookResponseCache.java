@@ -0,0 +1,215 @@
+package com.example.cache;
+
+import com.example.api.response.BookResponseDTO;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.validation.constraints.NotNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * In-process cache of {@link BookResponseDTO} keyed by book id, with a secondary index by title.
+ * Every book is kept serialized as well (see {@link SerializedBookResponse}), so it's not serialized again until it's evicted.
+ * Caffeine evicts by W-TinyLFU within the size limit, entries also expire after a TTL.
+ * Concurrent misses of the same book share one load (see {@link SingleFlight}).
+ */
+@Component
+@Slf4j
+public class BookResponseCache {
+
+    // A load lasting longer than that is not put into the cache, as the invalidations during it may be forgotten
+    private static final Duration INVALIDATION_RETENTION = Duration.ofMinutes(1);
+
+    private final Cache<Long, SerializedBookResponse> booksById;
+    private final Cache<String, Long> bookIdsByTitle;
+
+    // Stamp (a number from the sequence) of the last invalidation of every book,
+    // so a value loaded before a concurrent change of the same book is not put into the cache
+    private final Cache<Long, Long> invalidationStampsById;
+    private final Cache<String, Long> invalidationStampsByTitle;
+    private final AtomicLong invalidationStamps = new AtomicLong();
+    private volatile long invalidationStampOfAll;
+
+    private final ObjectMapper objectMapper;
+    private final SingleFlight singleFlight;
+
+    public BookResponseCache(MeterRegistry meterRegistry,
+                             ObjectMapper objectMapper,
+                             SingleFlight singleFlight,
+                             @Value("${books.cache.maximum-size:10000}") long maximumSize,
+                             @Value("${books.cache.expire-after-write:10m}") Duration expireAfterWrite) {
+
+        this.booksById = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .removalListener(this::onRemoval)
+                .recordStats()
+                .build();
+
+        // An entry may outlive the book or its title, it's checked against the cached book on every lookup
+        this.bookIdsByTitle = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .build();
+
+        this.invalidationStampsById = Caffeine.newBuilder()
+                .expireAfterWrite(INVALIDATION_RETENTION)
+                .build();
+
+        this.invalidationStampsByTitle = Caffeine.newBuilder()
+                .expireAfterWrite(INVALIDATION_RETENTION)
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, booksById, "books");
+
+        this.objectMapper = objectMapper;
+        this.singleFlight = singleFlight;
+    }
+
+    public BookResponseDTO getById(@NotNull Long id, @NotNull Function<Long, BookResponseDTO> loader) {
+        var book = getSerializedById(id, loader);
+        return book != null ? book.book() : null;
+    }
+
+    public BookResponseDTO getByTitle(@NotNull String title, @NotNull Function<String, BookResponseDTO> loader) {
+        var book = getSerializedByTitle(title, loader);
+        return book != null ? book.book() : null;
+    }
+
+    public SerializedBookResponse getSerializedById(@NotNull Long id, @NotNull Function<Long, BookResponseDTO> loader) {
+        var book = booksById.getIfPresent(id);
+        if (book != null) {
+            return book;
+        }
+        return load("book-by-id", id, invalidationStampOf(id), loader);
+    }
+
+    public SerializedBookResponse getSerializedByTitle(@NotNull String title, @NotNull Function<String, BookResponseDTO> loader) {
+        var id = bookIdsByTitle.getIfPresent(title);
+        if (id != null) {
+            var book = booksById.getIfPresent(id);
+            if (book != null && title.equals(book.book().getTitle())) {
+                return book;
+            }
+        }
+        // The book of an unknown title may be any, so the load is bound to the last invalidation of all of them
+        var invalidationStamp = id != null ? Math.max(invalidationStampOf(id), invalidationStampOfTitle(title)) : invalidationStamps.get();
+        return load("book-by-title", title, invalidationStamp, loader);
+    }
+
+    /**
+     * Evicts the book right away and once more after the current transaction completes,
+     * so a reader can't cache the state that is about to be overwritten by this transaction.
+     */
+    public void invalidate(@NotNull Long id) {
+
+        evict(id);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict(id);
+                }
+            });
+        }
+    }
+
+    /**
+     * Evicts the entry of the title from the index, right away and once more after the current transaction completes.
+     * Called on every write that sets the title, as another book may take the title indexed for a cached one.
+     */
+    public void invalidateTitle(@NotNull String title) {
+
+        evictTitle(title);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evictTitle(title);
+                }
+            });
+        }
+    }
+
+    // Evicts all the books, a load that is in progress is not put into the cache either
+    public void invalidateAll() {
+        invalidationStampOfAll = invalidationStamps.incrementAndGet();
+        booksById.invalidateAll();
+        bookIdsByTitle.invalidateAll();
+    }
+
+    /*
+     * Only the loads started after the last invalidation of the book are shared, so a reader coming after a change
+     * doesn't get the state loaded before it
+     */
+    private <K> SerializedBookResponse load(String operation, K key, long invalidationStamp, Function<K, BookResponseDTO> loader) {
+        var invalidationStampBeforeLoad = invalidationStamps.get();
+        return singleFlight.execute(operation, List.of(key, invalidationStamp),
+                () -> load(key, loader, invalidationStampBeforeLoad));
+    }
+
+    private <K> SerializedBookResponse load(K key, Function<K, BookResponseDTO> loader, long invalidationStampBeforeLoad) {
+
+        var loadStartedAt = System.nanoTime();
+
+        var book = loader.apply(key);
+        if (book == null) {
+            return null;
+        }
+        var serializedBook = SerializedBookResponse.of(book, objectMapper);
+        if (book.getId() == null) {
+            return serializedBook;
+        }
+
+        if (System.nanoTime() - loadStartedAt < INVALIDATION_RETENTION.toNanos()
+                && invalidationStampOf(book.getId()) <= invalidationStampBeforeLoad) {
+
+            booksById.put(book.getId(), serializedBook);
+            if (book.getTitle() != null && invalidationStampOfTitle(book.getTitle()) <= invalidationStampBeforeLoad) {
+                bookIdsByTitle.put(book.getTitle(), book.getId());
+            }
+        }
+
+        return serializedBook;
+    }
+
+    private long invalidationStampOf(Long id) {
+        var invalidationStamp = invalidationStampsById.getIfPresent(id);
+        return Math.max(invalidationStamp != null ? invalidationStamp : 0L, invalidationStampOfAll);
+    }
+
+    private long invalidationStampOfTitle(String title) {
+        var invalidationStamp = invalidationStampsByTitle.getIfPresent(title);
+        return Math.max(invalidationStamp != null ? invalidationStamp : 0L, invalidationStampOfAll);
+    }
+
+    private void evict(Long id) {
+        invalidationStampsById.put(id, invalidationStamps.incrementAndGet());
+        booksById.invalidate(id);
+    }
+
+    private void evictTitle(String title) {
+        invalidationStampsByTitle.put(title, invalidationStamps.incrementAndGet());
+        bookIdsByTitle.invalidate(title);
+    }
+
+    private void onRemoval(Long id, SerializedBookResponse book, RemovalCause cause) {
+        if (cause.wasEvicted()) {
+            log.debug("Book with id '{}' was evicted from the cache, cause - {}", id, cause);
+        }
+    }
+}
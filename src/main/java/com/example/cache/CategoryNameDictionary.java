@@ -0,0 +1,29 @@
+package com.example.cache;
+
+import com.example.repository.CategoryRepository;
+import com.example.repository.NameId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.stream.Collectors;
+
+@Component
+public class CategoryNameDictionary extends NameDictionary<Integer> {
+
+    private final CategoryRepository categoryRepository;
+
+    public CategoryNameDictionary(CategoryRepository categoryRepository,
+                                  @Value("${books.names.dictionary-size:100000}") int maximumSize) {
+        super("categories", maximumSize);
+        this.categoryRepository = categoryRepository;
+    }
+
+    @Override
+    protected Map<String, Integer> loadLatest(int limit) {
+        return categoryRepository.findLatestNames(Limit.of(limit))
+                .stream()
+                .collect(Collectors.toMap(NameId::name, nameId -> nameId.id().intValue()));
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.validation.constraints.NotNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+
+/**
+ * Node-local dictionary of names to ids of a table with unique names (authors, categories).
+ * Names are keys as they are stored, since the unique constraint of the table compares them exactly.
+ * The number of names is bounded, Caffeine keeps the most used ones (W-TinyLFU) when there are more of them.
+ * Rows of these tables are never deleted, so an id once put here stays valid.
+ */
+@Slf4j
+public abstract class NameDictionary<ID> implements MeterBinder {
+
+    private final String name;
+    private final int maximumSize;
+    private final Cache<String, ID> ids;
+
+    protected NameDictionary(String name, int maximumSize) {
+        this.name = name;
+        this.maximumSize = maximumSize;
+        this.ids = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+    }
+
+    public ID get(@NotNull String name) {
+        return ids.getIfPresent(name);
+    }
+
+    /**
+     * Ids of the rows inserted by the current transaction become visible only after it commits,
+     * otherwise a rollback would leave ids of rows which do not exist.
+     */
+    public void putAllAfterCommit(@NotNull Map<String, ID> idsByName) {
+
+        if (idsByName.isEmpty()) {
+            return;
+        }
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            ids.putAll(idsByName);
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                ids.putAll(idsByName);
+            }
+        });
+    }
+
+    // Forgets all the names, for when the rows are deleted after all (the tests clean their data up)
+    public void invalidateAll() {
+        ids.invalidateAll();
+    }
+
+    public long size() {
+        return ids.estimatedSize();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        var idsByName = loadLatest(maximumSize);
+        ids.putAll(idsByName);
+        log.info("Dictionary of {} names is warmed up with {} names", name, idsByName.size());
+    }
+
+    @Override
+    public void bindTo(@NotNull MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, ids, name + ".names");
+    }
+
+    // The latest added names are the most likely ones to be used again
+    protected abstract Map<String, ID> loadLatest(int limit);
+}
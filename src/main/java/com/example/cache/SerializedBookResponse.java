@@ -0,0 +1,36 @@
+package com.example.cache;
+
+import com.example.api.response.BookResponseDTO;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A book as the body of the response: UTF-8 JSON and the same JSON gzipped, both serialized once when the book is cached,
+ * so a cached book is written to the response as is. The arrays are shared, they must not be changed.
+ */
+public record SerializedBookResponse(BookResponseDTO book, byte[] json, byte[] gzippedJson) {
+
+    public static SerializedBookResponse of(BookResponseDTO book, ObjectMapper objectMapper) {
+        try {
+            var json = objectMapper.writeValueAsBytes(book);
+            return new SerializedBookResponse(book, json, gzip(json));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Book with id '" + book.getId() + "' cannot be serialized", e);
+        }
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        var outputStream = new ByteArrayOutputStream(bytes.length / 2 + 32);
+        try (var gzipOutputStream = new GZIPOutputStream(outputStream, bytes.length)) {
+            gzipOutputStream.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);  // Never thrown by a stream in memory
+        }
+        return outputStream.toByteArray();
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.cache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.validation.constraints.NotNull;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent identical lookups (single flight): the first caller of a key runs the lookup,
+ * the callers of the same key coming while it runs wait for it and share its result (or its exception).
+ * Nothing is kept after the lookup completes, so a caller coming later runs its own one.
+ * Waiting callers are counted by the "books.requests.coalesced" metric, tagged by the operation.
+ */
+@Component
+@RequiredArgsConstructor
+public class SingleFlight {
+
+    private record FlightKey(String operation, Object key) {}
+
+    private final Map<FlightKey, CompletableFuture<Object>> flights = new ConcurrentHashMap<>();
+
+    private final MeterRegistry meterRegistry;
+
+    @SuppressWarnings("unchecked")
+    public <V> V execute(@NotNull String operation, @NotNull Object key, @NotNull Supplier<V> lookup) {
+
+        var flightKey = new FlightKey(operation, key);
+        var flight = new CompletableFuture<Object>();
+
+        var flightInProgress = flights.putIfAbsent(flightKey, flight);
+        if (flightInProgress != null) {
+            meterRegistry.counter("books.requests.coalesced", "operation", operation).increment();
+            return (V) await(flightInProgress);
+        }
+
+        try {
+            var value = lookup.get();
+            flight.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            flights.remove(flightKey, flight);
+        }
+    }
+
+    // The waiting callers get the exception of the lookup as it was thrown, not wrapped
+    private static Object await(CompletableFuture<Object> flight) {
+        try {
+            return flight.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+}
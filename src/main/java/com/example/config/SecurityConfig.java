@@ -1,16 +1,19 @@
 package com.example.config;
 
+import com.example.model.Role;
 import com.example.security.JwtConfigurer;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.config.ObjectPostProcessor;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.header.HeaderWriterFilter;
 
 import static org.springframework.security.web.util.matcher.AntPathRequestMatcher.antMatcher;
 
@@ -25,8 +28,18 @@ public class SecurityConfig {
     public SecurityFilterChain securityFilterChain(HttpSecurity builder) throws Exception {
         return builder
                 .csrf(AbstractHttpConfigurer::disable)  // Without disabling CSRF all http method types except "GET" will be forbidden (403)
+                .headers(headers -> headers.withObjectPostProcessor(new ObjectPostProcessor<HeaderWriterFilter>() {
+                    // Written by the request thread, not by the thread of a streamed (async) body committing the response
+                    @Override
+                    public <F extends HeaderWriterFilter> F postProcess(F filter) {
+                        filter.setShouldWriteHeadersEagerly(true);
+                        return filter;
+                    }
+                }))
                 .authorizeHttpRequests(authz -> authz
                         .requestMatchers(antMatcher("/auth/**")).permitAll()
+                        .requestMatchers(antMatcher("/actuator/health/**")).permitAll()
+                        .requestMatchers(antMatcher("/actuator/**")).hasAuthority(Role.ADMIN.getAuthority())  // Metrics are not public
                         .requestMatchers(antMatcher(HttpMethod.GET)).permitAll()
                         .anyRequest().authenticated()
                 )
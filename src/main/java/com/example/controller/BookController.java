@@ -1,17 +1,32 @@
 package com.example.controller;
 
 import com.example.api.request.AuthorRequestDTO;
+import com.example.api.request.BookPatchDTO;
+import com.example.api.request.BookQueryDTO;
 import com.example.api.request.BookRequestDTO;
 import com.example.api.request.CategoryRequestDTO;
 import com.example.api.response.BookResponseDTO;
+import com.example.api.response.BulkImportResponseDTO;
+import com.example.api.response.PageResponseDTO;
+import com.example.cache.SerializedBookResponse;
+import com.example.repository.BookVersion;
+import com.example.service.BookExportFormat;
 import com.example.service.BookServicesFacade;
+import com.fasterxml.jackson.databind.JsonNode;
 import lombok.RequiredArgsConstructor;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.util.Collection;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api/v1/books")
@@ -21,38 +36,109 @@ public class BookController {
     private final BookServicesFacade bookService;
 
     @GetMapping
-    public ResponseEntity<List<BookResponseDTO>> getAllBooks() {
-        var books = bookService.getAllBooks();
+    public ResponseEntity<PageResponseDTO<BookResponseDTO>> getAllBooks(@RequestParam(required = false) String cursor,
+                                                                        @RequestParam(required = false) Integer size) {
+        var books = bookService.getAllBooks(cursor, size);
         return ResponseEntity.ok(books);
     }
 
+    @GetMapping("/search")
+    public ResponseEntity<PageResponseDTO<BookResponseDTO>> searchBooks(@RequestParam("q") String query,
+                                                                        @RequestParam(required = false) String cursor,
+                                                                        @RequestParam(required = false) Integer size) {
+        var books = bookService.searchBooks(query, cursor, size);
+        return ResponseEntity.ok(books);
+    }
+
+    // Filters are bound from the query parameters, see BookQueryDTO
+    @GetMapping("/query")
+    public ResponseEntity<PageResponseDTO<BookResponseDTO>> queryBooks(BookQueryDTO query,
+                                                                       @RequestParam(required = false) String sort,
+                                                                       @RequestParam(required = false) String cursor,
+                                                                       @RequestParam(required = false) Integer size) {
+        var books = bookService.queryBooks(query, sort, cursor, size);
+        return ResponseEntity.ok(books);
+    }
+
+    // Books are written while they are read from the database, compressed if the client accepts gzip
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportBooks(@RequestParam(defaultValue = "ndjson") String format,
+                                                             @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+
+        var exportFormat = BookExportFormat.ofName(format);
+        var gzip = acceptsGzip(acceptEncoding);
+
+        StreamingResponseBody body = outputStream -> {
+            if (gzip) {
+                // Sync flush, so the flushed books are not held back by the compressor
+                var gzipOutputStream = new GZIPOutputStream(outputStream, true);
+                bookService.exportBooks(exportFormat, gzipOutputStream);
+                gzipOutputStream.finish();
+            } else {
+                bookService.exportBooks(exportFormat, outputStream);
+            }
+        };
+
+        var response = ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(exportFormat.getMediaType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename("books." + exportFormat.getName())
+                        .build()
+                        .toString())
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(body);
+    }
+
+    // The body is the JSON of the book serialized (and gzipped) once when it was cached
     @GetMapping("/{id}")
-    public ResponseEntity<BookResponseDTO> getBookById(@PathVariable Long id) {
-        var book = bookService.getBookById(id);
+    public ResponseEntity<byte[]> getBookById(@PathVariable Long id, @RequestHeader HttpHeaders headers) {
+        if (isConditional(headers)) {
+            var version = bookService.getBookVersionById(id);
+            if (isNotModified(version, headers)) {
+                return notModified(version);
+            }
+        }
+        var book = bookService.getSerializedBookById(id);
         if (book == null) {
             return ResponseEntity.notFound().build();
         }
-        return ResponseEntity.ok(book);
+        return okWithValidators(book, headers);
     }
 
     @GetMapping("/title/{title}")
-    public ResponseEntity<BookResponseDTO> getBookByTitle(@PathVariable String title) {
-        var book = bookService.getBookByTitle(title);
+    public ResponseEntity<byte[]> getBookByTitle(@PathVariable String title, @RequestHeader HttpHeaders headers) {
+        if (isConditional(headers)) {
+            var version = bookService.getBookVersionByTitle(title);
+            if (isNotModified(version, headers)) {
+                return notModified(version);
+            }
+        }
+        var book = bookService.getSerializedBookByTitle(title);
         if (book == null) {
             return ResponseEntity.notFound().build();
         }
-        return ResponseEntity.ok(book);
+        return okWithValidators(book, headers);
     }
 
+    // Sorted by "id" (default), "title" or "publishedAt", ",desc" reverses the order
     @GetMapping("/category/{category}")
-    public ResponseEntity<Collection<BookResponseDTO>> getBooksByCategory(@PathVariable("category") String categoryName) {
-        var books = bookService.getBooksByCategory(categoryName);
+    public ResponseEntity<PageResponseDTO<BookResponseDTO>> getBooksByCategory(@PathVariable("category") String categoryName,
+                                                                               @RequestParam(required = false) String sort,
+                                                                               @RequestParam(required = false) String cursor,
+                                                                               @RequestParam(required = false) Integer size) {
+        var books = bookService.getBooksByCategory(categoryName, sort, cursor, size);
         return ResponseEntity.ok(books);
     }
 
     @GetMapping("/author/{author}")
-    public ResponseEntity<Collection<BookResponseDTO>> getBooksByAuthor(@PathVariable("author") String authorName) {
-        var books = bookService.getBooksByAuthor(authorName);
+    public ResponseEntity<PageResponseDTO<BookResponseDTO>> getBooksByAuthor(@PathVariable("author") String authorName,
+                                                                             @RequestParam(required = false) String sort,
+                                                                             @RequestParam(required = false) String cursor,
+                                                                             @RequestParam(required = false) Integer size) {
+        var books = bookService.getBooksByAuthor(authorName, sort, cursor, size);
         return ResponseEntity.ok(books);
     }
 
@@ -62,30 +148,54 @@ public class BookController {
         return ResponseEntity.ok(bookResponse);
     }
 
+    @PostMapping("/bulk")
+    public ResponseEntity<BulkImportResponseDTO> createBooks(@RequestBody List<BookRequestDTO> books) {
+        var importResponse = bookService.createBooks(books);
+        return ResponseEntity.ok(importResponse);
+    }
+
     @PutMapping("/{id}")
     public ResponseEntity<BookResponseDTO> updateBook(@PathVariable Long id,
-                                                      @RequestBody BookRequestDTO book) {
-        var bookResponse = bookService.updateBook(id, book);
-        return ResponseEntity.ok(bookResponse);
+                                                      @RequestBody BookRequestDTO book,
+                                                      @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        var bookResponse = bookService.updateBook(id, book, expectedVersion(id, ifMatch));
+        return okWithValidators(bookResponse);
+    }
+
+    // JSON Merge Patch of the own fields of the book, answers without a body (with the new ETag if If-Match was sent)
+    @PatchMapping(value = "/{id}", consumes = { "application/merge-patch+json", MediaType.APPLICATION_JSON_VALUE })
+    public ResponseEntity<Void> patchBook(@PathVariable Long id,
+                                          @RequestBody JsonNode patch,
+                                          @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        var expectedVersion = expectedVersion(id, ifMatch);
+        bookService.patchBook(id, BookPatchDTO.fromJson(patch), expectedVersion);
+        var response = ResponseEntity.noContent();
+        if (expectedVersion != null) {
+            response.eTag(eTag(id, expectedVersion + 1));
+        }
+        return response.build();
     }
 
     @DeleteMapping("/{id}")
     @ResponseStatus(HttpStatus.ACCEPTED)
-    public void deleteBookById(@PathVariable Long id) {
-        bookService.deleteBookById(id);
+    public void deleteBookById(@PathVariable Long id,
+                               @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        bookService.deleteBookById(id, expectedVersion(id, ifMatch));
     }
 
     @PutMapping("/{id}/add-category")
     @ResponseStatus(HttpStatus.ACCEPTED)
     public void addCategoryToBook(@PathVariable("id") Long bookId,
-                                  @RequestBody CategoryRequestDTO category) {
-        bookService.addCategoryToBook(bookId, category);
+                                  @RequestBody CategoryRequestDTO category,
+                                  @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        bookService.addCategoryToBook(bookId, category, expectedVersion(bookId, ifMatch));
     }
 
     @DeleteMapping("/{id}/delete-category")
     public ResponseEntity<Boolean> removeCategoryFromBook(@PathVariable("id") Long bookId,
-                                                          @RequestBody CategoryRequestDTO category) {
-        var result = bookService.removeCategoryFromBook(bookId, category);
+                                                          @RequestBody CategoryRequestDTO category,
+                                                          @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        var result = bookService.removeCategoryFromBook(bookId, category, expectedVersion(bookId, ifMatch));
         if (!result) {
             return ResponseEntity.notFound().build();
         }
@@ -95,21 +205,24 @@ public class BookController {
     @PutMapping("/{id}/update-categories")
     @ResponseStatus(HttpStatus.ACCEPTED)
     public void updateCategoriesForBooks(@PathVariable("id") Long bookId,
-                                         @RequestBody List<CategoryRequestDTO> categories) {
-        bookService.updateCategoriesForBook(bookId, categories);
+                                         @RequestBody List<CategoryRequestDTO> categories,
+                                         @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        bookService.updateCategoriesForBook(bookId, categories, expectedVersion(bookId, ifMatch));
     }
 
     @PutMapping("/{id}/add-author")
     @ResponseStatus(HttpStatus.ACCEPTED)
     public void addAuthorToBook(@PathVariable("id") Long bookId,
-                                @RequestBody AuthorRequestDTO authorRequestDTO) {
-        bookService.addAuthorToBook(bookId, authorRequestDTO);
+                                @RequestBody AuthorRequestDTO authorRequestDTO,
+                                @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        bookService.addAuthorToBook(bookId, authorRequestDTO, expectedVersion(bookId, ifMatch));
     }
 
     @DeleteMapping("/{id}/delete-author")
     public ResponseEntity<Boolean> removeAuthorFromBook(@PathVariable("id") Long bookId,
-                                                         @RequestBody AuthorRequestDTO author) {
-        var result = bookService.removeAuthorFromBook(bookId, author);
+                                                         @RequestBody AuthorRequestDTO author,
+                                                         @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        var result = bookService.removeAuthorFromBook(bookId, author, expectedVersion(bookId, ifMatch));
         if (!result) {
             return ResponseEntity.notFound().build();
         }
@@ -119,7 +232,106 @@ public class BookController {
     @PutMapping("/{id}/update-authors")
     @ResponseStatus(HttpStatus.ACCEPTED)
     public void updateAuthorsForBooks(@PathVariable("id") Long bookId,
-                                      @RequestBody List<AuthorRequestDTO> authors) {
-        bookService.updateAuthorsForBook(bookId, authors);
+                                      @RequestBody List<AuthorRequestDTO> authors,
+                                      @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        bookService.updateAuthorsForBook(bookId, authors, expectedVersion(bookId, ifMatch));
+    }
+
+    /*
+     * Conditional GETs: a client that sends back the ETag (If-None-Match) or Last-Modified (If-Modified-Since)
+     * of its copy gets "304 Not Modified" after a query of the version only, the book and its associations are not loaded.
+     */
+
+    private static boolean isConditional(HttpHeaders headers) {
+        return headers.containsKey(HttpHeaders.IF_NONE_MATCH) || headers.containsKey(HttpHeaders.IF_MODIFIED_SINCE);
+    }
+
+    private static boolean isNotModified(BookVersion version, HttpHeaders headers) {
+        if (version == null) {
+            return false;
+        }
+        // If-None-Match takes precedence and uses the weak comparison
+        var eTagsOfClient = headers.getIfNoneMatch();
+        if (!eTagsOfClient.isEmpty()) {
+            var eTag = eTag(version.id(), version.version());
+            return eTagsOfClient.stream()
+                    .anyMatch(eTagOfClient -> eTagOfClient.equals("*") || eTagOfClient.replaceFirst("^W/", "").equals(eTag));
+        }
+        // Dates of the headers have no milliseconds
+        var lastModified = lastModified(version.updatedAt());
+        return lastModified > 0 && headers.getIfModifiedSince() >= lastModified / 1000 * 1000;
+    }
+
+    /*
+     * Optimistic concurrency: a client that sends the ETag of its copy in If-Match changes the book
+     * only if nobody has changed it since, "412 Precondition Failed" otherwise ("*" matches any version).
+     */
+    private static Long expectedVersion(Long id, String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        // A weak ETag never matches, If-Match uses the strong comparison
+        var prefix = "\"" + id + "-";
+        var eTag = ifMatch.trim();
+        if (eTag.startsWith(prefix) && eTag.endsWith("\"") && eTag.length() > prefix.length() + 1) {
+            try {
+                return Long.parseLong(eTag.substring(prefix.length(), eTag.length() - 1));
+            } catch (NumberFormatException ignored) {
+                // Not an ETag of this API, so it doesn't match
+            }
+        }
+        throw new OptimisticLockingFailureException(String.format("If-Match '%s' doesn't match the book with id '%d'", ifMatch, id));
+    }
+
+    private static <T> ResponseEntity<T> notModified(BookVersion version) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .eTag(eTag(version.id(), version.version()))
+                .lastModified(lastModified(version.updatedAt()))
+                .build();
+    }
+
+    private static ResponseEntity<BookResponseDTO> okWithValidators(BookResponseDTO book) {
+        return ResponseEntity.ok()
+                .eTag(eTag(book.getId(), book.getVersion()))
+                .lastModified(lastModified(book.getUpdatedAt()))
+                .body(book);
+    }
+
+    // The bytes are written to the response as they are (by the byte array converter), gzipped ones if the client accepts gzip
+    private static ResponseEntity<byte[]> okWithValidators(SerializedBookResponse book, HttpHeaders headers) {
+        var gzip = acceptsGzip(headers.getFirst(HttpHeaders.ACCEPT_ENCODING));
+        var response = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(eTag(book.book().getId(), book.book().getVersion()))
+                .lastModified(lastModified(book.book().getUpdatedAt()))
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                    .body(book.gzippedJson());
+        }
+        return response.body(book.json());
+    }
+
+    // Strong ETag, the id is a part of it as the same title may belong to another book later
+    private static String eTag(Long id, Long version) {
+        return "\"" + id + "-" + version + "\"";
+    }
+
+    private static long lastModified(LocalDateTime updatedAt) {
+        return updatedAt != null ? updatedAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() : -1;
+    }
+
+    // "gzip" among the codings of Accept-Encoding, unless it's refused by "q=0"
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (var coding : acceptEncoding.split(",")) {
+            var parts = coding.split(";");
+            if (parts[0].trim().equalsIgnoreCase("gzip")) {
+                return parts.length == 1 || !parts[1].trim().matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
     }
 }
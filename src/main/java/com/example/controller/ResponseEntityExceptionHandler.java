@@ -1,11 +1,19 @@
 package com.example.controller;
 
+import com.example.api.request.InvalidRequestException;
+import com.example.model.Book;
 import jakarta.persistence.EntityNotFoundException;
+import jakarta.persistence.OptimisticLockException;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 
+import java.util.Locale;
+
 @ControllerAdvice
 public class ResponseEntityExceptionHandler {
 
@@ -13,4 +21,32 @@ public class ResponseEntityExceptionHandler {
     public ResponseEntity<String> handleEntityNotFoundException(EntityNotFoundException e) {
         return new ResponseEntity<>(e.getMessage(), HttpStatus.NOT_FOUND);
     }
+
+    @ExceptionHandler(InvalidRequestException.class)
+    public ResponseEntity<String> handleInvalidRequestException(InvalidRequestException e) {
+        return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+    }
+
+    // A concurrent change of the book or an outdated If-Match
+    @ExceptionHandler({ OptimisticLockingFailureException.class, OptimisticLockException.class })
+    public ResponseEntity<String> handleOptimisticLockingFailureException(RuntimeException e) {
+        return new ResponseEntity<>(e.getMessage(), HttpStatus.PRECONDITION_FAILED);
+    }
+
+    // Another book has the same title and publication date. The message of the database is not exposed
+    @ExceptionHandler(DataIntegrityViolationException.class)
+    public ResponseEntity<String> handleDataIntegrityViolationException(DataIntegrityViolationException e) {
+        if (isViolationOf(e, Book.TITLE_PUBLISHED_AT_CONSTRAINT)) {
+            return new ResponseEntity<>("The change conflicts with an existing book", HttpStatus.CONFLICT);
+        }
+        // Any other violation is not a conflict of books, it's handled as if there was no handler
+        throw e;
+    }
+
+    // The database may qualify the name of the constraint, add a suffix to it or change its case
+    private static boolean isViolationOf(DataIntegrityViolationException e, String constraintName) {
+        return e.getCause() instanceof ConstraintViolationException violation
+                && violation.getConstraintName() != null
+                && violation.getConstraintName().toLowerCase(Locale.ROOT).contains(constraintName.toLowerCase(Locale.ROOT));
+    }
 }
@@ -4,25 +4,22 @@ import jakarta.persistence.*;
 import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.NotNull;
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
 
 import java.util.HashSet;
 import java.util.Set;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "authors")
+@NaturalIdCache(region = "authors-by-name")
 @Table(
         name = "authors",
         uniqueConstraints = @UniqueConstraint(columnNames = { "name" })
 )
-@NamedEntityGraph(
-        name = "graph.AuthorBooksCategories",
-        attributeNodes = @NamedAttributeNode(value = "books", subgraph = "subgraph.book"),
-        subgraphs = {
-                @NamedSubgraph(name = "subgraph.book", attributeNodes = {
-                        @NamedAttributeNode(value = "authors"),
-                        @NamedAttributeNode(value = "categories")
-                })
-        }
-)
 @NoArgsConstructor @AllArgsConstructor
 @Getter @Setter
 @EqualsAndHashCode(of = "name")
@@ -30,9 +27,11 @@ import java.util.Set;
 public class Author {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "authors_seq")
+    @SequenceGenerator(name = "authors_seq", sequenceName = "authors_seq", allocationSize = 50)
     private Long id;
 
+    @NaturalId
     @Column(name = "name")
     @NotNull
     @NotEmpty
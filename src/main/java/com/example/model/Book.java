@@ -7,6 +7,9 @@ import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Size;
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.ColumnDefault;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -16,7 +19,14 @@ import java.util.Set;
 @Entity
 @Table(
         name = "books",
-        uniqueConstraints = @UniqueConstraint(columnNames = { "title", "published_at" })
+        uniqueConstraints = @UniqueConstraint(name = Book.TITLE_PUBLISHED_AT_CONSTRAINT, columnNames = { "title", "published_at" }),
+        // Ranges and sorts of the book queries, with the id as the tie-breaker of the keyset pages
+        indexes = {
+                @Index(name = "IX_books_title", columnList = "title, id"),
+                @Index(name = "IX_books_published_at", columnList = "published_at, id"),
+                @Index(name = "IX_books_total_pages", columnList = "total_pages, id"),
+                @Index(name = "IX_books_added_at", columnList = "added_at, id")
+        }
 )
 @NoArgsConstructor @AllArgsConstructor
 @Getter @Setter
@@ -24,8 +34,12 @@ import java.util.Set;
 @ToString
 public class Book {
 
+    public static final String TITLE_PUBLISHED_AT_CONSTRAINT = "U_books_title_published_at";
+
+    // Unlike IDENTITY, ids from a pooled sequence are known before the insert, so Hibernate can batch inserts
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "books_seq")
+    @SequenceGenerator(name = "books_seq", sequenceName = "books_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "title")
@@ -49,25 +63,47 @@ public class Book {
     @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
     private LocalDateTime addedAt;
 
+    // Incremented by Hibernate on every change of the book, changes of its categories and authors included
+    @Version
+    @Column(name = "version", nullable = false)
+    @ColumnDefault("0")
+    private Long version;
+
+    @Column(name = "updated_at", nullable = false)
+    @ColumnDefault("CURRENT_TIMESTAMP")
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private LocalDateTime updatedAt;
+
     @Transient
     private boolean isNew = false;
 
+    // Ids of the categories (authors), the categories themselves come from their own region
     @ManyToMany
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "book-categories")
     @JoinTable(
             name = "books_categories",
             joinColumns = @JoinColumn(name = "book_id"),
-            inverseJoinColumns = @JoinColumn(name = "category_id")
+            inverseJoinColumns = @JoinColumn(name = "category_id"),
+            indexes = @Index(name = "IX_books_categories_category_id", columnList = "category_id, book_id")
     )
     private Set<Category> categories = new HashSet<>();
 
     @ManyToMany
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "book-authors")
     @JoinTable(
             name = "books_authors",
             joinColumns = @JoinColumn(name = "book_id"),
-            inverseJoinColumns = @JoinColumn(name = "author_id")
+            inverseJoinColumns = @JoinColumn(name = "author_id"),
+            indexes = @Index(name = "IX_books_authors_author_id", columnList = "author_id, book_id")
     )
     private Set<Author> authors = new HashSet<>();
 
+    @PrePersist
+    @PreUpdate
+    private void onWrite() {
+        updatedAt = LocalDateTime.now();
+    }
+
     public void addCategory(@NotNull Category category) {
         categories.add(category);
     }
@@ -0,0 +1,104 @@
+package com.example.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Read model of a book: one row per book with its authors and categories embedded as JSON (jsonb in PostgreSQL),
+ * so a book is read by its primary key without joins. It's written in the transaction of every change of the book
+ * (see BookRepositoryCustomImpl and BookService), its version and time of change are the ones of the book.
+ */
+@Entity
+@Table(
+        name = "book_view",
+        indexes = @Index(name = "IX_book_view_title", columnList = "title, id")
+)
+@NoArgsConstructor @AllArgsConstructor
+@Getter @Setter
+@EqualsAndHashCode(of = "id")
+@ToString
+public class BookView {
+
+    // The id of the book
+    @Id
+    private Long id;
+
+    @Column(name = "title", nullable = false)
+    private String title;
+
+    @Column(name = "published_at", nullable = false)
+    private LocalDate publishedAt;
+
+    @Column(name = "total_pages", nullable = false)
+    private Integer totalPages;
+
+    @Column(name = "added_at", nullable = false)
+    private LocalDateTime addedAt;
+
+    @Column(name = "version", nullable = false)
+    private Long version;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    // Ordered by name
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "authors", nullable = false)
+    private List<BookViewName> authors = new ArrayList<>();
+
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "categories", nullable = false)
+    private List<BookViewName> categories = new ArrayList<>();
+
+    public static BookView fromBook(Book book) {
+        var view = new BookView();
+        view.setId(book.getId());
+        view.fill(book);
+        return view;
+    }
+
+    // Everything but the id is taken from the book
+    public void fill(Book book) {
+        setTitle(book.getTitle());
+        setPublishedAt(book.getPublishedAt());
+        setTotalPages(book.getTotalPages());
+        setAddedAt(book.getAddedAt());
+        setVersion(book.getVersion());
+        setUpdatedAt(book.getUpdatedAt());
+        setAuthors(toNames(book.getAuthors(), author -> new BookViewName(author.getId(), author.getName())));
+        setCategories(toNames(book.getCategories(), category -> new BookViewName(category.getId() != null ? category.getId().longValue() : null, category.getName())));
+    }
+
+    // Lists are replaced rather than changed in place, so the change is seen by the dirty checking for sure
+    public static List<BookViewName> withName(List<BookViewName> names, BookViewName name) {
+        var namesChanged = new ArrayList<>(names);
+        namesChanged.removeIf(existing -> existing.name().equals(name.name()));
+        namesChanged.add(name);
+        namesChanged.sort(Comparator.comparing(BookViewName::name));
+        return namesChanged;
+    }
+
+    public static List<BookViewName> withoutName(List<BookViewName> names, String name) {
+        var namesChanged = new ArrayList<>(names);
+        namesChanged.removeIf(existing -> existing.name().equals(name));
+        return namesChanged;
+    }
+
+    private static <T> List<BookViewName> toNames(Collection<T> values, Function<T, BookViewName> toName) {
+        return values.stream()
+                .map(toName)
+                .sorted(Comparator.comparing(BookViewName::name))
+                .collect(Collectors.toCollection(ArrayList::new));
+    }
+}
@@ -0,0 +1,7 @@
+package com.example.model;
+
+/**
+ * An author or a category of a book as it's embedded into {@link BookView}.
+ */
+public record BookViewName(Long id, String name) {
+}
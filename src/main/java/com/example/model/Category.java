@@ -4,25 +4,22 @@ import jakarta.persistence.*;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Size;
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
 
 import java.util.HashSet;
 import java.util.Set;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "categories")
+@NaturalIdCache(region = "categories-by-name")
 @Table(
         name = "categories",
         uniqueConstraints = @UniqueConstraint(columnNames = { "name" })
 )
-@NamedEntityGraph(
-        name = "graph.CategoryBooksAuthors",
-        attributeNodes = @NamedAttributeNode(value = "books", subgraph = "subgraph.book"),
-        subgraphs = {
-                @NamedSubgraph(name = "subgraph.book", attributeNodes = {
-                        @NamedAttributeNode(value = "categories"),
-                        @NamedAttributeNode(value = "authors"),
-                })
-        }
-)
 @NoArgsConstructor @AllArgsConstructor
 @Getter @Setter
 @EqualsAndHashCode(of = "name")
@@ -30,9 +27,11 @@ import java.util.Set;
 public class Category {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "categories_seq")
+    @SequenceGenerator(name = "categories_seq", sequenceName = "categories_seq", allocationSize = 50)
     private Integer id;
 
+    @NaturalId
     @Column(name = "name")
     @NotNull
     @Size(min = 1, max = 500)
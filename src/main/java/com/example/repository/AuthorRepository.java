@@ -1,17 +1,18 @@
 package com.example.repository;
 
 import com.example.model.Author;
-import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.lang.NonNull;
 
 import java.util.List;
-import java.util.Optional;
 
 public interface AuthorRepository extends JpaRepository<Author, Long> {
 
-    @EntityGraph(value = "graph.AuthorBooksCategories")
-    Optional<Author> findByName(@NonNull String name);
-
     List<Author> findAllByNameIn(@NonNull List<String> names);
+
+    // The latest names first, neither entities (nor their second-level cache entries) nor a count query
+    @Query("SELECT new com.example.repository.NameId(a.name, a.id) FROM Author a ORDER BY a.id DESC")
+    List<NameId> findLatestNames(@NonNull Limit limit);
 }
@@ -1,8 +1,10 @@
 package com.example.repository;
 
 import com.example.model.Book;
-import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.lang.NonNull;
 
 import java.util.List;
@@ -10,16 +12,14 @@ import java.util.Optional;
 
 public interface BookRepository extends JpaRepository<Book, Long>, BookRepositoryCustom {
 
-    @Override
-    @NonNull
-    @EntityGraph(attributePaths = { "categories", "authors" })
-    List<Book> findAll();
+    // Keyset pagination: only the ids of the page are selected here, associations are loaded separately
+    @Query("SELECT b.id FROM Book b WHERE b.id > :afterId ORDER BY b.id")
+    List<Long> findIdsAfter(@NonNull @Param("afterId") Long afterId, @NonNull Pageable pageable);
 
-    @Override
-    @NonNull
-    @EntityGraph(attributePaths = { "categories", "authors" })
-    Optional<Book> findById(@NonNull Long id);
+    @Query("SELECT new com.example.repository.BookVersion(b.id, b.version, b.updatedAt) FROM Book b WHERE b.id = :id")
+    Optional<BookVersion> findVersionById(@NonNull @Param("id") Long id);
 
-    @EntityGraph(attributePaths = { "categories", "authors" })
-    Optional<Book> findByTitle(@NonNull String title);
+    // The first one by id, like findWithAssociationsByTitle
+    @Query("SELECT new com.example.repository.BookVersion(b.id, b.version, b.updatedAt) FROM Book b WHERE b.title = :title ORDER BY b.id LIMIT 1")
+    Optional<BookVersion> findVersionByTitle(@NonNull @Param("title") String title);
 }
@@ -1,7 +1,46 @@
 package com.example.repository;
 
 import com.example.model.Book;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
 
 public interface BookRepositoryCustom {
+
     Book saveCascading(Book book);
+
+    List<Book> saveAllCascading(List<Book> books);
+
+    Optional<Book> findWithAssociationsById(Long id);
+
+    Optional<Book> findWithAssociationsByTitle(String title);
+
+    List<Book> findAllWithAssociationsByIdIn(Collection<Long> ids);
+
+    List<BookSearchResult> search(String query, BookSearchResult after, int limit);
+
+    // Every book with its authors and categories, ordered by id and read one at a time. The books are not managed
+    void forEachWithAssociations(Consumer<Book> action);
+
+    // Keys of the page of books matching the filter (all books if it's null), after the given one. Books themselves are loaded by ids
+    List<BookSortKey> findKeys(Specification<Book> filter, BookSort sort, boolean descending, BookSortKey after, int limit);
+
+    List<BookSortKey> findKeysByAuthor(String authorName, BookSort sort, boolean descending, BookSortKey after, int limit);
+
+    List<BookSortKey> findKeysByCategory(String categoryName, BookSort sort, boolean descending, BookSortKey after, int limit);
+
+    JoinRowChange addAuthor(Long bookId, String authorName, Long expectedVersion);
+
+    JoinRowChange removeAuthor(Long bookId, String authorName, Long expectedVersion);
+
+    JoinRowChange addCategory(Long bookId, String categoryName, Long expectedVersion);
+
+    JoinRowChange removeCategory(Long bookId, String categoryName, Long expectedVersion);
+
+    // Sets the fields (by names of the entity) with one UPDATE, false if the book doesn't exist or has another version
+    boolean patch(Long bookId, Map<String, Object> fields, Long expectedVersion);
 }
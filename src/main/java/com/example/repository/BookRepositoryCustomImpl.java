@@ -1,47 +1,642 @@
 package com.example.repository;
 
+import com.example.cache.AuthorNameDictionary;
+import com.example.cache.CategoryNameDictionary;
 import com.example.model.Author;
 import com.example.model.Book;
+import com.example.model.BookView;
 import com.example.model.Category;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.persistence.EntityManager;
+import jakarta.persistence.FlushModeType;
 import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Order;
+import jakarta.persistence.criteria.Predicate;
 import jakarta.validation.constraints.NotNull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.transaction.annotation.Propagation;
+import org.hibernate.SessionFactory;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.query.NativeQuery;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.sql.Array;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 @RequiredArgsConstructor
 @Slf4j
 public class BookRepositoryCustomImpl implements BookRepositoryCustom {
 
+    private static final Set<String> PATCHABLE_FIELDS = Set.of("title", "publishedAt", "totalPages", "addedAt");
+
     @PersistenceContext
     private EntityManager entityManager;
 
     private final CategoryRepository categoryRepository;
     private final AuthorRepository authorRepository;
+    private final BookViewRepository bookViewRepository;
+    private final CategoryNameDictionary categoryNameDictionary;
+    private final AuthorNameDictionary authorNameDictionary;
+    private final MeterRegistry meterRegistry;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}")
+    private int batchSize;
+
+    @Value("${books.export.fetch-size:500}")
+    private int exportFetchSize;
 
+    // Joins the transaction of the caller, so a book loaded there is saved (and its version is checked and bumped) once
     @Override
-    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Transactional
     public Book saveCascading(@NotNull Book book) {
 
-        // Persisting new categories
-        var categories = saveCategoriesWhichNotExist(book.getCategories());
-        book.setCategories(new HashSet<>(categories));
+        // A managed book holds the transient categories and authors of the request until they are resolved,
+        // so the queries of names must not flush it
+        var flushMode = entityManager.getFlushMode();
+        entityManager.setFlushMode(FlushModeType.COMMIT);
+        try {
+            // Persisting new categories
+            var categories = timed("saveCascading", "categories", () -> saveCategoriesWhichNotExist(book.getCategories()));
+            book.setCategories(new HashSet<>(categories));
+
+            // Persisting new authors
+            var authors = timed("saveCascading", "authors", () -> saveAuthorsWhichNotExist(book.getAuthors()));
+            book.setAuthors(new HashSet<>(authors));
+        } finally {
+            entityManager.setFlushMode(flushMode);
+        }
+
+        // Flushed here rather than on commit, so the phase includes the statements of the book
+        return timed("saveCascading", "book", () -> {
+            if (book.isNew()) {
+                // Id, version and time of change are set by the persist already, the view goes into the same flush
+                entityManager.persist(book);
+                entityManager.persist(BookView.fromBook(book));
+                entityManager.flush();
+                return book;
+            }
+            // Version and time of change are set by the flush, then the view is updated by one statement without loading it
+            var bookSaved = entityManager.merge(book);
+            entityManager.flush();
+            bookViewRepository.updateWithoutLoading(BookView.fromBook(bookSaved));
+            return bookSaved;
+        });
+    }
+
+    @Override
+    @Transactional
+    public List<Book> saveAllCascading(@NotNull List<Book> books) {
+
+        if (books.isEmpty()) {
+            return books;
+        }
+
+        log.info("Saving {} books with their categories and authors", books.size());
+
+        // Names of the whole import are resolved at once, not book by book
+        var categoriesByName = timed("saveAllCascading", "categories", () -> saveCategoriesWhichNotExist(books.stream()
+                        .flatMap(book -> book.getCategories().stream())
+                        .collect(Collectors.toSet())))
+                .stream()
+                .collect(Collectors.toMap(Category::getName, Function.identity()));
+
+        var authorsByName = timed("saveAllCascading", "authors", () -> saveAuthorsWhichNotExist(books.stream()
+                        .flatMap(book -> book.getAuthors().stream())
+                        .collect(Collectors.toSet())))
+                .stream()
+                .collect(Collectors.toMap(Author::getName, Function.identity()));
+
+        timed("saveAllCascading", "books", () -> persistInBatches(books, categoriesByName, authorsByName));
+
+        return books;
+    }
 
-        // Persisting new authors
-        var authors = saveAuthorsWhichNotExist(book.getAuthors());
-        book.setAuthors(new HashSet<>(authors));
+    private List<Book> persistInBatches(List<Book> books,
+                                        Map<String, Category> categoriesByName,
+                                        Map<String, Author> authorsByName) {
 
-        if (book.isNew()) {
+        for (int i = 0; i < books.size(); i++) {
+
+            var book = books.get(i);
+            book.setCategories(book.getCategories().stream()
+                    .map(category -> categoriesByName.get(category.getName()))
+                    .collect(Collectors.toSet()));
+            book.setAuthors(book.getAuthors().stream()
+                    .map(author -> authorsByName.get(author.getName()))
+                    .collect(Collectors.toSet()));
+
+            // Id, version and time of change are set by the persist already, the view goes into the same batches
             entityManager.persist(book);
-            return book;
+            entityManager.persist(BookView.fromBook(book));
+
+            // Every full JDBC batch is sent and detached, so the persistence context does not grow with the import
+            if ((i + 1) % batchSize == 0) {
+                entityManager.flush();
+                entityManager.clear();
+            }
+        }
+
+        entityManager.flush();
+        entityManager.clear();
+
+        return books;
+    }
+
+    // Duration of a phase of saving books, the whole calls are timed by Spring Data ("spring.data.repository.invocations")
+    private <T> T timed(String operation, String phase, Supplier<T> action) {
+        return Timer.builder("books.repository.save.phase")
+                .description("Duration of a phase of saving books with their categories and authors")
+                .tag("operation", operation)
+                .tag("phase", phase)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(action);
+    }
+
+    /*
+     * Fetching both @ManyToMany collections in one join multiplies the rows (books x authors x categories).
+     * Instead, each collection is fetched by its own query, so every association comes back as exactly one row.
+     */
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<Book> findWithAssociationsById(@NotNull Long id) {
+        var books = entityManager.createQuery("SELECT b FROM Book b LEFT JOIN FETCH b.authors WHERE b.id = :id", Book.class)
+                .setParameter("id", id)
+                .getResultList();
+        fetchCategories(books);
+        return books.stream().findFirst();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<Book> findWithAssociationsByTitle(@NotNull String title) {
+        var books = entityManager.createQuery("SELECT b FROM Book b LEFT JOIN FETCH b.authors WHERE b.title = :title ORDER BY b.id", Book.class)
+                .setParameter("title", title)
+                .getResultList();
+        fetchCategories(books);
+        return books.stream().findFirst();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Book> findAllWithAssociationsByIdIn(@NotNull Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        var books = entityManager.createQuery("SELECT b FROM Book b LEFT JOIN FETCH b.authors WHERE b.id IN :ids ORDER BY b.id", Book.class)
+                .setParameter("ids", ids)
+                .getResultList();
+        fetchCategories(books);
+        return books;
+    }
+
+    /*
+     * Ranked full-text search over the "search_vector" column (GIN indexed, maintained by triggers, see V4 migration).
+     * Pages go by keyset on (rank, id), the rank of a book is computed by the same function, so it compares exactly.
+     * The GIN index only finds the matches, it has no order: every page ranks all the books matching the query
+     * and sorts them (a top-N sort, as there is a limit), the keyset skips rows of the result, not of the reading.
+     * So a page costs as much as the number of matches, whichever page it is; a query matching most of the catalog
+     * is as slow as a scan of it. Capping the matches before ranking would bound it, but would drop the books past the cap.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<BookSearchResult> search(@NotNull String query, BookSearchResult after, int limit) {
+
+        var sql = new StringBuilder("""
+                SELECT b.id, ts_rank(b.search_vector, q) AS search_rank
+                FROM books b, websearch_to_tsquery('simple', :query) q
+                WHERE b.search_vector @@ q
+                """);
+        if (after != null) {
+            sql.append("""
+                    AND (ts_rank(b.search_vector, q) < :afterRank
+                         OR (ts_rank(b.search_vector, q) = :afterRank AND b.id > :afterId))
+                    """);
+        }
+        sql.append("ORDER BY search_rank DESC, b.id LIMIT :limit");
+
+        var nativeQuery = entityManager.createNativeQuery(sql.toString())
+                .setParameter("query", query)
+                .setParameter("limit", limit);
+        if (after != null) {
+            nativeQuery.setParameter("afterRank", after.rank())
+                    .setParameter("afterId", after.id());
+        }
+
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = nativeQuery.getResultList();
+
+        return rows.stream()
+                .map(row -> new BookSearchResult(((Number) row[0]).longValue(), ((Number) row[1]).floatValue()))
+                .toList();
+    }
+
+    /*
+     * Export of the whole catalog: one statement, its rows read by a forward-only cursor in chunks of the fetch size,
+     * so memory doesn't depend on the number of books. Authors and categories of a book come in the same row,
+     * as arrays of "id:name" (PostgreSQL fetches by the cursor only without auto-commit, hence the transaction).
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public void forEachWithAssociations(@NotNull Consumer<Book> action) {
+        jdbcTemplate.query(connection -> {
+            var statement = connection.prepareStatement("""
+                    SELECT b.id, b.title, b.published_at, b.total_pages, b.added_at, b.version, b.updated_at,
+                           ARRAY(SELECT a.id || ':' || a.name
+                                 FROM books_authors ba JOIN authors a ON a.id = ba.author_id
+                                 WHERE ba.book_id = b.id ORDER BY a.name) AS authors,
+                           ARRAY(SELECT c.id || ':' || c.name
+                                 FROM books_categories bc JOIN categories c ON c.id = bc.category_id
+                                 WHERE bc.book_id = b.id ORDER BY c.name) AS categories
+                    FROM books b
+                    ORDER BY b.id
+                    """, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(exportFetchSize);
+            return statement;
+        }, (RowCallbackHandler) resultSet -> action.accept(toBook(resultSet)));
+    }
+
+    private static Book toBook(ResultSet resultSet) throws SQLException {
+
+        var book = new Book();
+        book.setId(resultSet.getLong("id"));
+        book.setTitle(resultSet.getString("title"));
+        book.setPublishedAt(resultSet.getObject("published_at", LocalDate.class));
+        book.setTotalPages(resultSet.getInt("total_pages"));
+        book.setAddedAt(resultSet.getObject("added_at", LocalDateTime.class));
+        book.setVersion(resultSet.getLong("version"));
+        book.setUpdatedAt(resultSet.getObject("updated_at", LocalDateTime.class));
+
+        book.setAuthors(toNames(resultSet.getArray("authors"),
+                (id, name) -> new Author(Long.valueOf(id), name, new HashSet<>())));
+        book.setCategories(toNames(resultSet.getArray("categories"),
+                (id, name) -> new Category(Integer.valueOf(id), name, new HashSet<>())));
+
+        return book;
+    }
+
+    // Keeps the order of the names, the id is before the first ':' (a name may contain it too)
+    private static <T> Set<T> toNames(Array array, BiFunction<String, String, T> constructor) throws SQLException {
+        var names = new LinkedHashSet<T>();
+        for (var idAndName : (Object[]) array.getArray()) {
+            var value = idAndName.toString();
+            var separator = value.indexOf(':');
+            names.add(constructor.apply(value.substring(0, separator), value.substring(separator + 1)));
+        }
+        array.free();
+        return names;
+    }
+
+    /*
+     * Books matching the filters page by keyset on (sorted field, id). Every sorted field has an index of (field, id),
+     * and the author/category filters go through the join tables indexed by (author_id, book_id),
+     * so a page reads a few rows of an index however many books match.
+     */
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<BookSortKey> findKeys(Specification<Book> filter, @NotNull BookSort sort, boolean descending,
+                                      BookSortKey after, int limit) {
+
+        var criteriaBuilder = entityManager.getCriteriaBuilder();
+        var query = criteriaBuilder.createQuery(Object[].class);
+        var book = query.from(Book.class);
+
+        var id = book.<Long>get("id");
+        var key = book.get(sort.getField());
+
+        var predicates = new ArrayList<Predicate>();
+        if (filter != null) {
+            var predicate = filter.toPredicate(book, query, criteriaBuilder);
+            if (predicate != null) {
+                predicates.add(predicate);
+            }
+        }
+        if (after != null) {
+            var idAfter = descending ? criteriaBuilder.lessThan(id, after.id()) : criteriaBuilder.greaterThan(id, after.id());
+            if (sort == BookSort.ID) {
+                predicates.add(idAfter);
+            } else {
+                predicates.add(criteriaBuilder.or(
+                        isAfter(criteriaBuilder, key, after.key(), descending),
+                        criteriaBuilder.and(criteriaBuilder.equal(key, after.key()), idAfter)));
+            }
+        }
+
+        var orders = new ArrayList<Order>();
+        if (sort != BookSort.ID) {
+            orders.add(descending ? criteriaBuilder.desc(key) : criteriaBuilder.asc(key));
+        }
+        orders.add(descending ? criteriaBuilder.desc(id) : criteriaBuilder.asc(id));
+
+        query.multiselect(id, key)
+                .where(predicates.toArray(Predicate[]::new))
+                .orderBy(orders);
+
+        return entityManager.createQuery(query)
+                .setMaxResults(limit)
+                .getResultList()
+                .stream()
+                .map(row -> new BookSortKey((Long) row[0], row[1]))
+                .toList();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<BookSortKey> findKeysByAuthor(@NotNull String authorName, @NotNull BookSort sort, boolean descending,
+                                              BookSortKey after, int limit) {
+        return findKeys(BookSpecifications.hasAuthor(authorName), sort, descending, after, limit);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<BookSortKey> findKeysByCategory(@NotNull String categoryName, @NotNull BookSort sort, boolean descending,
+                                                BookSortKey after, int limit) {
+        return findKeys(BookSpecifications.hasCategory(categoryName), sort, descending, after, limit);
+    }
+
+    // Keys of the sorts are of the type of their field, all of them comparable
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static Predicate isAfter(CriteriaBuilder criteriaBuilder, Expression key, Object after, boolean descending) {
+        return descending
+                ? criteriaBuilder.lessThan(key, (Comparable) after)
+                : criteriaBuilder.greaterThan(key, (Comparable) after);
+    }
+
+    /*
+     * Authors and categories are added to and removed from a book by statements against the join tables,
+     * without loading the book. Three statements, if a row is changed: the UPDATE of the book checking If-Match
+     * (it bumps the version only if the join row is to change), the INSERT or DELETE of the join row
+     * and the UPDATE of the view aggregating the names of the join table. A name known by the dictionary needs no more
+     * statements, a new one is saved first.
+     * Native statements name the tables they change, otherwise Hibernate evicts the whole second-level cache.
+     * It evicts cached entities of the named tables only, so the cached collection of the book is evicted here.
+     */
+
+    @Override
+    @Transactional
+    public JoinRowChange addAuthor(@NotNull Long bookId, @NotNull String authorName, Long expectedVersion) {
+        var author = saveAuthorsWhichNotExist(List.of(new Author(null, authorName, new HashSet<>())))
+                .iterator()
+                .next();
+        return addJoinRow("authors", "books_authors", "author_id", "authors", bookId, author.getId(), expectedVersion);
+    }
+
+    @Override
+    @Transactional
+    public JoinRowChange removeAuthor(@NotNull Long bookId, @NotNull String authorName, Long expectedVersion) {
+        return removeJoinRow("authors", "books_authors", "author_id", "authors", bookId, authorName, expectedVersion);
+    }
+
+    @Override
+    @Transactional
+    public JoinRowChange addCategory(@NotNull Long bookId, @NotNull String categoryName, Long expectedVersion) {
+        var category = saveCategoriesWhichNotExist(List.of(new Category(null, categoryName, new HashSet<>())))
+                .iterator()
+                .next();
+        return addJoinRow("categories", "books_categories", "category_id", "categories", bookId, category.getId(), expectedVersion);
+    }
+
+    @Override
+    @Transactional
+    public JoinRowChange removeCategory(@NotNull Long bookId, @NotNull String categoryName, Long expectedVersion) {
+        return removeJoinRow("categories", "books_categories", "category_id", "categories", bookId, categoryName, expectedVersion);
+    }
+
+    private JoinRowChange addJoinRow(String collection, String joinTable, String column, String namesTable, Long bookId, Number id,
+                                     Long expectedVersion) {
+
+        // A name saved by JPA (without upsert) is inserted before the join row references it,
+        // the statements below don't flush it, as they don't name its table
+        entityManager.flush();
+
+        // ON CONFLICT waits for a concurrent insert of the same row and skips it then
+        var sql = String.format("""
+                INSERT INTO %1$s (book_id, %2$s)
+                SELECT b.id, :id FROM books b
+                WHERE b.id = :bookId
+                  AND NOT EXISTS (SELECT 1 FROM %1$s j WHERE j.book_id = :bookId AND j.%2$s = :id)""", joinTable, column);
+        if (expectedVersion != null) {
+            sql += " AND b.version = :expectedVersion";
+        }
+        if (isPostgreSQL()) {
+            sql += " ON CONFLICT DO NOTHING";
+        }
+
+        var query = entityManager.createNativeQuery(sql)
+                .unwrap(NativeQuery.class)
+                .addSynchronizedQuerySpace(joinTable)
+                .setParameter("id", id)
+                .setParameter("bookId", bookId);
+        if (expectedVersion != null) {
+            query.setParameter("expectedVersion", expectedVersion);
+        }
+
+        if (query.executeUpdate() == 0) {
+            return matchBook(bookId, expectedVersion);
+        }
+        incrementVersion(bookId, expectedVersion);
+        updateViewNames(collection, joinTable, column, namesTable, bookId);
+        evictCachedCollection(collection, bookId);
+        return JoinRowChange.CHANGED;
+    }
+
+    private JoinRowChange removeJoinRow(String collection, String joinTable, String column, String namesTable, Long bookId, String name,
+                                        Long expectedVersion) {
+
+        // A concurrent delete of the same row is waited for, the row is not deleted twice then
+        var sql = String.format("""
+                DELETE FROM %s
+                WHERE book_id = :bookId
+                  AND %s IN (SELECT n.id FROM %s n WHERE n.name = :name)""", joinTable, column, namesTable);
+        if (expectedVersion != null) {
+            sql += " AND EXISTS (SELECT 1 FROM books b WHERE b.id = :bookId AND b.version = :expectedVersion)";
+        }
+
+        var query = entityManager.createNativeQuery(sql)
+                .unwrap(NativeQuery.class)
+                .addSynchronizedQuerySpace(joinTable)
+                .setParameter("bookId", bookId)
+                .setParameter("name", name);
+        if (expectedVersion != null) {
+            query.setParameter("expectedVersion", expectedVersion);
+        }
+
+        if (query.executeUpdate() == 0) {
+            return matchBook(bookId, expectedVersion);
+        }
+        incrementVersion(bookId, expectedVersion);
+        updateViewNames(collection, joinTable, column, namesTable, bookId);
+        evictCachedCollection(collection, bookId);
+        return JoinRowChange.CHANGED;
+    }
+
+    // Tells a book that has (misses) the name already from a missing book or another version, when no join row was changed
+    private JoinRowChange matchBook(Long bookId, Long expectedVersion) {
+        var versions = entityManager.createQuery("SELECT b.version FROM Book b WHERE b.id = :bookId", Long.class)
+                .setParameter("bookId", bookId)
+                .getResultList();
+        if (versions.isEmpty() || expectedVersion != null && !expectedVersion.equals(versions.getFirst())) {
+            return JoinRowChange.BOOK_NOT_MATCHED;
+        }
+        return JoinRowChange.UNCHANGED;
+    }
+
+    /*
+     * Goes only after a join row was changed, so the version is never bumped without the view.
+     * The If-Match version is checked once more on the locked row, a concurrent change of the book rolls back this one
+     */
+    private void incrementVersion(Long bookId, Long expectedVersion) {
+
+        var sql = "UPDATE books SET version = version + 1, updated_at = :updatedAt WHERE id = :bookId";
+        if (expectedVersion != null) {
+            sql += " AND version = :expectedVersion";
+        }
+
+        var query = entityManager.createNativeQuery(sql)
+                .unwrap(NativeQuery.class)
+                .addSynchronizedQuerySpace("books")
+                .setParameter("updatedAt", LocalDateTime.now())
+                .setParameter("bookId", bookId);
+        if (expectedVersion != null) {
+            query.setParameter("expectedVersion", expectedVersion);
+        }
+
+        if (query.executeUpdate() == 0) {
+            throw new OptimisticLockingFailureException(String.format("Book with id '%d' was changed concurrently", bookId));
+        }
+    }
+
+    /*
+     * The names are aggregated from the join table the way the V8 migration fills the view, ordered by name.
+     * The version and the time of change are copied from the book, so the view can't end up with a version of its own
+     */
+    private void updateViewNames(String collection, String joinTable, String column, String namesTable, Long bookId) {
+
+        var names = isPostgreSQL()
+                ? "COALESCE(jsonb_agg(jsonb_build_object('id', n.id, 'name', n.name) ORDER BY n.name), '[]')"
+                : "COALESCE(JSON_ARRAYAGG(JSON_OBJECT('id': n.id, 'name': n.name) ORDER BY n.name), JSON '[]')";
+
+        entityManager.createNativeQuery(String.format("""
+                        UPDATE book_view
+                        SET %1$s = (SELECT %5$s FROM %2$s j JOIN %3$s n ON n.id = j.%4$s WHERE j.book_id = :bookId),
+                            version = (SELECT b.version FROM books b WHERE b.id = :bookId),
+                            updated_at = (SELECT b.updated_at FROM books b WHERE b.id = :bookId)
+                        WHERE id = :bookId""", collection, joinTable, namesTable, column, names))
+                .unwrap(NativeQuery.class)
+                .addSynchronizedQuerySpace("book_view")
+                .setParameter("bookId", bookId)
+                .executeUpdate();
+    }
+
+    /*
+     * Only the collection of the changed book is evicted. The statements above name the books, book_view and the join tables,
+     * and Hibernate clears the regions of the entities in the named tables and of the collections of such entities.
+     * Neither books nor book_view is cached or an element of a cached collection, so no region is cleared as a whole.
+     * Evicted right away and once more after the transaction completes, so a reader can't cache the rows being changed
+     */
+    private void evictCachedCollection(String collection, Long bookId) {
+
+        var role = Book.class.getName() + "." + collection;
+        var cache = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getCache();
+
+        cache.evictCollectionData(role, bookId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    cache.evictCollectionData(role, bookId);
+                }
+            });
+        }
+    }
+
+    @Override
+    @Transactional
+    public boolean patch(@NotNull Long bookId, @NotNull Map<String, Object> fields, Long expectedVersion) {
+
+        if (fields.isEmpty()) {
+            throw new IllegalArgumentException("Nothing to patch");
+        }
+
+        // Names go into the query, so only the own fields of a book are accepted
+        var assignments = new StringBuilder();
+        for (var field : fields.keySet()) {
+            if (!PATCHABLE_FIELDS.contains(field)) {
+                throw new IllegalArgumentException(String.format("Field '%s' of a book cannot be patched", field));
+            }
+            assignments.append("b.").append(field).append(" = :").append(field).append(", ");
+        }
+
+        var updatedAt = LocalDateTime.now();
+
+        var jpql = "UPDATE Book b SET " + assignments + "b.version = b.version + 1, b.updatedAt = :updatedAt WHERE b.id = :id";
+        if (expectedVersion != null) {
+            jpql += " AND b.version = :expectedVersion";
+        }
+
+        var query = entityManager.createQuery(jpql)
+                .setParameter("updatedAt", updatedAt)
+                .setParameter("id", bookId);
+        fields.forEach(query::setParameter);
+        if (expectedVersion != null) {
+            query.setParameter("expectedVersion", expectedVersion);
+        }
+
+        // Neither this nor the update of the view clears a cached region, see evictCachedCollection(), collections stay the same
+        if (query.executeUpdate() == 0) {
+            return false;
         }
 
-        return entityManager.merge(book);
+        // The same fields, version and time of change in the view, its version was checked by the book already
+        var viewQuery = entityManager.createQuery("UPDATE BookView b SET " + assignments
+                        + "b.version = b.version + 1, b.updatedAt = :updatedAt WHERE b.id = :id")
+                .setParameter("updatedAt", updatedAt)
+                .setParameter("id", bookId);
+        fields.forEach(viewQuery::setParameter);
+        viewQuery.executeUpdate();
+
+        return true;
+    }
+
+    // Initializes categories of the already loaded (managed) books
+    private void fetchCategories(List<Book> books) {
+        if (books.isEmpty()) {
+            return;
+        }
+        var ids = books.stream().map(Book::getId).toList();
+        entityManager.createQuery("SELECT b FROM Book b LEFT JOIN FETCH b.categories WHERE b.id IN :ids", Book.class)
+                .setParameter("ids", ids)
+                .getResultList();
     }
 
     private Collection<Category> saveCategoriesWhichNotExist(@NotNull Collection<Category> categories) {
@@ -57,16 +652,50 @@ public class BookRepositoryCustomImpl implements BookRepositoryCustom {
                 .distinct()
                 .toList();
 
+        // Names known by the dictionary are resolved without a query
+        var categoriesResolved = new ArrayList<Category>();
+        var categoriesNamesUnknown = new ArrayList<String>();
+        for (var name : categoriesNames) {
+            var id = categoryNameDictionary.get(name);
+            if (id != null) {
+                categoriesResolved.add(new Category(id, name, new HashSet<>()));
+            } else {
+                categoriesNamesUnknown.add(name);
+            }
+        }
+        if (categoriesNamesUnknown.isEmpty()) {
+            return categoriesResolved;
+        }
+
+        var categoriesSaved = isPostgreSQL()
+                ? upsertNames("categories", "categories_seq", categoriesNamesUnknown,
+                        (id, name) -> new Category(id.intValue(), name, new HashSet<>()),
+                        categoryRepository::findAllByNameIn)
+                : saveCategoriesByName(categories, categoriesNamesUnknown);
+
+        categoryNameDictionary.putAllAfterCommit(categoriesSaved.stream()
+                .collect(Collectors.toMap(Category::getName, Category::getId)));
+
+        categoriesResolved.addAll(categoriesSaved);
+
+        return categoriesResolved;
+    }
+
+    private List<Category> saveCategoriesByName(Collection<Category> categories, List<String> categoriesNames) {
+
         var categoriesExisting = categoryRepository.findAllByNameIn(categoriesNames);
 
-        var categoriesNew = new HashSet<>(categories);
+        var categoriesNamesToSave = new HashSet<>(categoriesNames);
+        var categoriesNew = categories.stream()
+                .filter(category -> categoriesNamesToSave.contains(category.getName()))
+                .collect(Collectors.toCollection(HashSet::new));
         categoriesNew.removeAll(categoriesExisting);
         if (categoriesNew.isEmpty()) {
             return categoriesExisting;
         }
 
+        // Ids come from the sequence, the rows are inserted with the next flush of the books
         var categoriesPersisted = categoryRepository.saveAll(categoriesNew);
-        categoryRepository.flush();
 
         categoriesPersisted.addAll(categoriesExisting);
 
@@ -86,19 +715,106 @@ public class BookRepositoryCustomImpl implements BookRepositoryCustom {
                 .distinct()
                 .toList();
 
+        // Names known by the dictionary are resolved without a query
+        var authorsResolved = new ArrayList<Author>();
+        var authorsNamesUnknown = new ArrayList<String>();
+        for (var name : authorsNames) {
+            var id = authorNameDictionary.get(name);
+            if (id != null) {
+                authorsResolved.add(new Author(id, name, new HashSet<>()));
+            } else {
+                authorsNamesUnknown.add(name);
+            }
+        }
+        if (authorsNamesUnknown.isEmpty()) {
+            return authorsResolved;
+        }
+
+        var authorsSaved = isPostgreSQL()
+                ? upsertNames("authors", "authors_seq", authorsNamesUnknown,
+                        (id, name) -> new Author(id.longValue(), name, new HashSet<>()),
+                        authorRepository::findAllByNameIn)
+                : saveAuthorsByName(authors, authorsNamesUnknown);
+
+        authorNameDictionary.putAllAfterCommit(authorsSaved.stream()
+                .collect(Collectors.toMap(Author::getName, Author::getId)));
+
+        authorsResolved.addAll(authorsSaved);
+
+        return authorsResolved;
+    }
+
+    private List<Author> saveAuthorsByName(Collection<Author> authors, List<String> authorsNames) {
+
         var authorsExisting = authorRepository.findAllByNameIn(authorsNames);
 
-        var authorsNew = new HashSet<>(authors);
+        var authorsNamesToSave = new HashSet<>(authorsNames);
+        var authorsNew = authors.stream()
+                .filter(author -> authorsNamesToSave.contains(author.getName()))
+                .collect(Collectors.toCollection(HashSet::new));
         authorsNew.removeAll(authorsExisting);
         if (authorsNew.isEmpty()) {
             return authorsExisting;
         }
 
+        // Ids come from the sequence, the rows are inserted with the next flush of the books
         var authorsPersisted = authorRepository.saveAll(authorsNew);
-        authorRepository.flush();
 
         authorsPersisted.addAll(authorsExisting);
 
         return authorsPersisted;
     }
+
+    /*
+     * Resolves names with at most two statements, regardless of how many names there are:
+     * missing names are inserted by one INSERT ... ON CONFLICT DO NOTHING, which returns only the inserted rows,
+     * and the rest (existing before or inserted by a concurrent transaction meanwhile) are selected afterwards.
+     * Names are inserted in sorted order, so concurrent imports lock the unique index entries in the same order.
+     * The statement names its table, so Hibernate evicts the cached authors (categories), not the whole second-level cache.
+     */
+    private <T> List<T> upsertNames(String table,
+                                    String sequence,
+                                    List<String> names,
+                                    BiFunction<Number, String, T> insertedMapper,
+                                    Function<List<String>, List<T>> existingFinder) {
+
+        var sortedNames = names.stream().sorted().toArray(String[]::new);
+
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = entityManager.createNativeQuery(String.format("""
+                        INSERT INTO %s (id, name)
+                        SELECT nextval('%s'), name FROM unnest(CAST(:names AS varchar[])) AS name ORDER BY name
+                        ON CONFLICT (name) DO NOTHING
+                        RETURNING id, name""", table, sequence))
+                .unwrap(NativeQuery.class)
+                .addSynchronizedQuerySpace(table)
+                .setParameter("names", sortedNames)
+                .getResultList();
+
+        var result = new ArrayList<T>(names.size());
+        var namesInserted = new HashSet<String>();
+        for (var row : rows) {
+            var name = (String) row[1];
+            result.add(insertedMapper.apply((Number) row[0], name));
+            namesInserted.add(name);
+        }
+
+        if (namesInserted.size() < names.size()) {
+            var namesExisting = names.stream()
+                    .filter(name -> !namesInserted.contains(name))
+                    .toList();
+            result.addAll(existingFinder.apply(namesExisting));
+        }
+
+        return result;
+    }
+
+    // INSERT ... ON CONFLICT ... RETURNING and jsonb are PostgreSQL specific,
+    // with other databases (H2 in tests) names are saved by JPA and aggregated by the standard SQL/JSON functions
+    private boolean isPostgreSQL() {
+        return entityManager.getEntityManagerFactory()
+                .unwrap(SessionFactoryImplementor.class)
+                .getJdbcServices()
+                .getDialect() instanceof PostgreSQLDialect;
+    }
 }
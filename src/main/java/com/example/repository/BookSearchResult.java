@@ -0,0 +1,5 @@
+package com.example.repository;
+
+// Id of a book matched by a full-text query with its rank, the higher the rank the better the match
+public record BookSearchResult(Long id, float rank) {
+}
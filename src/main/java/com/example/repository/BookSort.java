@@ -0,0 +1,48 @@
+package com.example.repository;
+
+import com.example.api.request.InvalidRequestException;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.function.Function;
+
+// Orders of the keyset pages of books, every order ends with the id, so a position in it is unique.
+// Each one has an index of (field, id) in the database, see V7__Add_Books_Query_Indexes.sql
+public enum BookSort {
+
+    ID("id", Long::valueOf),
+    TITLE("title", key -> key),
+    PUBLISHED_AT("publishedAt", LocalDate::parse),
+    TOTAL_PAGES("totalPages", Integer::valueOf),
+    ADDED_AT("addedAt", LocalDateTime::parse);
+
+    private final String field;
+    private final Function<String, Object> keyParser;
+
+    BookSort(String field, Function<String, Object> keyParser) {
+        this.field = field;
+        this.keyParser = keyParser;
+    }
+
+    // Name of the field of the entity (and of the API)
+    public String getField() {
+        return field;
+    }
+
+    public Object parseKey(String key) {
+        try {
+            return keyParser.apply(key);
+        } catch (NumberFormatException | DateTimeParseException e) {
+            throw new InvalidRequestException(String.format("Malformed sort key '%s' of '%s'", key, field), e);
+        }
+    }
+
+    public static BookSort ofField(String field) {
+        return Arrays.stream(values())
+                .filter(sort -> sort.field.equals(field))
+                .findAny()
+                .orElseThrow(() -> new InvalidRequestException(String.format("Books cannot be sorted by '%s'", field)));
+    }
+}
@@ -0,0 +1,5 @@
+package com.example.repository;
+
+// Position of a book in a listing ordered by a BookSort: the value of the sorted field and the id
+public record BookSortKey(Long id, Object key) {
+}
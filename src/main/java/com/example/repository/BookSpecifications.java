@@ -0,0 +1,60 @@
+package com.example.repository;
+
+import com.example.model.Book;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Filters of the book queries. A range is closed, an absent bound leaves it open,
+ * and a filter without any value is null, so it's skipped by {@link Specification#allOf}.
+ */
+public final class BookSpecifications {
+
+    private BookSpecifications() {
+    }
+
+    public static Specification<Book> publishedBetween(LocalDate from, LocalDate to) {
+        return between("publishedAt", from, to);
+    }
+
+    public static Specification<Book> totalPagesBetween(Integer min, Integer max) {
+        return between("totalPages", min, max);
+    }
+
+    public static Specification<Book> addedBetween(LocalDateTime from, LocalDateTime to) {
+        return between("addedAt", from, to);
+    }
+
+    // Names are unique, so the join yields at most one row per book
+    public static Specification<Book> hasAuthor(String authorName) {
+        if (authorName == null) {
+            return null;
+        }
+        return (root, query, criteriaBuilder) -> criteriaBuilder.equal(root.join("authors").get("name"), authorName);
+    }
+
+    public static Specification<Book> hasCategory(String categoryName) {
+        if (categoryName == null) {
+            return null;
+        }
+        return (root, query, criteriaBuilder) -> criteriaBuilder.equal(root.join("categories").get("name"), categoryName);
+    }
+
+    private static <T extends Comparable<? super T>> Specification<Book> between(String field, T from, T to) {
+        if (from == null && to == null) {
+            return null;
+        }
+        return (root, query, criteriaBuilder) -> {
+            var path = root.<T>get(field);
+            if (from == null) {
+                return criteriaBuilder.lessThanOrEqualTo(path, to);
+            }
+            if (to == null) {
+                return criteriaBuilder.greaterThanOrEqualTo(path, from);
+            }
+            return criteriaBuilder.between(path, from, to);
+        };
+    }
+}
@@ -0,0 +1,7 @@
+package com.example.repository;
+
+import java.time.LocalDateTime;
+
+// Version of a book and the time of its last change, selected without the associations to answer conditional requests
+public record BookVersion(Long id, Long version, LocalDateTime updatedAt) {
+}
@@ -0,0 +1,31 @@
+package com.example.repository;
+
+import com.example.model.BookView;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.lang.NonNull;
+
+import java.util.Optional;
+
+public interface BookViewRepository extends JpaRepository<BookView, Long> {
+
+    // The first one by id, like findVersionByTitle
+    Optional<BookView> findFirstByTitleOrderByIdAsc(@NonNull String title);
+
+    // One UPDATE of everything but the id, unlike save the view is not loaded (merged) first
+    @Modifying
+    @Query("""
+            UPDATE BookView v
+            SET v.title = :#{#view.title}, v.publishedAt = :#{#view.publishedAt}, v.totalPages = :#{#view.totalPages},
+                v.addedAt = :#{#view.addedAt}, v.version = :#{#view.version}, v.updatedAt = :#{#view.updatedAt},
+                v.authors = :#{#view.authors}, v.categories = :#{#view.categories}
+            WHERE v.id = :#{#view.id}""")
+    void updateWithoutLoading(@NonNull @Param("view") BookView view);
+
+    // One DELETE, unlike deleteById the view is not loaded first
+    @Modifying
+    @Query("DELETE FROM BookView v WHERE v.id = :id")
+    void deleteWithoutLoadingById(@NonNull @Param("id") Long id);
+}
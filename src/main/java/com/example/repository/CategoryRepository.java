@@ -1,17 +1,18 @@
 package com.example.repository;
 
 import com.example.model.Category;
-import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.lang.NonNull;
 
 import java.util.List;
-import java.util.Optional;
 
 public interface CategoryRepository extends JpaRepository<Category, Integer> {
 
-    @EntityGraph(value = "graph.CategoryBooksAuthors")
-    Optional<Category> findByName(@NonNull String name);
-
     List<Category> findAllByNameIn(@NonNull List<String> names);
+
+    // The latest names first, neither entities (nor their second-level cache entries) nor a count query
+    @Query("SELECT new com.example.repository.NameId(c.name, c.id) FROM Category c ORDER BY c.id DESC")
+    List<NameId> findLatestNames(@NonNull Limit limit);
 }
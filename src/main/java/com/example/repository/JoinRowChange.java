@@ -0,0 +1,13 @@
+package com.example.repository;
+
+// Result of adding (removing) an author or a category of a book by its join row
+public enum JoinRowChange {
+
+    CHANGED,
+
+    // The book has the name already (has no such one to remove), its version is not bumped
+    UNCHANGED,
+
+    // The book doesn't exist or has another version than expected, nothing is changed
+    BOOK_NOT_MATCHED
+}
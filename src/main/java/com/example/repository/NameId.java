@@ -0,0 +1,5 @@
+package com.example.repository;
+
+// Name of an author or a category with its id, selected without loading the entity
+public record NameId(String name, Number id) {
+}
@@ -1,8 +1,12 @@
 package com.example.security;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.ExpiredJwtException;
 import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
 import jakarta.annotation.PostConstruct;
@@ -15,19 +19,32 @@ import org.springframework.security.authentication.UsernamePasswordAuthenticatio
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Base64;
 import java.util.Collection;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 @Component
 @RequiredArgsConstructor
 @Slf4j
 public class JwtTokenProvider {
 
+    private static final String AUTHORITIES_CLAIM = "authorities";
+    private static final String TOKEN_VERSION_CLAIM = "ver";
+
     @Value("${security.jwt.requestHeader}")
     private String requestHeader;
 
@@ -37,18 +54,47 @@ public class JwtTokenProvider {
     @Value("${security.jwt.validity}")
     private Long validityInSeconds;
 
+    // Builds the authentication from the verified claims alone, without loading the user
+    @Value("${security.jwt.stateless:true}")
+    private boolean stateless;
+
+    /*
+     * Claims of a token of an older version are not trusted, its user is loaded as in the stateful mode.
+     * Bumping it makes the tokens issued before pick up deleted users and changed roles, it's one version for all the users,
+     * so it can't revoke the tokens of one user without a lookup for all the others until their tokens expire
+     */
+    @Value("${security.jwt.token-version:1}")
+    private Integer tokenVersion;
+
+    @Value("${security.jwt.verified-tokens-cache-size:10000}")
+    private Long verifiedTokensCacheSize;
+
     private final UserDetailsService userDetailsService;
 
+    // Both are immutable and thread-safe, so they are built once and shared by all requests
+    private SecretKey signingKey;
+    private JwtParser jwtParser;
+
+    // Claims of recently verified tokens by token hash, every entry expires together with its token
+    private Cache<String, Claims> verifiedTokens;
+
     @PostConstruct
     private void init() {
         this.secretKey = Base64.getEncoder().encodeToString(secretKey.getBytes());
+        this.signingKey = Keys.hmacShaKeyFor(this.secretKey.getBytes());
+        this.jwtParser = Jwts.parser().verifyWith(signingKey).build();
+        this.verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(verifiedTokensCacheSize)
+                .expireAfter(new ExpiryAtTokenExpiration())
+                .build();
     }
 
     public String createToken(String username, Collection<? extends GrantedAuthority> authorities) {
 
         var claims = Jwts.claims()
                 .subject(username)
-                .add("authorities", authorities)
+                .add(AUTHORITIES_CLAIM, authorities)
+                .add(TOKEN_VERSION_CLAIM, tokenVersion)
                 .build();
 
         var now = new Date();
@@ -63,9 +109,27 @@ public class JwtTokenProvider {
     }
 
     public boolean validateToken(String token) {
+        return parseToken(token) != null;
+    }
+
+    /**
+     * Verifies the token and returns its claims, so a request needs to parse the token only once.
+     */
+    public Claims parseToken(String token) {
         try {
-            var claims = getClaims(token);
-            return claims.getExpiration().after(new Date());
+            var tokenHash = hash(token);
+            var claims = verifiedTokens.getIfPresent(tokenHash);
+            if (claims == null) {
+                claims = getClaims(token);
+                if (claims.getExpiration() == null) {
+                    throw new RuntimeException(HttpStatus.UNAUTHORIZED + ". Token has no expiration");
+                }
+                verifiedTokens.put(tokenHash, claims);
+            }
+            if (!claims.getExpiration().after(new Date())) {
+                throw new RuntimeException(HttpStatus.UNAUTHORIZED + ". Token expired");
+            }
+            return claims;
         } catch (ExpiredJwtException e) {
             log.info("Token expired");
             throw new RuntimeException(HttpStatus.UNAUTHORIZED + ". " + e.getMessage());
@@ -78,18 +142,77 @@ public class JwtTokenProvider {
         return request.getHeader(requestHeader);
     }
 
-    public Authentication getAuthentication(String token) {
-        var username = getClaims(token).getSubject();
-        var user = userDetailsService.loadUserByUsername(username);
-        return new UsernamePasswordAuthenticationToken(user.getUsername(), "", user.getAuthorities());
+    public Authentication getAuthentication(Claims claims) {
+
+        var username = claims.getSubject();
+
+        UserDetails user;
+        if (stateless && isCurrent(claims)) {
+            user = User.withUsername(username)
+                    .password("")
+                    .authorities(getAuthorities(claims))
+                    .build();
+        } else {
+            user = userDetailsService.loadUserByUsername(username);
+        }
+
+        return new UsernamePasswordAuthenticationToken(user, "", user.getAuthorities());
+    }
+
+    // Issued since the last bump of the token version, with the authorities of the user
+    private boolean isCurrent(Claims claims) {
+        var version = claims.get(TOKEN_VERSION_CLAIM, Integer.class);
+        return version != null && version >= tokenVersion && claims.containsKey(AUTHORITIES_CLAIM);
     }
 
     private Claims getClaims(String token) {
-        var parser = io.jsonwebtoken.Jwts.parser().verifyWith(getSigningKey()).build();
-        return parser.parseSignedClaims(token).getPayload();
+        return jwtParser.parseSignedClaims(token).getPayload();
     }
 
     private SecretKey getSigningKey() {
-        return Keys.hmacShaKeyFor(this.secretKey.getBytes());
+        return signingKey;
+    }
+
+    private static String hash(String token) {
+        if (token == null || token.isEmpty()) {
+            throw new IllegalArgumentException("Token cannot be empty");
+        }
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Authorities are serialized either as plain names (enums) or as {"authority": "..."} objects
+    private List<GrantedAuthority> getAuthorities(Claims claims) {
+        if (!(claims.get(AUTHORITIES_CLAIM) instanceof Collection<?> authorities)) {
+            return List.of();
+        }
+        return authorities.stream()
+                .map(authority -> authority instanceof Map<?, ?> map ? map.get("authority") : authority)
+                .filter(Objects::nonNull)
+                .<GrantedAuthority>map(authority -> new SimpleGrantedAuthority(authority.toString()))
+                .toList();
+    }
+
+    private static class ExpiryAtTokenExpiration implements Expiry<String, Claims> {
+
+        @Override
+        public long expireAfterCreate(String tokenHash, Claims claims, long currentTime) {
+            var millisLeft = claims.getExpiration().getTime() - System.currentTimeMillis();
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(millisLeft, 0));
+        }
+
+        @Override
+        public long expireAfterUpdate(String tokenHash, Claims claims, long currentTime, long currentDuration) {
+            return expireAfterCreate(tokenHash, claims, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String tokenHash, Claims claims, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
     }
 }
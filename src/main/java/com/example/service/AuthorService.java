@@ -1,19 +1,24 @@
 package com.example.service;
 
 import com.example.api.request.AuthorRequestDTO;
+import com.example.api.request.InvalidRequestException;
 import com.example.api.response.BookResponseDTO;
+import com.example.api.response.PageResponseDTO;
+import com.example.cache.BookResponseCache;
+import com.example.cache.SingleFlight;
 import com.example.model.Book;
-import com.example.repository.AuthorRepository;
 import com.example.repository.BookRepository;
+import com.example.repository.JoinRowChange;
 import jakarta.persistence.EntityNotFoundException;
 import jakarta.validation.constraints.NotNull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Objects;
 
 @Service
@@ -21,87 +26,95 @@ import java.util.Objects;
 @Slf4j
 public class AuthorService {
 
-    private final AuthorRepository authorRepository;
     private final BookRepository bookRepository;
+    private final BookResponseCache bookResponseCache;
+    private final BookPages bookPages;
+    private final SingleFlight singleFlight;
     
-    public Collection<BookResponseDTO> getBooksByAuthorName(@NotNull String authorName) {
-        log.info("Retrieving books by author '{}'", authorName);
-        var authorOptional = authorRepository.findByName(authorName);
-        if (authorOptional.isEmpty()) {
-            return Collections.emptyList();
-        }
-        var author = authorOptional.get();
-        return BookResponseDTO.fromBooks(author.getBooks());
+    // Keyset pages through the join table, a page loads only its own books and their associations
+    public PageResponseDTO<BookResponseDTO> getBooksByAuthorName(@NotNull String authorName,
+                                                                 String sort,
+                                                                 String cursor,
+                                                                 Integer size) {
+        log.info("Retrieving books by author '{}', sort '{}', page size {}", authorName, sort, size);
+        // Concurrent requests of the same page share one load of it
+        return singleFlight.execute("books-by-author", Arrays.asList(authorName, sort, cursor, size),
+                () -> bookPages.load(sort, cursor, size,
+                        (bookSort, descending, after, limit) -> bookRepository.findKeysByAuthor(authorName, bookSort, descending, after, limit)));
     }
 
     @Transactional
     public void addAuthorToBook(@NotNull Long bookId,
-                                @NotNull AuthorRequestDTO authorRequestDTO) {
+                                @NotNull AuthorRequestDTO authorRequestDTO,
+                                Long expectedVersion) {
 
         log.info("Adding author to the book with id '{}', new author - {}", bookId, authorRequestDTO);
 
         var authorName = authorRequestDTO.getName();
         if (Objects.requireNonNullElse(authorName, "").isEmpty()) {
-            throw new IllegalArgumentException("Author name cannot be empty");
+            throw new InvalidRequestException("Author name cannot be empty");
         }
 
-        var book = findBookByIdOrThrowException(bookId);
-
-        // Checking if the book already has the author with the same name
-        var bookHasThisAuthorAlready = book.getAuthors()
-                .stream()
-                .anyMatch(author -> Objects.equals(authorName, author.getName()));
-
-        if (bookHasThisAuthorAlready) {
-            log.warn("The book with id '{}' already has the author with name '{}'", bookId, authorName);
-            return;
+        // One join row is inserted, the book is not loaded
+        switch (bookRepository.addAuthor(bookId, authorName, expectedVersion)) {
+            case CHANGED -> bookResponseCache.invalidate(bookId);
+            case UNCHANGED -> log.warn("The book with id '{}' already has the author with name '{}'", bookId, authorName);
+            case BOOK_NOT_MATCHED -> checkBookVersionOrThrowException(bookId, expectedVersion);
         }
-
-        // If the author with the same name already exists in DB, then pick it instead of creating new
-        var author = authorRequestDTO.toAuthor();
-        book.addAuthor(author);
-
-        bookRepository.saveCascading(book);
     }
 
     @Transactional
     public boolean removeAuthorFromBook(@NotNull Long bookId,
-                                         @NotNull AuthorRequestDTO authorRequestDTO) {
+                                         @NotNull AuthorRequestDTO authorRequestDTO,
+                                         Long expectedVersion) {
 
         log.info("Removing author from the book with id '{}', author - {}", bookId, authorRequestDTO);
 
-        var book = findBookByIdOrThrowException(bookId);
-
-        var author = authorRequestDTO.toAuthor();
-
-        var resultOfRemoval = book.removeAuthor(author);
-        if (!resultOfRemoval) {
-            log.warn("Author '{}' for the book with id '{}' not found. The authors of the book are: {}",
-                    author, bookId, book.getAuthors());
-            return false;
+        // One join row is deleted, the book is not loaded
+        var change = bookRepository.removeAuthor(bookId, authorRequestDTO.getName(), expectedVersion);
+        switch (change) {
+            case CHANGED -> bookResponseCache.invalidate(bookId);
+            case UNCHANGED -> log.warn("Author '{}' for the book with id '{}' not found", authorRequestDTO.getName(), bookId);
+            case BOOK_NOT_MATCHED -> checkBookVersionOrThrowException(bookId, expectedVersion);
         }
-
-        bookRepository.saveCascading(book);
-        return true;
+        return change == JoinRowChange.CHANGED;
     }
 
     @Transactional
     public void updateAuthorsForBook(@NotNull Long bookId,
-                                        @NotNull Collection<AuthorRequestDTO> authorsRequestDTO) {
+                                        @NotNull Collection<AuthorRequestDTO> authorsRequestDTO,
+                                        Long expectedVersion) {
 
         log.info("Updating authors for the book with id '{}', new authors - {}", bookId, authorsRequestDTO);
 
-        var book = findBookByIdOrThrowException(bookId);
+        var book = findBookByIdOrThrowException(bookId, expectedVersion);
 
         var authors = AuthorRequestDTO.toAuthors(authorsRequestDTO);
 
         book.setAuthors(authors);
 
         bookRepository.saveCascading(book);
+        bookResponseCache.invalidate(bookId);
     }
 
-    private Book findBookByIdOrThrowException(Long bookId) {
-        return bookRepository.findById(bookId)
+    // Nothing is changed, the book is selected only to tell a missing book from an outdated If-Match
+    private void checkBookVersionOrThrowException(Long bookId, Long expectedVersion) {
+        var version = bookRepository.findVersionById(bookId)
                 .orElseThrow(() -> new EntityNotFoundException(String.format("Book with id '%d' not found", bookId)));
+        if (expectedVersion != null && !expectedVersion.equals(version.version())) {
+            throw new OptimisticLockingFailureException(String.format("Book with id '%d' has version %d, but %d was expected",
+                    bookId, version.version(), expectedVersion));
+        }
+    }
+
+    // The expected version comes from If-Match, without it the version is still checked by Hibernate on flush
+    private Book findBookByIdOrThrowException(Long bookId, Long expectedVersion) {
+        var book = bookRepository.findWithAssociationsById(bookId)
+                .orElseThrow(() -> new EntityNotFoundException(String.format("Book with id '%d' not found", bookId)));
+        if (expectedVersion != null && !expectedVersion.equals(book.getVersion())) {
+            throw new OptimisticLockingFailureException(String.format("Book with id '%d' has version %d, but %d was expected",
+                    bookId, book.getVersion(), expectedVersion));
+        }
+        return book;
     }
 }
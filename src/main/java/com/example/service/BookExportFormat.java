@@ -0,0 +1,35 @@
+package com.example.service;
+
+import com.example.api.request.InvalidRequestException;
+
+import java.util.Arrays;
+
+public enum BookExportFormat {
+
+    NDJSON("ndjson", "application/x-ndjson"),
+    CSV("csv", "text/csv");
+
+    private final String name;
+    private final String mediaType;
+
+    BookExportFormat(String name, String mediaType) {
+        this.name = name;
+        this.mediaType = mediaType;
+    }
+
+    // Name of the format in the API, also the extension of the file
+    public String getName() {
+        return name;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    public static BookExportFormat ofName(String name) {
+        return Arrays.stream(values())
+                .filter(format -> format.name.equalsIgnoreCase(name))
+                .findAny()
+                .orElseThrow(() -> new InvalidRequestException(String.format("Books cannot be exported as '%s'", name)));
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.service;
+
+import com.example.api.response.BookResponseDTO;
+import com.example.model.Author;
+import com.example.model.Book;
+import com.example.model.Category;
+import com.example.repository.BookRepository;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.validation.constraints.NotNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Export of the whole catalog, written while the books are read from the database, so only the current one is in memory.
+ * NDJSON has a book per line in the form of the API, CSV has a header and the names of authors (categories) joined by "; ".
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BookExportService {
+
+    private static final String CSV_HEADER = "id,title,publishedAt,totalPages,addedAt,version,updatedAt,authors,categories";
+    private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+
+    private final BookRepository bookRepository;
+    private final ObjectMapper objectMapper;
+
+    @FunctionalInterface
+    private interface BookWriter {
+        void write(Book book) throws IOException;
+    }
+
+    // The stream is flushed, but not closed
+    public void export(@NotNull BookExportFormat format, @NotNull OutputStream outputStream) throws IOException {
+
+        log.info("Exporting books as {}", format);
+
+        var writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+        var generator = objectMapper.getFactory()
+                .createGenerator(writer)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .setRootValueSeparator(null);  // Every line ends with its own '\n'
+
+        BookWriter bookWriter;
+        if (format == BookExportFormat.NDJSON) {
+            // Lines are flushed with the buffer, not one by one
+            var objectWriter = objectMapper.writerFor(BookResponseDTO.class)
+                    .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+            bookWriter = book -> {
+                objectWriter.writeValue(generator, BookResponseDTO.fromBook(book));
+                generator.writeRaw('\n');
+            };
+        } else {
+            writer.write(CSV_HEADER);
+            writer.write('\n');
+            writer.flush();
+            bookWriter = book -> writeCsvLine(writer, book);
+        }
+
+        var exported = new AtomicLong();
+        try {
+            bookRepository.forEachWithAssociations(book -> {
+                try {
+                    bookWriter.write(book);
+                    // The first book goes out at once, the next ones with the full buffers
+                    if (exported.incrementAndGet() == 1) {
+                        generator.flush();
+                        writer.flush();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        generator.flush();
+        writer.flush();
+
+        log.info("Exported {} books as {}", exported.get(), format);
+    }
+
+    private static void writeCsvLine(Writer writer, Book book) throws IOException {
+        writer.write(String.join(",",
+                String.valueOf(book.getId()),
+                csvValue(book.getTitle()),
+                String.valueOf(book.getPublishedAt()),
+                String.valueOf(book.getTotalPages()),
+                formatDateTime(book.getAddedAt()),
+                String.valueOf(book.getVersion()),
+                formatDateTime(book.getUpdatedAt()),
+                csvValue(joinNames(book.getAuthors(), Author::getName)),
+                csvValue(joinNames(book.getCategories(), Category::getName))));
+        writer.write('\n');
+    }
+
+    private static <T> String joinNames(Collection<T> values, Function<T, String> name) {
+        return values.stream()
+                .map(name)
+                .collect(Collectors.joining("; "));
+    }
+
+    private static String formatDateTime(LocalDateTime dateTime) {
+        return dateTime != null ? DATE_TIME_FORMAT.format(dateTime) : "";
+    }
+
+    // RFC 4180: a value with a separator, a quote or a line break is quoted, its quotes are doubled
+    private static String csvValue(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.contains(",") || value.contains("\"") || value.contains("\n") || value.contains("\r")) {
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+        return value;
+    }
+}
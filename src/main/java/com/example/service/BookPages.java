@@ -0,0 +1,108 @@
+package com.example.service;
+
+import com.example.api.pagination.PageCursor;
+import com.example.api.request.InvalidRequestException;
+import com.example.api.response.BookResponseDTO;
+import com.example.api.response.PageResponseDTO;
+import com.example.model.BookView;
+import com.example.repository.BookSort;
+import com.example.repository.BookSortKey;
+import com.example.repository.BookViewRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Keyset pages of books in a sorted listing (by a field of {@link BookSort}, with ",desc" for the descending order).
+ * Keys of the page are selected first, then the books of the page are read from their views (see {@link BookView}) by ids.
+ * The cursor holds the sort as well, so it can't be used with another one.
+ */
+@Component
+@RequiredArgsConstructor
+class BookPages {
+
+    private final BookViewRepository bookViewRepository;
+
+    @Value("${books.pagination.default-size:50}")
+    private int defaultPageSize;
+
+    @Value("${books.pagination.max-size:500}")
+    private int maxPageSize;
+
+    @FunctionalInterface
+    interface KeysQuery {
+        List<BookSortKey> find(BookSort sort, boolean descending, BookSortKey after, int limit);
+    }
+
+    PageResponseDTO<BookResponseDTO> load(String sortParam, String cursor, Integer size, KeysQuery keysQuery) {
+
+        var sortParts = (sortParam == null || sortParam.isBlank() ? "id" : sortParam.trim()).split(",", -1);
+        if (sortParts.length > 2 || (sortParts.length == 2 && !sortParts[1].matches("(?i)asc|desc"))) {
+            throw new InvalidRequestException(String.format("Malformed sort '%s', expected '<field>[,asc|desc]'", sortParam));
+        }
+        var sort = BookSort.ofField(sortParts[0]);
+        var descending = sortParts.length == 2 && sortParts[1].equalsIgnoreCase("desc");
+        var sortName = sort.getField() + (descending ? ",desc" : ",asc");
+
+        BookSortKey after = null;
+        if (cursor != null) {
+            var pageCursor = PageCursor.decode(cursor);
+            if (!sortName.equals(pageCursor.key(0))) {
+                throw new InvalidRequestException(String.format("Page cursor is of another sort than '%s'", sortName));
+            }
+            after = new BookSortKey(pageCursor.keyAsLong(2), sort.parseKey(pageCursor.key(1)));
+        }
+
+        var pageSize = resolvePageSize(size);
+
+        // One extra key is requested to find out whether there is a next page
+        var keys = keysQuery.find(sort, descending, after, pageSize + 1);
+
+        var hasNext = keys.size() > pageSize;
+        if (hasNext) {
+            keys = keys.subList(0, pageSize);
+        }
+        if (keys.isEmpty()) {
+            return new PageResponseDTO<>(Collections.emptyList(), null);
+        }
+
+        var books = loadBooks(keys.stream().map(BookSortKey::id).toList());
+
+        var last = keys.getLast();
+        var next = hasNext ? PageCursor.of(sortName, last.key(), last.id()).encode() : null;
+
+        return new PageResponseDTO<>(books, next);
+    }
+
+    // Views of the books by one statement, in the order of the ids (the ones deleted in between are skipped)
+    List<BookResponseDTO> loadBooks(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        var viewsById = bookViewRepository.findAllById(ids)
+                .stream()
+                .collect(Collectors.toMap(BookView::getId, Function.identity()));
+        return ids.stream()
+                .map(viewsById::get)
+                .filter(Objects::nonNull)
+                .map(BookResponseDTO::fromBookView)
+                .toList();
+    }
+
+    // The size of every page of books, the sorted listings as well as the pages by id and by rank of BookService
+    int resolvePageSize(Integer size) {
+        if (size == null) {
+            return defaultPageSize;
+        }
+        if (size < 1) {
+            throw new InvalidRequestException("Page size must be positive, but was " + size);
+        }
+        return Math.min(size, maxPageSize);
+    }
+}
@@ -1,16 +1,36 @@
 package com.example.service;
 
+import com.example.api.pagination.PageCursor;
+import com.example.api.request.BookPatchDTO;
+import com.example.api.request.BookQueryDTO;
 import com.example.api.request.BookRequestDTO;
+import com.example.api.request.InvalidRequestException;
 import com.example.api.response.BookResponseDTO;
+import com.example.api.response.BulkImportResponseDTO;
+import com.example.api.response.PageResponseDTO;
+import com.example.cache.BookResponseCache;
+import com.example.cache.SerializedBookResponse;
+import com.example.model.Book;
+import com.example.model.BookView;
 import com.example.repository.BookRepository;
+import com.example.repository.BookSearchResult;
+import com.example.repository.BookSpecifications;
+import com.example.repository.BookVersion;
+import com.example.repository.BookViewRepository;
 import jakarta.persistence.EntityNotFoundException;
+import jakarta.validation.Validator;
 import jakarta.validation.constraints.NotNull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Collections;
 import java.util.List;
 
 @Service
@@ -19,26 +39,131 @@ import java.util.List;
 public class BookService {
 
     private final BookRepository bookRepository;
+    private final BookViewRepository bookViewRepository;
+    private final BookResponseCache bookResponseCache;
+    private final Validator validator;
+    private final BookPages bookPages;
 
-    public List<BookResponseDTO> getAll() {
-        log.info("Retrieving all books");
-        return BookResponseDTO.fromBooks(bookRepository.findAll());
+    @Value("${books.import.max-size:10000}")
+    private int maxImportSize;
+
+    public PageResponseDTO<BookResponseDTO> getAll(String cursor, Integer size) {
+
+        var pageSize = bookPages.resolvePageSize(size);
+        var afterId = cursor != null ? PageCursor.decode(cursor).keyAsLong(0) : 0L;
+
+        log.info("Retrieving books after id '{}', page size {}", afterId, pageSize);
+
+        // One extra id is requested to find out whether there is a next page
+        var ids = bookRepository.findIdsAfter(afterId, PageRequest.ofSize(pageSize + 1));
+
+        var hasNext = ids.size() > pageSize;
+        if (hasNext) {
+            ids = ids.subList(0, pageSize);
+        }
+
+        var books = bookPages.loadBooks(ids);
+        var next = hasNext ? PageCursor.of(ids.getLast()).encode() : null;
+
+        return new PageResponseDTO<>(books, next);
+    }
+
+    public PageResponseDTO<BookResponseDTO> search(@NotNull String query, String cursor, Integer size) {
+
+        if (query.isBlank()) {
+            throw new InvalidRequestException("Search query cannot be empty");
+        }
+
+        var pageSize = bookPages.resolvePageSize(size);
+
+        BookSearchResult after = null;
+        if (cursor != null) {
+            var pageCursor = PageCursor.decode(cursor);
+            after = new BookSearchResult(pageCursor.keyAsLong(1), pageCursor.keyAsFloat(0));
+        }
+
+        log.info("Searching books by '{}', page size {}", query, pageSize);
+
+        var results = bookRepository.search(query, after, pageSize + 1);
+
+        var hasNext = results.size() > pageSize;
+        if (hasNext) {
+            results = results.subList(0, pageSize);
+        }
+        if (results.isEmpty()) {
+            return new PageResponseDTO<>(Collections.emptyList(), null);
+        }
+
+        // The page keeps the order of the ranks
+        var books = bookPages.loadBooks(results.stream().map(BookSearchResult::id).toList());
+
+        var last = results.getLast();
+        var next = hasNext ? PageCursor.of(last.rank(), last.id()).encode() : null;
+
+        return new PageResponseDTO<>(books, next);
+    }
+
+    // Filters combined by AND, sorted and paged by keyset like the books of an author
+    public PageResponseDTO<BookResponseDTO> query(@NotNull BookQueryDTO bookQueryDTO, String sort, String cursor, Integer size) {
+
+        log.info("Querying books by {}, sort '{}', page size {}", bookQueryDTO, sort, size);
+
+        checkRange("publishedFrom", bookQueryDTO.getPublishedFrom(), "publishedTo", bookQueryDTO.getPublishedTo());
+        checkRange("totalPagesMin", bookQueryDTO.getTotalPagesMin(), "totalPagesMax", bookQueryDTO.getTotalPagesMax());
+        checkRange("addedFrom", bookQueryDTO.getAddedFrom(), "addedTo", bookQueryDTO.getAddedTo());
+
+        var filter = Specification.allOf(
+                BookSpecifications.publishedBetween(bookQueryDTO.getPublishedFrom(), bookQueryDTO.getPublishedTo()),
+                BookSpecifications.totalPagesBetween(bookQueryDTO.getTotalPagesMin(), bookQueryDTO.getTotalPagesMax()),
+                BookSpecifications.addedBetween(bookQueryDTO.getAddedFrom(), bookQueryDTO.getAddedTo()),
+                BookSpecifications.hasAuthor(bookQueryDTO.getAuthor()),
+                BookSpecifications.hasCategory(bookQueryDTO.getCategory()));
+
+        return bookPages.load(sort, cursor, size,
+                (bookSort, descending, after, limit) -> bookRepository.findKeys(filter, bookSort, descending, after, limit));
     }
 
     public BookResponseDTO getById(@NotNull Long id) {
         log.info("Retrieving book by id '{}'", id);
-        return bookRepository.findById(id)
-                .map(BookResponseDTO::fromBook)
-                .orElse(null);
+        return bookResponseCache.getById(id, this::loadById);
     }
 
     public BookResponseDTO getByTitle(@NotNull String name) {
         log.info("Retrieving book by title '{}'", name);
-        return bookRepository.findByTitle(name)
-                .map(BookResponseDTO::fromBook)
+        return bookResponseCache.getByTitle(name, this::loadByTitle);
+    }
+
+    // The same books as the ones above, as the bodies of the responses
+    public SerializedBookResponse getSerializedById(@NotNull Long id) {
+        log.info("Retrieving book by id '{}'", id);
+        return bookResponseCache.getSerializedById(id, this::loadById);
+    }
+
+    public SerializedBookResponse getSerializedByTitle(@NotNull String name) {
+        log.info("Retrieving book by title '{}'", name);
+        return bookResponseCache.getSerializedByTitle(name, this::loadByTitle);
+    }
+
+    private BookResponseDTO loadById(Long id) {
+        return bookViewRepository.findById(id)
+                .map(BookResponseDTO::fromBookView)
                 .orElse(null);
     }
 
+    private BookResponseDTO loadByTitle(String title) {
+        return bookViewRepository.findFirstByTitleOrderByIdAsc(title)
+                .map(BookResponseDTO::fromBookView)
+                .orElse(null);
+    }
+
+    public BookVersion getVersionById(@NotNull Long id) {
+        return bookRepository.findVersionById(id).orElse(null);
+    }
+
+    public BookVersion getVersionByTitle(@NotNull String title) {
+        return bookRepository.findVersionByTitle(title).orElse(null);
+    }
+
     public BookResponseDTO create(@NotNull BookRequestDTO bookRequestDTO) {
         log.info("Adding new book");
         var book = bookRequestDTO.toBook();
@@ -47,20 +172,50 @@ public class BookService {
         }
         book.setNew(true);
         var bookCreated = bookRepository.saveCascading(book);
+        bookResponseCache.invalidateTitle(bookCreated.getTitle());
         return BookResponseDTO.fromBook(bookCreated);
     }
 
+    public BulkImportResponseDTO createAll(@NotNull List<BookRequestDTO> booksRequestDTO) {
+
+        log.info("Importing {} books", booksRequestDTO.size());
+
+        if (booksRequestDTO.size() > maxImportSize) {
+            throw new InvalidRequestException(String.format("Cannot import more than %d books at once, but got %d",
+                    maxImportSize, booksRequestDTO.size()));
+        }
+
+        var addedAt = LocalDateTime.now();
+        var books = BookRequestDTO.toBooks(booksRequestDTO);
+        for (var book : books) {
+            if (book.getAddedAt() == null) {
+                book.setAddedAt(addedAt);
+            }
+            book.setNew(true);
+        }
+
+        var booksCreated = bookRepository.saveAllCascading(books);
+        booksCreated.forEach(book -> bookResponseCache.invalidateTitle(book.getTitle()));
+        var ids = booksCreated.stream()
+                .map(Book::getId)
+                .toList();
+
+        return new BulkImportResponseDTO(ids.size(), ids);
+    }
+
     @Transactional
     public BookResponseDTO update(@NotNull Long id,
-                                  @NotNull BookRequestDTO bookRequestDTO) {
+                                  @NotNull BookRequestDTO bookRequestDTO,
+                                  Long expectedVersion) {
 
         log.info("Updating book with id '{}'", id);
 
-        var bookFoundByIdOptional = bookRepository.findById(id);
+        var bookFoundByIdOptional = bookRepository.findWithAssociationsById(id);
         if (bookFoundByIdOptional.isEmpty()) {
             throw new EntityNotFoundException(String.format("Book with id '%d' not found", id));
         }
         var bookFoundById = bookFoundByIdOptional.get();
+        checkVersion(bookFoundById, expectedVersion);
 
         if (bookRequestDTO.getTitle() != null) {
             bookFoundById.setTitle(bookRequestDTO.getTitle());
@@ -75,13 +230,81 @@ public class BookService {
             bookFoundById.setAddedAt(bookRequestDTO.getAddedAt());
         }
 
-        var bookUpdated = bookRepository.save(bookFoundById);
+        // Flushed right away, so the response and the view have the new version
+        var bookUpdated = bookRepository.saveAndFlush(bookFoundById);
+        bookViewRepository.updateWithoutLoading(BookView.fromBook(bookUpdated));
+        bookResponseCache.invalidate(id);
+        if (bookRequestDTO.getTitle() != null) {
+            bookResponseCache.invalidateTitle(bookRequestDTO.getTitle());
+        }
 
         return BookResponseDTO.fromBook(bookUpdated);
     }
 
-    public void deleteById(@NotNull Long id) {
+    /**
+     * Sets the fields of the patch with one UPDATE, the book and its associations are not loaded.
+     * Values are checked against the constraints of {@link Book} beforehand, as nothing is validated on the way to the database.
+     */
+    @Transactional
+    public void patch(@NotNull Long id,
+                      @NotNull BookPatchDTO bookPatchDTO,
+                      Long expectedVersion) {
+
+        log.info("Patching book with id '{}', fields - {}", id, bookPatchDTO.getFields().keySet());
+
+        bookPatchDTO.getFields().forEach((field, value) -> {
+            var violations = validator.validateValue(Book.class, field, value);
+            if (!violations.isEmpty()) {
+                throw new InvalidRequestException(String.format("Field '%s' of a book is invalid: %s",
+                        field, violations.iterator().next().getMessage()));
+            }
+        });
+
+        var patched = bookRepository.patch(id, bookPatchDTO.getFields(), expectedVersion);
+        if (!patched) {
+            // Nothing is changed, either there is no such book or it has another version
+            var version = bookRepository.findVersionById(id)
+                    .orElseThrow(() -> new EntityNotFoundException(String.format("Book with id '%d' not found", id)));
+            throw new OptimisticLockingFailureException(String.format("Book with id '%d' has version %d, but %d was expected",
+                    id, version.version(), expectedVersion));
+        }
+
+        bookResponseCache.invalidate(id);
+        if (bookPatchDTO.getFields().get("title") instanceof String title) {
+            bookResponseCache.invalidateTitle(title);
+        }
+    }
+
+    @Transactional
+    public void deleteById(@NotNull Long id, Long expectedVersion) {
+
         log.warn("Deleting book with id '{}'", id);
-        bookRepository.deleteById(id);
+
+        if (expectedVersion == null) {
+            bookRepository.deleteById(id);
+        } else {
+            // The delete is checked against the version loaded here, so a change made in between fails it as well
+            var book = bookRepository.findById(id)
+                    .orElseThrow(() -> new EntityNotFoundException(String.format("Book with id '%d' not found", id)));
+            checkVersion(book, expectedVersion);
+            bookRepository.delete(book);
+        }
+        bookViewRepository.deleteWithoutLoadingById(id);
+
+        bookResponseCache.invalidate(id);
+    }
+
+    // The expected version comes from If-Match, without it the version is still checked by Hibernate on flush
+    private void checkVersion(Book book, Long expectedVersion) {
+        if (expectedVersion != null && !expectedVersion.equals(book.getVersion())) {
+            throw new OptimisticLockingFailureException(String.format("Book with id '%d' has version %d, but %d was expected",
+                    book.getId(), book.getVersion(), expectedVersion));
+        }
+    }
+
+    private static <T extends Comparable<? super T>> void checkRange(String fromName, T from, String toName, T to) {
+        if (from != null && to != null && from.compareTo(to) > 0) {
+            throw new InvalidRequestException(String.format("'%s' (%s) cannot be after '%s' (%s)", fromName, from, toName, to));
+        }
     }
 }
@@ -1,14 +1,21 @@
 package com.example.service;
 
 import com.example.api.request.AuthorRequestDTO;
+import com.example.api.request.BookPatchDTO;
+import com.example.api.request.BookQueryDTO;
 import com.example.api.request.BookRequestDTO;
 import com.example.api.request.CategoryRequestDTO;
 import com.example.api.response.BookResponseDTO;
+import com.example.api.response.BulkImportResponseDTO;
+import com.example.api.response.PageResponseDTO;
+import com.example.cache.SerializedBookResponse;
+import com.example.repository.BookVersion;
 import jakarta.validation.constraints.NotNull;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
-import java.util.Collection;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 
 @Service
@@ -18,9 +25,25 @@ public class BookServicesFacade {
     private final BookService bookService;
     private final CategoryService categoryService;
     private final AuthorService authorService;
+    private final BookExportService bookExportService;
 
-    public List<BookResponseDTO> getAllBooks() {
-        return bookService.getAll();
+    public PageResponseDTO<BookResponseDTO> getAllBooks(String cursor, Integer size) {
+        return bookService.getAll(cursor, size);
+    }
+
+    public PageResponseDTO<BookResponseDTO> searchBooks(@NotNull String query, String cursor, Integer size) {
+        return bookService.search(query, cursor, size);
+    }
+
+    public PageResponseDTO<BookResponseDTO> queryBooks(@NotNull BookQueryDTO bookQueryDTO,
+                                                       String sort,
+                                                       String cursor,
+                                                       Integer size) {
+        return bookService.query(bookQueryDTO, sort, cursor, size);
+    }
+
+    public void exportBooks(@NotNull BookExportFormat format, @NotNull OutputStream outputStream) throws IOException {
+        bookExportService.export(format, outputStream);
     }
 
     public BookResponseDTO getBookById(@NotNull Long id) {
@@ -31,54 +54,93 @@ public class BookServicesFacade {
         return bookService.getByTitle(title);
     }
 
-    public Collection<BookResponseDTO> getBooksByCategory(@NotNull String categoryName) {
-        return categoryService.getBooksByCategoryName(categoryName);
+    public SerializedBookResponse getSerializedBookById(@NotNull Long id) {
+        return bookService.getSerializedById(id);
+    }
+
+    public SerializedBookResponse getSerializedBookByTitle(@NotNull String title) {
+        return bookService.getSerializedByTitle(title);
+    }
+
+    public BookVersion getBookVersionById(@NotNull Long id) {
+        return bookService.getVersionById(id);
+    }
+
+    public BookVersion getBookVersionByTitle(@NotNull String title) {
+        return bookService.getVersionByTitle(title);
+    }
+
+    public PageResponseDTO<BookResponseDTO> getBooksByCategory(@NotNull String categoryName,
+                                                               String sort,
+                                                               String cursor,
+                                                               Integer size) {
+        return categoryService.getBooksByCategoryName(categoryName, sort, cursor, size);
     }
 
-    public Collection<BookResponseDTO> getBooksByAuthor(@NotNull String authorName) {
-        return authorService.getBooksByAuthorName(authorName);
+    public PageResponseDTO<BookResponseDTO> getBooksByAuthor(@NotNull String authorName,
+                                                             String sort,
+                                                             String cursor,
+                                                             Integer size) {
+        return authorService.getBooksByAuthorName(authorName, sort, cursor, size);
     }
 
     public BookResponseDTO createBook(@NotNull BookRequestDTO bookRequestDTO) {
         return bookService.create(bookRequestDTO);
     }
 
+    public BulkImportResponseDTO createBooks(@NotNull List<BookRequestDTO> booksRequestDTO) {
+        return bookService.createAll(booksRequestDTO);
+    }
+
     public BookResponseDTO updateBook(@NotNull Long id,
-                                          @NotNull BookRequestDTO bookRequestDTO) {
-        return bookService.update(id, bookRequestDTO);
+                                          @NotNull BookRequestDTO bookRequestDTO,
+                                          Long expectedVersion) {
+        return bookService.update(id, bookRequestDTO, expectedVersion);
+    }
+
+    public void patchBook(@NotNull Long id,
+                          @NotNull BookPatchDTO bookPatchDTO,
+                          Long expectedVersion) {
+        bookService.patch(id, bookPatchDTO, expectedVersion);
     }
 
-    public void deleteBookById(@NotNull Long id) {
-        bookService.deleteById(id);
+    public void deleteBookById(@NotNull Long id, Long expectedVersion) {
+        bookService.deleteById(id, expectedVersion);
     }
 
     public void addCategoryToBook(@NotNull Long bookId,
-                                   @NotNull CategoryRequestDTO categoryRequestDTO) {
-        categoryService.addCategoryToBook(bookId, categoryRequestDTO);
+                                   @NotNull CategoryRequestDTO categoryRequestDTO,
+                                   Long expectedVersion) {
+        categoryService.addCategoryToBook(bookId, categoryRequestDTO, expectedVersion);
     }
 
     public boolean removeCategoryFromBook(@NotNull Long bookId,
-                                          @NotNull CategoryRequestDTO categoryRequestDTO) {
-        return categoryService.removeCategoryFromBook(bookId, categoryRequestDTO);
+                                          @NotNull CategoryRequestDTO categoryRequestDTO,
+                                          Long expectedVersion) {
+        return categoryService.removeCategoryFromBook(bookId, categoryRequestDTO, expectedVersion);
     }
 
     public void updateCategoriesForBook(@NotNull Long bookId,
-                                         @NotNull List<CategoryRequestDTO> categoriesRequestDTO) {
-        categoryService.updateCategoriesForBook(bookId, categoriesRequestDTO);
+                                         @NotNull List<CategoryRequestDTO> categoriesRequestDTO,
+                                         Long expectedVersion) {
+        categoryService.updateCategoriesForBook(bookId, categoriesRequestDTO, expectedVersion);
     }
 
     public void addAuthorToBook(@NotNull Long bookId,
-                                 @NotNull AuthorRequestDTO authorRequestDTO) {
-        authorService.addAuthorToBook(bookId, authorRequestDTO);
+                                 @NotNull AuthorRequestDTO authorRequestDTO,
+                                 Long expectedVersion) {
+        authorService.addAuthorToBook(bookId, authorRequestDTO, expectedVersion);
     }
 
     public boolean removeAuthorFromBook(@NotNull Long bookId,
-                                      @NotNull AuthorRequestDTO authorRequestDTO) {
-        return authorService.removeAuthorFromBook(bookId, authorRequestDTO);
+                                      @NotNull AuthorRequestDTO authorRequestDTO,
+                                      Long expectedVersion) {
+        return authorService.removeAuthorFromBook(bookId, authorRequestDTO, expectedVersion);
     }
 
     public void updateAuthorsForBook(@NotNull Long bookId,
-                                         @NotNull List<AuthorRequestDTO> authorsRequestDTO) {
-        authorService.updateAuthorsForBook(bookId, authorsRequestDTO);
+                                         @NotNull List<AuthorRequestDTO> authorsRequestDTO,
+                                         Long expectedVersion) {
+        authorService.updateAuthorsForBook(bookId, authorsRequestDTO, expectedVersion);
     }
 }
@@ -1,14 +1,19 @@
 package com.example.service;
 
 import com.example.api.request.CategoryRequestDTO;
+import com.example.api.request.InvalidRequestException;
 import com.example.api.response.BookResponseDTO;
+import com.example.api.response.PageResponseDTO;
+import com.example.cache.BookResponseCache;
+import com.example.cache.SingleFlight;
 import com.example.model.Book;
 import com.example.repository.BookRepository;
-import com.example.repository.CategoryRepository;
+import com.example.repository.JoinRowChange;
 import jakarta.persistence.EntityNotFoundException;
 import jakarta.validation.constraints.NotNull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -19,86 +24,95 @@ import java.util.*;
 @Slf4j
 public class CategoryService {
 
-    private final CategoryRepository categoryRepository;
     private final BookRepository bookRepository;
-
-    public Collection<BookResponseDTO> getBooksByCategoryName(@NotNull String categoryName) {
-        log.info("Retrieving books by category '{}'", categoryName);
-        var categoryOptional = categoryRepository.findByName(categoryName);
-        if (categoryOptional.isEmpty()) {
-            return Collections.emptySet();
-        }
-        var category = categoryOptional.get();
-        return BookResponseDTO.fromBooks(category.getBooks());
+    private final BookResponseCache bookResponseCache;
+    private final BookPages bookPages;
+    private final SingleFlight singleFlight;
+
+    // Keyset pages through the join table, a page loads only its own books and their associations
+    public PageResponseDTO<BookResponseDTO> getBooksByCategoryName(@NotNull String categoryName,
+                                                                   String sort,
+                                                                   String cursor,
+                                                                   Integer size) {
+        log.info("Retrieving books by category '{}', sort '{}', page size {}", categoryName, sort, size);
+        // Concurrent requests of the same page share one load of it
+        return singleFlight.execute("books-by-category", Arrays.asList(categoryName, sort, cursor, size),
+                () -> bookPages.load(sort, cursor, size,
+                        (bookSort, descending, after, limit) -> bookRepository.findKeysByCategory(categoryName, bookSort, descending, after, limit)));
     }
 
     @Transactional
     public void addCategoryToBook(@NotNull Long bookId,
-                                  @NotNull CategoryRequestDTO categoryRequestDTO) {
+                                  @NotNull CategoryRequestDTO categoryRequestDTO,
+                                  Long expectedVersion) {
 
         log.info("Adding category to the book with id '{}', new category - {}", bookId, categoryRequestDTO);
 
         var categoryName = categoryRequestDTO.getName();
         if (Objects.requireNonNullElse(categoryName, "").isEmpty()) {
-            throw new IllegalArgumentException("Category name cannot be empty");
+            throw new InvalidRequestException("Category name cannot be empty");
         }
 
-        var book = findBookByIdOrThrowException(bookId);
-
-        // Checking if the book already has the category with the same name
-        var bookHasThisCategoryAlready = book.getCategories()
-                .stream()
-                .anyMatch(category -> Objects.equals(categoryName, category.getName()));
-
-        if (bookHasThisCategoryAlready) {
-            log.warn("The book with id '{}' already has the category with name '{}'", bookId, categoryName);
-            return;
+        // One join row is inserted, the book is not loaded
+        switch (bookRepository.addCategory(bookId, categoryName, expectedVersion)) {
+            case CHANGED -> bookResponseCache.invalidate(bookId);
+            case UNCHANGED -> log.warn("The book with id '{}' already has the category with name '{}'", bookId, categoryName);
+            case BOOK_NOT_MATCHED -> checkBookVersionOrThrowException(bookId, expectedVersion);
         }
-
-        var category = categoryRequestDTO.toCategory();
-        book.addCategory(category);
-
-        bookRepository.saveCascading(book);
     }
 
     @Transactional
     public boolean removeCategoryFromBook(@NotNull Long bookId,
-                                         @NotNull CategoryRequestDTO categoryRequestDTO) {
+                                         @NotNull CategoryRequestDTO categoryRequestDTO,
+                                         Long expectedVersion) {
 
         log.info("Removing category from the book with id '{}', category - {}", bookId, categoryRequestDTO);
 
-        var book = findBookByIdOrThrowException(bookId);
-
-        var category = categoryRequestDTO.toCategory();
-
-        var resultOfRemoval = book.removeCategory(category);
-        if (!resultOfRemoval) {
-            log.warn("Category '{}' for the book with id '{}' not found. The categories of the book are: {}",
-                    category, bookId, book.getCategories());
-            return false;
+        // One join row is deleted, the book is not loaded
+        var change = bookRepository.removeCategory(bookId, categoryRequestDTO.getName(), expectedVersion);
+        switch (change) {
+            case CHANGED -> bookResponseCache.invalidate(bookId);
+            case UNCHANGED -> log.warn("Category '{}' for the book with id '{}' not found", categoryRequestDTO.getName(), bookId);
+            case BOOK_NOT_MATCHED -> checkBookVersionOrThrowException(bookId, expectedVersion);
         }
-
-        bookRepository.saveCascading(book);
-        return true;
+        return change == JoinRowChange.CHANGED;
     }
 
     @Transactional
     public void updateCategoriesForBook(@NotNull Long bookId,
-                                        @NotNull Collection<CategoryRequestDTO> categoriesRequestDTO) {
+                                        @NotNull Collection<CategoryRequestDTO> categoriesRequestDTO,
+                                        Long expectedVersion) {
 
         log.info("Updating categories for the book with id '{}', new categories - {}", bookId, categoriesRequestDTO);
 
-        var book = findBookByIdOrThrowException(bookId);
+        var book = findBookByIdOrThrowException(bookId, expectedVersion);
 
         var categories = CategoryRequestDTO.toCategories(categoriesRequestDTO);
 
         book.setCategories(categories);
 
         bookRepository.saveCascading(book);
+        bookResponseCache.invalidate(bookId);
+    }
+
+    // Nothing is changed, the book is selected only to tell a missing book from an outdated If-Match
+    private void checkBookVersionOrThrowException(Long bookId, Long expectedVersion) {
+        var version = bookRepository.findVersionById(bookId)
+                .orElseThrow(() -> new EntityNotFoundException(String.format("Book with id '%d' not found", bookId)));
+        if (expectedVersion != null && !expectedVersion.equals(version.version())) {
+            throw new OptimisticLockingFailureException(String.format("Book with id '%d' has version %d, but %d was expected",
+                    bookId, version.version(), expectedVersion));
+        }
     }
 
-    private Book findBookByIdOrThrowException(Long bookId) {
-        return bookRepository.findById(bookId)
+    // The expected version comes from If-Match, without it the version is still checked by Hibernate on flush
+    private Book findBookByIdOrThrowException(Long bookId, Long expectedVersion) {
+        var book = bookRepository.findWithAssociationsById(bookId)
                 .orElseThrow(() -> new EntityNotFoundException(String.format("Book with id '%d' not found", bookId)));
+        if (expectedVersion != null && !expectedVersion.equals(book.getVersion())) {
+            throw new OptimisticLockingFailureException(String.format("Book with id '%d' has version %d, but %d was expected",
+                    bookId, book.getVersion(), expectedVersion));
+        }
+        return book;
     }
 }
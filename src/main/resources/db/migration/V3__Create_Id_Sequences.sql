@@ -0,0 +1,10 @@
+-- Sequences for the entity ids, the increment must match 'allocationSize' of the entities (pooled optimizer).
+-- Each sequence starts after the ids already generated by the identity columns.
+CREATE SEQUENCE IF NOT EXISTS authors_seq INCREMENT BY 50;
+SELECT setval('authors_seq', (SELECT COALESCE(MAX(id), 0) + 50 FROM authors));
+
+CREATE SEQUENCE IF NOT EXISTS categories_seq INCREMENT BY 50;
+SELECT setval('categories_seq', (SELECT COALESCE(MAX(id), 0) + 50 FROM categories));
+
+CREATE SEQUENCE IF NOT EXISTS books_seq INCREMENT BY 50;
+SELECT setval('books_seq', (SELECT COALESCE(MAX(id), 0) + 50 FROM books));
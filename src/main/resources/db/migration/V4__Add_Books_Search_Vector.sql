@@ -0,0 +1,62 @@
+-- Full-text search over book titles (weight A), author names (B) and category names (C).
+-- The 'simple' configuration is used, since titles and names are in many languages and names must not be stemmed.
+ALTER TABLE IF EXISTS books ADD COLUMN IF NOT EXISTS search_vector tsvector;
+
+CREATE OR REPLACE FUNCTION books_search_vector(p_title VARCHAR, p_book_id BIGINT) RETURNS tsvector AS $$
+    SELECT setweight(to_tsvector('simple', coalesce(p_title, '')), 'A')
+        || setweight(to_tsvector('simple', coalesce((SELECT string_agg(a.name, ' ')
+                                                     FROM books_authors ba
+                                                              JOIN authors a ON a.id = ba.author_id
+                                                     WHERE ba.book_id = p_book_id), '')), 'B')
+        || setweight(to_tsvector('simple', coalesce((SELECT string_agg(c.name, ' ')
+                                                     FROM books_categories bc
+                                                              JOIN categories c ON c.id = bc.category_id
+                                                     WHERE bc.book_id = p_book_id), '')), 'C')
+$$ LANGUAGE sql STABLE;
+
+-- Book inserted or its title changed
+CREATE OR REPLACE FUNCTION books_search_vector_on_book_change() RETURNS trigger AS $$
+BEGIN
+    NEW.search_vector := books_search_vector(NEW.title, NEW.id);
+    RETURN NEW;
+END
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER books_search_vector_on_book_change
+    BEFORE INSERT OR UPDATE OF title ON books
+    FOR EACH ROW EXECUTE FUNCTION books_search_vector_on_book_change();
+
+-- Authors or categories of books added or removed.
+-- Statement level triggers, so a batched insert of join rows refreshes every affected book once.
+CREATE OR REPLACE FUNCTION books_search_vector_on_join_rows_change() RETURNS trigger AS $$
+BEGIN
+    UPDATE books b SET search_vector = books_search_vector(b.title, b.id)
+    WHERE b.id IN (SELECT DISTINCT changed_rows.book_id FROM changed_rows);
+    RETURN NULL;
+END
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER books_authors_search_vector_on_insert
+    AFTER INSERT ON books_authors
+    REFERENCING NEW TABLE AS changed_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION books_search_vector_on_join_rows_change();
+
+CREATE TRIGGER books_authors_search_vector_on_delete
+    AFTER DELETE ON books_authors
+    REFERENCING OLD TABLE AS changed_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION books_search_vector_on_join_rows_change();
+
+CREATE TRIGGER books_categories_search_vector_on_insert
+    AFTER INSERT ON books_categories
+    REFERENCING NEW TABLE AS changed_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION books_search_vector_on_join_rows_change();
+
+CREATE TRIGGER books_categories_search_vector_on_delete
+    AFTER DELETE ON books_categories
+    REFERENCING OLD TABLE AS changed_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION books_search_vector_on_join_rows_change();
+
+-- Existing books
+UPDATE books SET search_vector = books_search_vector(title, id);
+
+CREATE INDEX IF NOT EXISTS IX_books_search_vector ON books USING GIN (search_vector);
@@ -0,0 +1,23 @@
+-- Join tables had neither a primary key nor an index by the author/category side,
+-- so lookups of books by author or category and deletes of books scanned them sequentially.
+
+-- Duplicate pairs are removed first, the primary keys would not be created otherwise
+DELETE FROM books_authors duplicate
+    USING books_authors original
+WHERE duplicate.ctid > original.ctid
+  AND duplicate.book_id = original.book_id
+  AND duplicate.author_id = original.author_id;
+
+DELETE FROM books_categories duplicate
+    USING books_categories original
+WHERE duplicate.ctid > original.ctid
+  AND duplicate.book_id = original.book_id
+  AND duplicate.category_id = original.category_id;
+
+-- Primary keys serve the book side (authors/categories of a book, deletes of a book)
+ALTER TABLE IF EXISTS books_authors ADD CONSTRAINT PK_books_authors PRIMARY KEY (book_id, author_id);
+ALTER TABLE IF EXISTS books_categories ADD CONSTRAINT PK_books_categories PRIMARY KEY (book_id, category_id);
+
+-- Reverse indexes serve the author/category side (books of an author/category), index only scans included
+CREATE INDEX IF NOT EXISTS IX_books_authors_author_id ON books_authors (author_id, book_id);
+CREATE INDEX IF NOT EXISTS IX_books_categories_category_id ON books_categories (category_id, book_id);
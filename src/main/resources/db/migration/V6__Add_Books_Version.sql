@@ -0,0 +1,5 @@
+-- Version of a book and the time of its last change, the ETag and Last-Modified of the book endpoints.
+-- The version is incremented by Hibernate (optimistic locking) on every change of the book, its authors and categories.
+-- Existing books get the time of the migration, it's only later than their real last change.
+ALTER TABLE IF EXISTS books ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
+ALTER TABLE IF EXISTS books ADD COLUMN IF NOT EXISTS updated_at timestamp(6) NOT NULL DEFAULT CURRENT_TIMESTAMP;
@@ -0,0 +1,8 @@
+-- Ranges and sorts of the book queries (by title, publishing date, total pages and date of adding).
+-- Every index ends with the id, the tie-breaker of the keyset pages, so a page is read in the order of the index
+-- and stops after its rows, backwards for the descending order.
+-- Filters by an author or a category go through IX_books_authors_author_id and IX_books_categories_category_id.
+CREATE INDEX IF NOT EXISTS IX_books_title ON books (title, id);
+CREATE INDEX IF NOT EXISTS IX_books_published_at ON books (published_at, id);
+CREATE INDEX IF NOT EXISTS IX_books_total_pages ON books (total_pages, id);
+CREATE INDEX IF NOT EXISTS IX_books_added_at ON books (added_at, id);
@@ -0,0 +1,29 @@
+-- Read model of the books: one row per book with its authors and categories embedded as jsonb arrays of {"id", "name"},
+-- ordered by name. A book is read by the primary key, without the join tables. Rows are written by the application
+-- in the transaction of every change of a book, so there is no foreign key to order the statements against.
+CREATE TABLE IF NOT EXISTS book_view (
+                                     id BIGINT NOT NULL,
+                                     title VARCHAR(500) NOT NULL,
+                                     published_at date NOT NULL,
+                                     total_pages INTEGER NOT NULL,
+                                     added_at timestamp(6) NOT NULL,
+                                     version BIGINT NOT NULL,
+                                     updated_at timestamp(6) NOT NULL,
+                                     authors jsonb NOT NULL DEFAULT '[]',
+                                     categories jsonb NOT NULL DEFAULT '[]',
+                                     PRIMARY KEY (id)
+);
+
+CREATE INDEX IF NOT EXISTS IX_book_view_title ON book_view (title, id);
+
+-- Existing books
+INSERT INTO book_view (id, title, published_at, total_pages, added_at, version, updated_at, authors, categories)
+SELECT b.id, b.title, b.published_at, b.total_pages, b.added_at, b.version, b.updated_at,
+       COALESCE((SELECT jsonb_agg(jsonb_build_object('id', a.id, 'name', a.name) ORDER BY a.name)
+                 FROM books_authors ba JOIN authors a ON a.id = ba.author_id
+                 WHERE ba.book_id = b.id), '[]'),
+       COALESCE((SELECT jsonb_agg(jsonb_build_object('id', c.id, 'name', c.name) ORDER BY c.name)
+                 FROM books_categories bc JOIN categories c ON c.id = bc.category_id
+                 WHERE bc.book_id = b.id), '[]')
+FROM books b
+ON CONFLICT (id) DO NOTHING;
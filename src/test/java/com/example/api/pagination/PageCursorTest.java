@@ -0,0 +1,43 @@
+package com.example.api.pagination;
+
+import com.example.api.request.InvalidRequestException;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PageCursorTest {
+
+    @Test
+    void shouldDecodeTheSameKeysWhenEncode() {
+
+        var cursor = PageCursor.of("Some title, with: separators|", LocalDate.of(2010, 8, 26), 42L);
+
+        var cursorDecoded = PageCursor.decode(cursor.encode());
+
+        assertEquals(cursor, cursorDecoded);
+        assertEquals(List.of("Some title, with: separators|", "2010-08-26", "42"), cursorDecoded.keys());
+        assertEquals(42L, cursorDecoded.keyAsLong(2));
+    }
+
+    @Test
+    void shouldDecodeExactlyTheSameFloatWhenEncode() {
+
+        var rank = 0.0607927f;
+
+        var cursorDecoded = PageCursor.decode(PageCursor.of(rank, 7L).encode());
+
+        assertEquals(rank, cursorDecoded.keyAsFloat(0));
+        assertEquals(7L, cursorDecoded.keyAsLong(1));
+    }
+
+    @Test
+    void shouldThrowInvalidRequestExceptionWhenDecodeMalformedCursor() {
+        assertThrows(InvalidRequestException.class, () -> PageCursor.decode("%%%"));
+        assertThrows(InvalidRequestException.class, () -> PageCursor.decode(PageCursor.of("abc").encode()).keyAsLong(0));
+        assertThrows(InvalidRequestException.class, () -> PageCursor.decode(PageCursor.of("abc").encode()).keyAsFloat(0));
+        assertThrows(InvalidRequestException.class, () -> PageCursor.decode(PageCursor.of(1L).encode()).key(1));
+    }
+}
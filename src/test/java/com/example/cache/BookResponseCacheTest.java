@@ -0,0 +1,223 @@
+package com.example.cache;
+
+import com.example.api.response.BookResponseDTO;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.jeasy.random.EasyRandom;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BookResponseCacheTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private BookResponseCache bookResponseCache;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    private final EasyRandom easyRandom = new EasyRandom();
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        bookResponseCache = new BookResponseCache(meterRegistry, objectMapper, new SingleFlight(meterRegistry), 100, Duration.ofMinutes(1));
+    }
+
+    @Test
+    void shouldLoadOnceWhenGetByIdTwice() {
+
+        var book = easyRandom.nextObject(BookResponseDTO.class);
+        var loads = new AtomicInteger();
+
+        var bookReceived = bookResponseCache.getById(book.getId(), id -> { loads.incrementAndGet(); return book; });
+        var bookReceivedAgain = bookResponseCache.getById(book.getId(), id -> { loads.incrementAndGet(); return book; });
+
+        assertSame(book, bookReceived);
+        assertSame(book, bookReceivedAgain);
+        assertEquals(1, loads.get());
+
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "books").tag("result", "hit").functionCounter().count());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "books").tag("result", "miss").functionCounter().count());
+    }
+
+    @Test
+    void shouldUseTitleIndexWhenGetByTitleOfBookCachedById() {
+
+        var book = easyRandom.nextObject(BookResponseDTO.class);
+        bookResponseCache.getById(book.getId(), id -> book);
+
+        var bookReceived = bookResponseCache.getByTitle(book.getTitle(), title -> fail("Must be served from the cache"));
+
+        assertSame(book, bookReceived);
+    }
+
+    @Test
+    void shouldSerializeOnceWhenGetSerializedByIdAndByTitle() throws IOException {
+
+        var book = easyRandom.nextObject(BookResponseDTO.class);
+
+        var bookReceived = bookResponseCache.getSerializedById(book.getId(), id -> book);
+        var bookReceivedAgain = bookResponseCache.getSerializedById(book.getId(), id -> fail("Must be served from the cache"));
+        var bookReceivedByTitle = bookResponseCache.getSerializedByTitle(book.getTitle(), title -> fail("Must be served from the cache"));
+
+        assertSame(bookReceived, bookReceivedAgain);
+        assertSame(bookReceived, bookReceivedByTitle);
+        assertSame(book, bookResponseCache.getById(book.getId(), id -> fail("Must be served from the cache")));
+
+        assertArrayEquals(objectMapper.writeValueAsBytes(book), bookReceived.json());
+        try (var gzipInputStream = new GZIPInputStream(new ByteArrayInputStream(bookReceived.gzippedJson()))) {
+            assertArrayEquals(bookReceived.json(), gzipInputStream.readAllBytes());
+        }
+    }
+
+    @Test
+    void shouldLoadAgainWhenInvalidate() {
+
+        var book = easyRandom.nextObject(BookResponseDTO.class);
+        var loads = new AtomicInteger();
+
+        bookResponseCache.getById(book.getId(), id -> { loads.incrementAndGet(); return book; });
+        bookResponseCache.invalidate(book.getId());
+        bookResponseCache.getByTitle(book.getTitle(), title -> { loads.incrementAndGet(); return book; });
+        bookResponseCache.getById(book.getId(), id -> { loads.incrementAndGet(); return book; });
+        bookResponseCache.getSerializedById(book.getId(), id -> { loads.incrementAndGet(); return book; });
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void shouldLoadAgainWhenInvalidateAll() {
+
+        var book = easyRandom.nextObject(BookResponseDTO.class);
+        var loads = new AtomicInteger();
+
+        bookResponseCache.getById(book.getId(), id -> { loads.incrementAndGet(); return book; });
+        bookResponseCache.invalidateAll();
+        bookResponseCache.getByTitle(book.getTitle(), title -> { loads.incrementAndGet(); return book; });
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void shouldNotCacheWhenInvalidatedDuringLoad() {
+
+        var book = easyRandom.nextObject(BookResponseDTO.class);
+        var loads = new AtomicInteger();
+
+        bookResponseCache.getById(book.getId(), id -> {
+            loads.incrementAndGet();
+            bookResponseCache.invalidate(id); // A concurrent writer
+            return book;
+        });
+        bookResponseCache.getById(book.getId(), id -> { loads.incrementAndGet(); return book; });
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void shouldCacheWhenAnotherBookInvalidatedDuringLoad() {
+
+        var book = easyRandom.nextObject(BookResponseDTO.class);
+        var loads = new AtomicInteger();
+
+        bookResponseCache.getById(book.getId(), id -> {
+            loads.incrementAndGet();
+            bookResponseCache.invalidate(id + 1); // A concurrent writer of another book
+            return book;
+        });
+        bookResponseCache.getById(book.getId(), id -> { loads.incrementAndGet(); return book; });
+
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void shouldLoadAnotherBookWhenGetByTitleInvalidated() {
+
+        var book = easyRandom.nextObject(BookResponseDTO.class);
+        var anotherBook = easyRandom.nextObject(BookResponseDTO.class);
+        anotherBook.setId(book.getId() + 1);
+        anotherBook.setTitle(book.getTitle());
+
+        bookResponseCache.getByTitle(book.getTitle(), title -> book);
+        bookResponseCache.invalidateTitle(anotherBook.getTitle()); // Another book is saved with the same title
+
+        assertSame(anotherBook, bookResponseCache.getByTitle(book.getTitle(), title -> anotherBook));
+        assertSame(book, bookResponseCache.getById(book.getId(), id -> fail("Must be served from the cache")));
+    }
+
+    @Test
+    void shouldNotIndexTitleWhenTitleInvalidatedDuringLoad() {
+
+        var book = easyRandom.nextObject(BookResponseDTO.class);
+        var loads = new AtomicInteger();
+
+        bookResponseCache.getById(book.getId(), id -> {
+            bookResponseCache.invalidateTitle(book.getTitle()); // A concurrent writer of another book with the same title
+            return book;
+        });
+        bookResponseCache.getByTitle(book.getTitle(), title -> { loads.incrementAndGet(); return book; });
+
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void shouldNotShareLoadStartedBeforeInvalidate() throws Exception {
+
+        var book = easyRandom.nextObject(BookResponseDTO.class);
+        var bookChanged = easyRandom.nextObject(BookResponseDTO.class);
+        bookChanged.setId(book.getId());
+
+        var loadStarted = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+
+            var bookLoadedBefore = executor.submit(() -> bookResponseCache.getById(book.getId(), id -> {
+                loadStarted.countDown();
+                await(release);
+                return book;
+            }));
+            await(loadStarted);
+
+            bookResponseCache.invalidate(book.getId());
+
+            // A reader coming after the change loads it by itself, not waiting for the load of the previous state
+            var bookLoadedAfter = executor.submit(() -> bookResponseCache.getById(book.getId(), id -> bookChanged));
+            assertSame(bookChanged, bookLoadedAfter.get(10, TimeUnit.SECONDS));
+
+            release.countDown();
+            assertSame(book, bookLoadedBefore.get(10, TimeUnit.SECONDS));
+        }
+
+        assertNull(meterRegistry.find("books.requests.coalesced").counter());
+    }
+
+    @Test
+    void shouldNotCacheMissingBook() {
+
+        var loads = new AtomicInteger();
+
+        assertNull(bookResponseCache.getById(11L, id -> { loads.incrementAndGet(); return null; }));
+        assertNull(bookResponseCache.getById(11L, id -> { loads.incrementAndGet(); return null; }));
+
+        assertEquals(2, loads.get());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.cache;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NameDictionaryTest {
+
+    private NameDictionary<Long> nameDictionary;
+
+    @BeforeEach
+    void setUp() {
+        nameDictionary = new NameDictionary<>("authors", 100) {
+            @Override
+            protected Map<String, Long> loadLatest(int limit) {
+                return Map.of("author-1", 1L, "author-2", 2L);
+            }
+        };
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void shouldReturnIdsOfLatestNamesWhenWarmUp() {
+
+        nameDictionary.warmUp();
+
+        assertEquals(1L, nameDictionary.get("author-1"));
+        assertEquals(2L, nameDictionary.get("author-2"));
+        assertNull(nameDictionary.get("author-3"));
+    }
+
+    @Test
+    void shouldPutRightAwayWhenPutAllAfterCommitOutsideOfTransaction() {
+
+        nameDictionary.putAllAfterCommit(Map.of("author-3", 3L));
+
+        assertEquals(3L, nameDictionary.get("author-3"));
+    }
+
+    @Test
+    void shouldPutOnlyAfterCommitWhenPutAllAfterCommitInTransaction() {
+
+        TransactionSynchronizationManager.initSynchronization();
+
+        nameDictionary.putAllAfterCommit(Map.of("author-3", 3L));
+        assertNull(nameDictionary.get("author-3"));
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertEquals(3L, nameDictionary.get("author-3"));
+    }
+
+    @Test
+    void shouldNotPutWhenTransactionIsRolledBack() {
+
+        TransactionSynchronizationManager.initSynchronization();
+
+        nameDictionary.putAllAfterCommit(Map.of("author-3", 3L));
+
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        assertNull(nameDictionary.get("author-3"));
+    }
+}
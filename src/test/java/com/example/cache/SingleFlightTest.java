@@ -0,0 +1,142 @@
+package com.example.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    private static final int CALLERS = 5;
+
+    private SimpleMeterRegistry meterRegistry;
+    private SingleFlight singleFlight;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        singleFlight = new SingleFlight(meterRegistry);
+    }
+
+    @Test
+    void shouldRunLookupOnceWhenExecuteConcurrentlyWithSameKey() throws Exception {
+
+        var lookups = new AtomicInteger();
+        var release = new CountDownLatch(1);
+        var result = new Object();
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+
+            var futures = new ArrayList<Future<Object>>();
+            for (int i = 0; i < CALLERS; i++) {
+                futures.add(executor.submit(() -> singleFlight.execute("book-by-id", 1L, () -> {
+                    lookups.incrementAndGet();
+                    await(release);
+                    return result;
+                })));
+            }
+
+            // The lookup is held until all the other callers wait for it
+            awaitUntil(() -> coalesced("book-by-id") == CALLERS - 1);
+            release.countDown();
+
+            for (var future : futures) {
+                assertSame(result, future.get(10, TimeUnit.SECONDS));
+            }
+        }
+
+        assertEquals(1, lookups.get());
+        assertEquals(CALLERS - 1, coalesced("book-by-id"));
+    }
+
+    @Test
+    void shouldThrowExceptionOfLookupToAllCallersWhenExecuteConcurrentlyWithSameKey() throws Exception {
+
+        var release = new CountDownLatch(1);
+        var exception = new IllegalArgumentException("Unknown sort");
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+
+            var futures = new ArrayList<Future<Object>>();
+            for (int i = 0; i < CALLERS; i++) {
+                futures.add(executor.submit(() -> singleFlight.execute("books-by-author", "author-1", () -> {
+                    await(release);
+                    throw exception;
+                })));
+            }
+
+            awaitUntil(() -> coalesced("books-by-author") == CALLERS - 1);
+            release.countDown();
+
+            for (var future : futures) {
+                var thrown = assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+                assertSame(exception, thrown.getCause());
+            }
+        }
+    }
+
+    @Test
+    void shouldRunLookupAgainWhenExecuteAfterPreviousOneCompleted() {
+
+        var lookups = new AtomicInteger();
+
+        assertEquals(1, singleFlight.execute("book-by-id", 1L, lookups::incrementAndGet));
+        assertEquals(2, singleFlight.execute("book-by-id", 1L, lookups::incrementAndGet));
+
+        assertThrows(IllegalStateException.class,
+                () -> singleFlight.execute("book-by-id", 1L, () -> { throw new IllegalStateException(); }));
+        assertEquals(3, singleFlight.execute("book-by-id", 1L, lookups::incrementAndGet));
+
+        assertEquals(0, coalesced("book-by-id"));
+    }
+
+    @Test
+    void shouldNotShareLookupsOfDifferentKeysOrOperations() {
+
+        var lookups = new AtomicInteger();
+
+        // A lookup running within another one would wait for itself if they were the same flight
+        var result = singleFlight.execute("book-by-id", 1L, () -> {
+            lookups.incrementAndGet();
+            return singleFlight.execute("book-by-id", 2L,
+                    () -> singleFlight.execute("book-by-title", 1L, lookups::incrementAndGet));
+        });
+
+        assertEquals(2, result);
+        assertEquals(2, lookups.get());
+        assertEquals(0, coalesced("book-by-id"));
+    }
+
+    private double coalesced(String operation) {
+        var counter = meterRegistry.find("books.requests.coalesced")
+                .tag("operation", operation)
+                .counter();
+        return counter != null ? counter.count() : 0;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Timed out waiting for the callers");
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.config;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ConnectionLimitingDataSourceTest {
+
+    private DataSource targetDataSource;
+    private Connection connection;
+
+    private ConnectionLimitingDataSource dataSource;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+
+        targetDataSource = mock(DataSource.class);
+        connection = mock(Connection.class);
+        when(targetDataSource.getConnection()).thenReturn(connection);
+
+        dataSource = new ConnectionLimitingDataSource(targetDataSource, 2, Duration.ofMillis(50));
+    }
+
+    @Test
+    void shouldTakePermitWhenGetConnectionAndReleaseItWhenClose() throws SQLException {
+
+        var connectionFromDataSource = dataSource.getConnection();
+        assertEquals(1, dataSource.getAvailablePermits());
+
+        connectionFromDataSource.close();
+        connectionFromDataSource.close();  // The second close must not release one more permit
+        assertEquals(2, dataSource.getAvailablePermits());
+
+        verify(targetDataSource, times(1)).getConnection();
+        verify(connection, times(2)).close();
+    }
+
+    @Test
+    void shouldThrowExceptionWhenGetConnectionAndNoPermitsLeft() throws SQLException {
+
+        dataSource.getConnection();
+        dataSource.getConnection();
+
+        assertThrows(SQLTransientConnectionException.class, dataSource::getConnection);
+
+        verify(targetDataSource, times(2)).getConnection();
+    }
+
+    @Test
+    void shouldReleasePermitWhenGetConnectionFails() throws SQLException {
+
+        when(targetDataSource.getConnection()).thenThrow(new SQLException("pool is closed"));
+
+        assertThrows(SQLException.class, dataSource::getConnection);
+        assertEquals(2, dataSource.getAvailablePermits());
+    }
+
+    @Test
+    void shouldCompareConnectionsByIdentity() throws SQLException {
+
+        var connectionFromDataSource = dataSource.getConnection();
+        var anotherConnectionFromDataSource = dataSource.getConnection();
+
+        assertEquals(connectionFromDataSource, connectionFromDataSource);
+        assertNotEquals(connectionFromDataSource, anotherConnectionFromDataSource);
+        assertNotEquals(connectionFromDataSource, connection);
+        assertEquals(System.identityHashCode(connectionFromDataSource), connectionFromDataSource.hashCode());
+    }
+}
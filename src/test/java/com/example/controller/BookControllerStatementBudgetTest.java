@@ -0,0 +1,313 @@
+package com.example.controller;
+
+import com.example.api.request.AuthorRequestDTO;
+import com.example.api.request.BookRequestDTO;
+import com.example.api.request.CategoryRequestDTO;
+import com.example.cache.AuthorNameDictionary;
+import com.example.cache.BookResponseCache;
+import com.example.cache.CategoryNameDictionary;
+import com.example.model.Role;
+import com.example.security.JwtTokenProvider;
+import com.example.sql.SqlStatementCounter;
+import com.example.sql.SqlStatementCounterConfig;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.context.jdbc.SqlConfig;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Every endpoint of {@link BookController} declares how many SQL statements (and rows, for reads) it may take.
+ * The budgets don't depend on the number of books, authors or categories involved,
+ * so an N+1 select or a Cartesian fetch shows up here as a failed test.
+ * Caches and name dictionaries are emptied before each test (the most expensive case), the data is set up anew.
+ * The search endpoint is PostgreSQL specific and is not covered, H2 has no full-text search.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@Import(SqlStatementCounterConfig.class)
+@Sql(scripts = { "/cleanup-test-data.sql", "/setup-test-books.sql" },
+     config = @SqlConfig(transactionMode = SqlConfig.TransactionMode.ISOLATED)  // Forces separate transaction
+)
+class BookControllerStatementBudgetTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private SqlStatementCounter sqlStatementCounter;
+
+    @Autowired
+    private JwtTokenProvider jwtTokenProvider;
+    private String token;
+
+    @Autowired
+    private BookResponseCache bookResponseCache;
+    @Autowired
+    private AuthorNameDictionary authorNameDictionary;
+    @Autowired
+    private CategoryNameDictionary categoryNameDictionary;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private final String baseURI = "/api/v1/books";
+
+    @PostConstruct
+    private void init() {
+        objectMapper.findAndRegisterModules();
+        token = jwtTokenProvider.createToken("test-user", List.of(Role.ADMIN));
+    }
+
+    @BeforeEach
+    void setUp() {
+        bookResponseCache.invalidateAll();
+        authorNameDictionary.invalidateAll();
+        categoryNameDictionary.invalidateAll();
+        entityManagerFactory.unwrap(SessionFactory.class).getCache().evictAllRegions();  // Not only the entities, like evictAll of JPA
+        sqlStatementCounter.reset();
+    }
+
+    @Test
+    void getAllBooks() throws Exception {
+        // Ids of the page, then the views of the page with their authors and categories: 5 ids + 5 views
+        assertWithinBudget(2, 10, () -> mockMvc.perform(get(baseURI))
+                .andExpect(status().isOk()));
+    }
+
+    @Test
+    void getBookById() throws Exception {
+        // The view of the book by its primary key
+        assertWithinBudget(1, 1, () -> mockMvc.perform(get(baseURI + "/{id}", 1))
+                .andExpect(status().isOk()));
+    }
+
+    @Test
+    void getBookByTitle() throws Exception {
+        assertWithinBudget(1, 1, () -> mockMvc.perform(get(baseURI + "/title/{title}", "book-1"))
+                .andExpect(status().isOk()));
+    }
+
+    @Test
+    void getBooksByCategory() throws Exception {
+        // Keys of the page through the join table, then the page like of all books: 5 keys + 5 views
+        assertWithinBudget(2, 10, () -> mockMvc.perform(get(baseURI + "/category/{category}", "category-1"))
+                .andExpect(status().isOk()));
+    }
+
+    @Test
+    void getBooksByAuthor() throws Exception {
+        assertWithinBudget(2, 10, () -> mockMvc.perform(get(baseURI + "/author/{author}", "author-1"))
+                .andExpect(status().isOk()));
+    }
+
+    @Test
+    void getBooksByAuthorSortedByTitle() throws Exception {
+        // The sort doesn't change the number of statements, rows are bounded by the size: 3 keys + 2 views
+        assertWithinBudget(2, 5, () -> mockMvc.perform(get(baseURI + "/author/{author}", "author-1")
+                        .param("sort", "title,desc")
+                        .param("size", "2"))
+                .andExpect(status().isOk()));
+    }
+
+    @Test
+    void queryBooks() throws Exception {
+        // Filters don't change the number of statements either: keys with all the filters, then the page
+        assertWithinBudget(2, 5, () -> mockMvc.perform(get(baseURI + "/query")
+                        .param("publishedFrom", "2000-01-01")
+                        .param("totalPagesMin", "1")
+                        .param("author", "author-1")
+                        .param("category", "category-1")
+                        .param("sort", "totalPages,desc")
+                        .param("size", "2"))
+                .andExpect(status().isOk()));
+    }
+
+    @Test
+    void exportBooks() throws Exception {
+        // The whole catalog by one statement, a row per book with the names of its authors and categories
+        assertWithinBudget(1, 5, () -> {
+            var result = mockMvc.perform(get(baseURI + "/export"))
+                    .andExpect(request().asyncStarted())
+                    .andReturn();
+            mockMvc.perform(asyncDispatch(result))
+                    .andExpect(status().isOk());
+        });
+    }
+
+    @Test
+    void createBook() throws Exception {
+        // Per names type: select, sequence, insert. Book: sequence, insert, one insert per join table and insert of its view
+        var book = newBook("book-new", Set.of("category-1", "category-new"), Set.of("author-1", "author-new"));
+        assertWithinBudget(12, () -> mockMvc.perform(post(baseURI)
+                        .header("Authorization", token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(book)))
+                .andExpect(status().isOk()));
+    }
+
+    @Test
+    void createBooks() throws Exception {
+        // The same as for one book, inserts go in JDBC batches
+        var books = IntStream.range(0, 20)
+                .mapToObj(i -> newBook("book-new-" + i, Set.of("category-1", "category-new"), Set.of("author-1", "author-new")))
+                .toList();
+        assertWithinBudget(12, () -> mockMvc.perform(post(baseURI + "/bulk")
+                        .header("Authorization", token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(books)))
+                .andExpect(status().isOk()));
+    }
+
+    @Test
+    void updateBook() throws Exception {
+        // The book and its associations, update of the book, then update of its view (it's not loaded)
+        var book = newBook("book-1-updated", Set.of(), Set.of());
+        assertWithinBudget(4, () -> mockMvc.perform(put(baseURI + "/{id}", 1)
+                        .header("Authorization", token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(book)))
+                .andExpect(status().isOk()));
+    }
+
+    @Test
+    void patchBook() throws Exception {
+        // One UPDATE of the book and one of its view, neither is loaded
+        assertWithinBudget(2, () -> mockMvc.perform(patch(baseURI + "/{id}", 1)
+                        .header("Authorization", token)
+                        .contentType("application/merge-patch+json")
+                        .content("{\"title\": \"book-1-patched\", \"totalPages\": 216}"))
+                .andExpect(status().isNoContent()));
+    }
+
+    @Test
+    void deleteBookById() throws Exception {
+        // Select, one delete per join table, delete of the book and delete of its view
+        assertWithinBudget(5, () -> mockMvc.perform(delete(baseURI + "/{id}", 1)
+                        .header("Authorization", token))
+                .andExpect(status().isAccepted()));
+    }
+
+    @Test
+    void addCategoryToBook() throws Exception {
+        // New name: select, sequence, insert. Then update of the version, insert of the join row and update of the view
+        assertWithinBudget(6, () -> mockMvc.perform(put(baseURI + "/{id}/add-category", 1)
+                        .header("Authorization", token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new CategoryRequestDTO("category-new"))))
+                .andExpect(status().isAccepted()));
+    }
+
+    @Test
+    void removeCategoryFromBook() throws Exception {
+        // Update of the version, delete of the join row and update of the view, the book is not loaded
+        assertWithinBudget(3, () -> mockMvc.perform(delete(baseURI + "/{id}/delete-category", 1)
+                        .header("Authorization", token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new CategoryRequestDTO("category-1"))))
+                .andExpect(status().isOk()));
+    }
+
+    @Test
+    void updateCategoriesForBook() throws Exception {
+        var categories = List.of(new CategoryRequestDTO("category-1"), new CategoryRequestDTO("category-new"));
+        assertWithinBudget(12, () -> mockMvc.perform(put(baseURI + "/{id}/update-categories", 1)
+                        .header("Authorization", token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(categories)))
+                .andExpect(status().isAccepted()));
+    }
+
+    @Test
+    void addAuthorToBook() throws Exception {
+        // New name: select, sequence, insert. Then update of the version, insert of the join row and update of the view
+        assertWithinBudget(6, () -> mockMvc.perform(put(baseURI + "/{id}/add-author", 1)
+                        .header("Authorization", token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new AuthorRequestDTO("author-new"))))
+                .andExpect(status().isAccepted()));
+    }
+
+    @Test
+    void removeAuthorFromBook() throws Exception {
+        // Update of the version, delete of the join row and update of the view, the book is not loaded
+        assertWithinBudget(3, () -> mockMvc.perform(delete(baseURI + "/{id}/delete-author", 1)
+                        .header("Authorization", token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new AuthorRequestDTO("author-1"))))
+                .andExpect(status().isOk()));
+    }
+
+    @Test
+    void updateAuthorsForBook() throws Exception {
+        var authors = List.of(new AuthorRequestDTO("author-1"), new AuthorRequestDTO("author-new"));
+        assertWithinBudget(12, () -> mockMvc.perform(put(baseURI + "/{id}/update-authors", 1)
+                        .header("Authorization", token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(authors)))
+                .andExpect(status().isAccepted()));
+    }
+
+    private void assertWithinBudget(long maxStatements, Request request) throws Exception {
+        assertWithinBudget(maxStatements, Long.MAX_VALUE, request);
+    }
+
+    private void assertWithinBudget(long maxStatements, long maxRows, Request request) throws Exception {
+
+        sqlStatementCounter.reset();
+
+        request.perform();
+
+        var statements = sqlStatementCounter.getStatements();
+        var rows = sqlStatementCounter.getRows();
+
+        assertTrue(statements <= maxStatements,
+                String.format("Endpoint is over its budget of statements: %d, budget - %d", statements, maxStatements));
+        assertTrue(rows <= maxRows,
+                String.format("Endpoint is over its budget of rows: %d, budget - %d", rows, maxRows));
+    }
+
+    private BookRequestDTO newBook(String title, Set<String> categories, Set<String> authors) {
+
+        var book = new BookRequestDTO();
+        book.setTitle(title);
+        book.setPublishedAt(LocalDate.of(2001, 3, 14));
+        book.setTotalPages(215);
+
+        book.setCategories(categories.stream()
+                .map(CategoryRequestDTO::new)
+                .collect(Collectors.toSet()));
+        book.setAuthors(authors.stream()
+                .map(AuthorRequestDTO::new)
+                .collect(Collectors.toSet()));
+
+        return book;
+    }
+
+    @FunctionalInterface
+    private interface Request {
+        void perform() throws Exception;
+    }
+}
@@ -1,34 +1,62 @@
 package com.example.controller;
 
 import com.example.api.request.AuthorRequestDTO;
+import com.example.api.request.BookQueryDTO;
 import com.example.api.request.BookRequestDTO;
 import com.example.api.request.CategoryRequestDTO;
+import com.example.api.request.InvalidRequestException;
 import com.example.api.response.BookResponseDTO;
+import com.example.api.response.BulkImportResponseDTO;
+import com.example.api.response.PageResponseDTO;
+import com.example.cache.SerializedBookResponse;
 import com.example.model.Role;
 import com.example.model.User;
+import com.example.repository.BookVersion;
 import com.example.security.JwtTokenProvider;
+import com.example.service.BookExportFormat;
 import com.example.service.BookServicesFacade;
 import com.example.service.UserService;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.annotation.PostConstruct;
+import jakarta.servlet.ServletException;
+import org.hibernate.exception.ConstraintViolationException;
 import org.jeasy.random.EasyRandom;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
@@ -96,25 +124,74 @@ class BookControllerTest {
     }
 
     @Test
-    void shouldReturnCollectionOfBooksResponseDTOWhenGetAllBooks() throws Exception {
+    void shouldReturnPageOfBooksResponseDTOWhenGetAllBooks() throws Exception {
 
         var books = easyRandom.objects(BookResponseDTO.class, 4).toList();
+        var page = new PageResponseDTO<>(books, "next-cursor");
 
-        when(bookService.getAllBooks()).thenReturn(books);
+        when(bookService.getAllBooks("cursor", 4)).thenReturn(page);
 
         var jsonResponse = mockMvc.perform(get(baseURI)
+                        .param("cursor", "cursor")
+                        .param("size", "4")
                         .header("Authorization", token))
                 .andExpect(status().isOk())
                 .andReturn()
                 .getResponse()
                 .getContentAsString();
 
-        List<BookResponseDTO> booksReceived = objectMapper.readValue(jsonResponse, new TypeReference<>() {});
+        PageResponseDTO<BookResponseDTO> pageReceived = objectMapper.readValue(jsonResponse, new TypeReference<>() {});
 
-        assertNotNull(booksReceived);
-        assertEquals(books, booksReceived);
+        assertNotNull(pageReceived);
+        assertEquals(books, pageReceived.getContent());
+        assertEquals("next-cursor", pageReceived.getNext());
 
-        verify(bookService, times(1)).getAllBooks();
+        verify(bookService, times(1)).getAllBooks("cursor", 4);
+    }
+
+    @Test
+    void shouldReturnBadRequestWhenGetAllBooksWithMalformedCursor() throws Exception {
+
+        when(bookService.getAllBooks("bad", null)).thenThrow(new InvalidRequestException("Malformed page cursor 'bad'"));
+
+        mockMvc.perform(get(baseURI)
+                        .param("cursor", "bad"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void shouldNotReturnBadRequestWhenGetAllBooksFailsWithIllegalArgumentException() {
+
+        when(bookService.getAllBooks(null, null)).thenThrow(new IllegalArgumentException("A bug, not a bad request"));
+
+        var e = assertThrows(ServletException.class, () -> mockMvc.perform(get(baseURI)));
+        assertInstanceOf(IllegalArgumentException.class, e.getCause());
+    }
+
+    @Test
+    void shouldReturnPageOfBooksResponseDTOWhenSearchBooks() throws Exception {
+
+        var books = easyRandom.objects(BookResponseDTO.class, 4).toList();
+        var page = new PageResponseDTO<>(books, "next-cursor");
+
+        when(bookService.searchBooks("tolkien ring", "cursor", 4)).thenReturn(page);
+
+        var jsonResponse = mockMvc.perform(get(baseURI + "/search")
+                        .param("q", "tolkien ring")
+                        .param("cursor", "cursor")
+                        .param("size", "4"))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        PageResponseDTO<BookResponseDTO> pageReceived = objectMapper.readValue(jsonResponse, new TypeReference<>() {});
+
+        assertNotNull(pageReceived);
+        assertEquals(books, pageReceived.getContent());
+        assertEquals("next-cursor", pageReceived.getNext());
+
+        verify(bookService, times(1)).searchBooks("tolkien ring", "cursor", 4);
     }
 
     @Test
@@ -122,7 +199,7 @@ class BookControllerTest {
 
         var book = easyRandom.nextObject(BookResponseDTO.class);
 
-        when(bookService.getBookById(book.getId())).thenReturn(book);
+        when(bookService.getSerializedBookById(book.getId())).thenReturn(SerializedBookResponse.of(book, objectMapper));
 
         var jsonResponse = mockMvc.perform(get(baseURI + "/{id}", book.getId())
                         .header("Authorization", token))
@@ -135,7 +212,7 @@ class BookControllerTest {
 
         assertEquals(book, bookReceived);
 
-        verify(bookService, times(1)).getBookById(book.getId());
+        verify(bookService, times(1)).getSerializedBookById(book.getId());
     }
 
     @Test
@@ -143,12 +220,103 @@ class BookControllerTest {
 
         var bookId = 11L;
 
-        when(bookService.getBookById(bookId)).thenReturn(null);
+        when(bookService.getSerializedBookById(bookId)).thenReturn(null);
 
         mockMvc.perform(get(baseURI + "/{id}", bookId))
                 .andExpect(status().isNotFound());
 
-        verify(bookService, times(1)).getBookById(bookId);
+        verify(bookService, times(1)).getSerializedBookById(bookId);
+    }
+
+    @Test
+    void shouldReturnETagWhenGetBookById() throws Exception {
+
+        var book = easyRandom.nextObject(BookResponseDTO.class);
+
+        when(bookService.getSerializedBookById(book.getId())).thenReturn(SerializedBookResponse.of(book, objectMapper));
+
+        mockMvc.perform(get(baseURI + "/{id}", book.getId()))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + book.getId() + "-" + book.getVersion() + "\""))
+                .andExpect(header().exists(HttpHeaders.LAST_MODIFIED));
+
+        verify(bookService, never()).getBookVersionById(any());
+        verify(bookService, times(1)).getSerializedBookById(book.getId());
+    }
+
+    @Test
+    void shouldReturnGzippedBookWhenGetBookByIdAcceptingGzip() throws Exception {
+
+        var book = easyRandom.nextObject(BookResponseDTO.class);
+        var serializedBook = SerializedBookResponse.of(book, objectMapper);
+
+        when(bookService.getSerializedBookById(book.getId())).thenReturn(serializedBook);
+
+        var body = mockMvc.perform(get(baseURI + "/{id}", book.getId())
+                        .header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + book.getId() + "-" + book.getVersion() + "\""))
+                .andReturn()
+                .getResponse()
+                .getContentAsByteArray();
+
+        // The bytes of the cache as they are
+        assertArrayEquals(serializedBook.gzippedJson(), body);
+        try (var gzipInputStream = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            assertEquals(book, objectMapper.readValue(gzipInputStream.readAllBytes(), BookResponseDTO.class));
+        }
+    }
+
+    @Test
+    void shouldReturnNotModifiedWhenGetBookByIdWithCurrentETag() throws Exception {
+
+        var bookVersion = new BookVersion(5L, 3L, LocalDateTime.now());
+
+        when(bookService.getBookVersionById(bookVersion.id())).thenReturn(bookVersion);
+
+        mockMvc.perform(get(baseURI + "/{id}", bookVersion.id())
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"5-3\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"5-3\""));
+
+        verify(bookService, times(1)).getBookVersionById(bookVersion.id());
+        verify(bookService, never()).getSerializedBookById(any());
+    }
+
+    @Test
+    void shouldReturnBookResponseDTOWhenGetBookByIdWithOutdatedETag() throws Exception {
+
+        var book = easyRandom.nextObject(BookResponseDTO.class);
+        book.setVersion(4L);
+        var bookVersion = new BookVersion(book.getId(), 4L, book.getUpdatedAt());
+
+        when(bookService.getBookVersionById(book.getId())).thenReturn(bookVersion);
+        when(bookService.getSerializedBookById(book.getId())).thenReturn(SerializedBookResponse.of(book, objectMapper));
+
+        mockMvc.perform(get(baseURI + "/{id}", book.getId())
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"" + book.getId() + "-3\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + book.getId() + "-4\""));
+
+        verify(bookService, times(1)).getBookVersionById(book.getId());
+        verify(bookService, times(1)).getSerializedBookById(book.getId());
+    }
+
+    @Test
+    void shouldReturnNotModifiedWhenGetBookByTitleWithCurrentETag() throws Exception {
+
+        var bookVersion = new BookVersion(5L, 3L, LocalDateTime.now());
+
+        when(bookService.getBookVersionByTitle("test-title")).thenReturn(bookVersion);
+
+        mockMvc.perform(get(baseURI + "/title/{title}", "test-title")
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"5-3\""))
+                .andExpect(status().isNotModified());
+
+        verify(bookService, times(1)).getBookVersionByTitle("test-title");
+        verify(bookService, never()).getSerializedBookByTitle(any());
     }
 
     @Test
@@ -156,7 +324,7 @@ class BookControllerTest {
 
         var book = easyRandom.nextObject(BookResponseDTO.class);
 
-        when(bookService.getBookByTitle(book.getTitle())).thenReturn(book);
+        when(bookService.getSerializedBookByTitle(book.getTitle())).thenReturn(SerializedBookResponse.of(book, objectMapper));
 
         var jsonResponse = mockMvc.perform(get(baseURI + "/title/{title}", book.getTitle())
                         .header("Authorization", token))
@@ -168,7 +336,7 @@ class BookControllerTest {
         BookResponseDTO bookReceived = objectMapper.readValue(jsonResponse, new TypeReference<>() {});
         assertEquals(book, bookReceived);
 
-        verify(bookService, times(1)).getBookByTitle(book.getTitle());
+        verify(bookService, times(1)).getSerializedBookByTitle(book.getTitle());
     }
 
     @Test
@@ -176,55 +344,167 @@ class BookControllerTest {
 
         var bookTitle = "test-title";
 
-        when(bookService.getBookByTitle(bookTitle)).thenReturn(null);
+        when(bookService.getSerializedBookByTitle(bookTitle)).thenReturn(null);
 
         mockMvc.perform(get(baseURI + "/title/{title}", bookTitle)
                         .header("Authorization", token))
                 .andExpect(status().isNotFound());
 
-        verify(bookService, times(1)).getBookByTitle(bookTitle);
+        verify(bookService, times(1)).getSerializedBookByTitle(bookTitle);
     }
 
     @Test
-    void shouldReturnCollectionsOfBooksResponseDTOWhenGetBooksByCategory() throws Exception {
+    void shouldReturnPageOfBooksResponseDTOWhenGetBooksByCategory() throws Exception {
 
         var categoryName = "test-category";
         var books = easyRandom.objects(BookResponseDTO.class, 5).toList();
+        var page = new PageResponseDTO<>(books, "next-cursor");
 
-        when(bookService.getBooksByCategory(categoryName)).thenReturn(books);
+        when(bookService.getBooksByCategory(categoryName, "publishedAt,desc", "cursor", 5)).thenReturn(page);
 
         var jsonResponse = mockMvc.perform(get(baseURI + "/category/{category}", categoryName)
+                        .param("sort", "publishedAt,desc")
+                        .param("cursor", "cursor")
+                        .param("size", "5")
                         .header("Authorization", token))
                 .andExpect(status().isOk())
                 .andReturn()
                 .getResponse()
                 .getContentAsString();
 
-        List<BookResponseDTO> booksReceived = objectMapper.readValue(jsonResponse, new TypeReference<>() {});
-        assertEquals(books, booksReceived);
+        PageResponseDTO<BookResponseDTO> pageReceived = objectMapper.readValue(jsonResponse, new TypeReference<>() {});
+        assertEquals(page, pageReceived);
 
-        verify(bookService, times(1)).getBooksByCategory(categoryName);
+        verify(bookService, times(1)).getBooksByCategory(categoryName, "publishedAt,desc", "cursor", 5);
     }
 
     @Test
-    void shouldReturnCollectionsOfBooksResponseDTOWhenGetBooksByAuthor() throws Exception {
+    void shouldReturnPageOfBooksResponseDTOWhenGetBooksByAuthor() throws Exception {
 
         var authorName = "test-author";
         var books = easyRandom.objects(BookResponseDTO.class, 5).toList();
+        var page = new PageResponseDTO<>(books, "next-cursor");
 
-        when(bookService.getBooksByAuthor(authorName)).thenReturn(books);
+        when(bookService.getBooksByAuthor(authorName, "publishedAt,desc", "cursor", 5)).thenReturn(page);
 
         var jsonResponse = mockMvc.perform(get(baseURI + "/author/{author}", authorName)
+                        .param("sort", "publishedAt,desc")
+                        .param("cursor", "cursor")
+                        .param("size", "5")
                         .header("Authorization", token))
                 .andExpect(status().isOk())
                 .andReturn()
                 .getResponse()
                 .getContentAsString();
 
-        List<BookResponseDTO> booksReceived = objectMapper.readValue(jsonResponse, new TypeReference<>() {});
-        assertEquals(books, booksReceived);
+        PageResponseDTO<BookResponseDTO> pageReceived = objectMapper.readValue(jsonResponse, new TypeReference<>() {});
+        assertEquals(page, pageReceived);
 
-        verify(bookService, times(1)).getBooksByAuthor(authorName);
+        verify(bookService, times(1)).getBooksByAuthor(authorName, "publishedAt,desc", "cursor", 5);
+    }
+
+    @Test
+    void shouldReturnPageOfBooksResponseDTOWhenQueryBooks() throws Exception {
+
+        var query = new BookQueryDTO(LocalDate.of(2000, 1, 1), LocalDate.of(2010, 12, 31), 100, null,
+                LocalDateTime.of(2024, 12, 2, 13, 57, 27), null, "test-author", "test-category");
+        var books = easyRandom.objects(BookResponseDTO.class, 5).toList();
+        var page = new PageResponseDTO<>(books, "next-cursor");
+
+        when(bookService.queryBooks(query, "totalPages,desc", "cursor", 5)).thenReturn(page);
+
+        var jsonResponse = mockMvc.perform(get(baseURI + "/query")
+                        .param("publishedFrom", "2000-01-01")
+                        .param("publishedTo", "2010-12-31")
+                        .param("totalPagesMin", "100")
+                        .param("addedFrom", "2024-12-02T13:57:27")
+                        .param("author", "test-author")
+                        .param("category", "test-category")
+                        .param("sort", "totalPages,desc")
+                        .param("cursor", "cursor")
+                        .param("size", "5")
+                        .header("Authorization", token))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        PageResponseDTO<BookResponseDTO> pageReceived = objectMapper.readValue(jsonResponse, new TypeReference<>() {});
+        assertEquals(page, pageReceived);
+
+        verify(bookService, times(1)).queryBooks(query, "totalPages,desc", "cursor", 5);
+    }
+
+    @Test
+    void shouldReturnBadRequestWhenQueryBooksWithMalformedDate() throws Exception {
+
+        mockMvc.perform(get(baseURI + "/query")
+                        .param("publishedFrom", "01.01.2000")
+                        .header("Authorization", token))
+                .andExpect(status().isBadRequest());
+
+        verify(bookService, never()).queryBooks(any(), any(), any(), any());
+    }
+
+    @Test
+    void shouldStreamBooksWhenExportBooks() throws Exception {
+
+        doAnswer(invocation -> {
+            invocation.<OutputStream>getArgument(1).write("{\"id\":1}\n".getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(bookService).exportBooks(eq(BookExportFormat.NDJSON), any());
+
+        var result = mockMvc.perform(get(baseURI + "/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"books.ndjson\""))
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andExpect(content().string("{\"id\":1}\n"));
+
+        verify(bookService, times(1)).exportBooks(eq(BookExportFormat.NDJSON), any());
+    }
+
+    @Test
+    void shouldStreamGzippedBooksWhenExportBooksAcceptingGzip() throws Exception {
+
+        var csv = "id,title\n1,Some title\n";
+
+        doAnswer(invocation -> {
+            invocation.<OutputStream>getArgument(1).write(csv.getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(bookService).exportBooks(eq(BookExportFormat.CSV), any());
+
+        var result = mockMvc.perform(get(baseURI + "/export")
+                        .param("format", "csv")
+                        .header(HttpHeaders.ACCEPT_ENCODING, "br, gzip;q=0.8"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        var body = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("text/csv"))
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andReturn()
+                .getResponse()
+                .getContentAsByteArray();
+
+        try (var gzipInputStream = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            assertEquals(csv, new String(gzipInputStream.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void shouldReturnBadRequestWhenExportBooksInUnknownFormat() throws Exception {
+
+        mockMvc.perform(get(baseURI + "/export")
+                        .param("format", "xml"))
+                .andExpect(status().isBadRequest());
+
+        verify(bookService, never()).exportBooks(any(), any());
     }
 
     @Test
@@ -252,6 +532,31 @@ class BookControllerTest {
         verify(bookService, times(1)).createBook(bookRequest);
     }
 
+    @Test
+    void shouldReturnBulkImportResponseDTOWhenCreateBooks() throws Exception {
+
+        var booksRequest = easyRandom.objects(BookRequestDTO.class, 3).toList();
+        var importResponse = easyRandom.nextObject(BulkImportResponseDTO.class);
+
+        when(bookService.createBooks(booksRequest)).thenReturn(importResponse);
+
+        var booksJsonParam = objectMapper.writeValueAsString(booksRequest);
+
+        var jsonResponse = mockMvc.perform(post(baseURI + "/bulk")
+                        .header("Authorization", token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(booksJsonParam))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        BulkImportResponseDTO importReceived = objectMapper.readValue(jsonResponse, new TypeReference<>() {});
+        assertEquals(importResponse, importReceived);
+
+        verify(bookService, times(1)).createBooks(booksRequest);
+    }
+
     @Test
     void shouldReturnBookResponseDTOWhenUpdateBook() throws Exception {
 
@@ -260,7 +565,7 @@ class BookControllerTest {
         var bookRequest = easyRandom.nextObject(BookRequestDTO.class);
         var bookResponse = easyRandom.nextObject(BookResponseDTO.class);
 
-        when(bookService.updateBook(bookId, bookRequest)).thenReturn(bookResponse);
+        when(bookService.updateBook(bookId, bookRequest, null)).thenReturn(bookResponse);
 
         var bookJsonParam = objectMapper.writeValueAsString(bookRequest);
 
@@ -276,7 +581,143 @@ class BookControllerTest {
         BookResponseDTO bookReceived = objectMapper.readValue(jsonResponse, new TypeReference<>() {});
         assertEquals(bookResponse, bookReceived);
 
-        verify(bookService, times(1)).updateBook(bookId, bookRequest);
+        verify(bookService, times(1)).updateBook(bookId, bookRequest, null);
+    }
+
+    @Test
+    void shouldPassExpectedVersionWhenUpdateBookWithIfMatch() throws Exception {
+
+        var bookId = 97L;
+
+        var bookRequest = easyRandom.nextObject(BookRequestDTO.class);
+        var bookResponse = easyRandom.nextObject(BookResponseDTO.class);
+
+        when(bookService.updateBook(bookId, bookRequest, 5L)).thenReturn(bookResponse);
+
+        mockMvc.perform(put(baseURI + "/{id}", bookId)
+                        .header("Authorization", token)
+                        .header(HttpHeaders.IF_MATCH, "\"97-5\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(bookRequest)))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + bookResponse.getId() + "-" + bookResponse.getVersion() + "\""));
+
+        verify(bookService, times(1)).updateBook(bookId, bookRequest, 5L);
+    }
+
+    @Test
+    void shouldReturnPreconditionFailedWhenUpdateBookWithOutdatedIfMatch() throws Exception {
+
+        var bookId = 97L;
+
+        var bookRequest = easyRandom.nextObject(BookRequestDTO.class);
+
+        when(bookService.updateBook(bookId, bookRequest, 4L))
+                .thenThrow(new OptimisticLockingFailureException("Book with id '97' has version 5, but 4 was expected"));
+
+        mockMvc.perform(put(baseURI + "/{id}", bookId)
+                        .header("Authorization", token)
+                        .header(HttpHeaders.IF_MATCH, "\"97-4\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(bookRequest)))
+                .andExpect(status().isPreconditionFailed());
+
+        verify(bookService, times(1)).updateBook(bookId, bookRequest, 4L);
+    }
+
+    @Test
+    void shouldReturnNoContentWhenPatchBook() throws Exception {
+
+        var bookId = 97L;
+        var patchJson = "{\"title\": \"New title\", \"totalPages\": 215}";
+
+        mockMvc.perform(patch(baseURI + "/{id}", bookId)
+                        .header("Authorization", token)
+                        .contentType("application/merge-patch+json")
+                        .content(patchJson))
+                .andExpect(status().isNoContent())
+                .andExpect(header().doesNotExist(HttpHeaders.ETAG));
+
+        verify(bookService, times(1)).patchBook(eq(bookId),
+                argThat(patch -> patch.getFields().equals(Map.of("title", "New title", "totalPages", 215))), isNull());
+    }
+
+    @Test
+    void shouldReturnNewETagWhenPatchBookWithIfMatch() throws Exception {
+
+        var bookId = 97L;
+
+        mockMvc.perform(patch(baseURI + "/{id}", bookId)
+                        .header("Authorization", token)
+                        .header(HttpHeaders.IF_MATCH, "\"97-5\"")
+                        .contentType("application/merge-patch+json")
+                        .content("{\"publishedAt\": \"2001-03-14\"}"))
+                .andExpect(status().isNoContent())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"97-6\""));
+
+        verify(bookService, times(1)).patchBook(eq(bookId), any(), eq(5L));
+    }
+
+    @Test
+    void shouldReturnConflictWhenPatchBookWithTitleOfAnotherBook() throws Exception {
+
+        var bookId = 97L;
+
+        doThrow(new DataIntegrityViolationException("Unique index or primary key violation",
+                new ConstraintViolationException("duplicate key value", new SQLException(), "u_books_title_published_at")))
+                .when(bookService).patchBook(eq(bookId), any(), isNull());
+
+        mockMvc.perform(patch(baseURI + "/{id}", bookId)
+                        .header("Authorization", token)
+                        .contentType("application/merge-patch+json")
+                        .content("{\"title\": \"Title of another book\"}"))
+                .andExpect(status().isConflict())
+                .andExpect(content().string("The change conflicts with an existing book"));
+    }
+
+    @Test
+    void shouldNotReturnConflictWhenCreateBookViolatesAnotherConstraint() {
+
+        var bookRequest = easyRandom.nextObject(BookRequestDTO.class);
+
+        when(bookService.createBook(bookRequest)).thenThrow(new DataIntegrityViolationException("NULL not allowed",
+                new ConstraintViolationException("null value in column", new SQLException(), null)));
+
+        // Not turned into a response by the handler of conflicts
+        var e = assertThrows(ServletException.class, () -> mockMvc.perform(post(baseURI)
+                .header("Authorization", token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(bookRequest))));
+        assertInstanceOf(DataIntegrityViolationException.class, e.getCause());
+    }
+
+    @Test
+    void shouldReturnBadRequestWhenPatchBookWithAssociationsOrNull() throws Exception {
+
+        var bookId = 97L;
+
+        for (var patchJson : List.of("{\"authors\": []}", "{\"title\": null}", "{\"totalPages\": \"many\"}", "{}")) {
+            mockMvc.perform(patch(baseURI + "/{id}", bookId)
+                            .header("Authorization", token)
+                            .contentType("application/merge-patch+json")
+                            .content(patchJson))
+                    .andExpect(status().isBadRequest());
+        }
+
+        verify(bookService, never()).patchBook(any(), any(), any());
+    }
+
+    @Test
+    void shouldReturnPreconditionFailedWhenDeleteBookByIdWithIfMatchOfAnotherBook() throws Exception {
+
+        var bookId = 97L;
+
+        mockMvc.perform(delete(baseURI + "/{id}", bookId)
+                        .header("Authorization", token)
+                        .header(HttpHeaders.IF_MATCH, "\"98-5\""))
+                .andExpect(status().isPreconditionFailed());
+
+        verify(bookService, never()).deleteBookById(any(), any());
     }
 
     @Test
@@ -285,7 +726,7 @@ class BookControllerTest {
         mockMvc.perform(delete(baseURI + "/{id}", bookId)
                         .header("Authorization", token))
                 .andExpect(status().isAccepted());
-        verify(bookService, times(1)).deleteBookById(bookId);
+        verify(bookService, times(1)).deleteBookById(bookId, null);
     }
 
     @Test
@@ -302,7 +743,7 @@ class BookControllerTest {
                         .content(categoryJsonParam))
                 .andExpect(status().isAccepted());
 
-        verify(bookService, times(1)).addCategoryToBook(bookId, categoryDTO);
+        verify(bookService, times(1)).addCategoryToBook(bookId, categoryDTO, null);
     }
 
     @Test
@@ -311,7 +752,7 @@ class BookControllerTest {
         var bookId = 88L;
         var categoryDTO = easyRandom.nextObject(CategoryRequestDTO.class);
 
-        when(bookService.removeCategoryFromBook(bookId, categoryDTO)).thenReturn(true);
+        when(bookService.removeCategoryFromBook(bookId, categoryDTO, null)).thenReturn(true);
 
         var categoryJsonParam = objectMapper.writeValueAsString(categoryDTO);
 
@@ -322,7 +763,7 @@ class BookControllerTest {
                 .andExpect(status().isOk())
                 .andExpect(content().string("true"));
 
-        verify(bookService, times(1)).removeCategoryFromBook(bookId, categoryDTO);
+        verify(bookService, times(1)).removeCategoryFromBook(bookId, categoryDTO, null);
     }
 
     @Test
@@ -331,7 +772,7 @@ class BookControllerTest {
         var bookId = 88L;
         var categoryDTO = easyRandom.nextObject(CategoryRequestDTO.class);
 
-        when(bookService.removeCategoryFromBook(bookId, categoryDTO)).thenReturn(false);
+        when(bookService.removeCategoryFromBook(bookId, categoryDTO, null)).thenReturn(false);
 
         var categoryJsonParam = objectMapper.writeValueAsString(categoryDTO);
 
@@ -341,7 +782,7 @@ class BookControllerTest {
                         .content(categoryJsonParam))
                 .andExpect(status().isNotFound());
 
-        verify(bookService, times(1)).removeCategoryFromBook(bookId, categoryDTO);
+        verify(bookService, times(1)).removeCategoryFromBook(bookId, categoryDTO, null);
     }
 
     @Test
@@ -358,7 +799,7 @@ class BookControllerTest {
                         .content(categoriesJsonParam))
                 .andExpect(status().isAccepted());
 
-        verify(bookService, times(1)).updateCategoriesForBook(bookId, categoriesDTO);
+        verify(bookService, times(1)).updateCategoriesForBook(bookId, categoriesDTO, null);
     }
 
     @Test
@@ -375,7 +816,7 @@ class BookControllerTest {
                         .content(authorJsonParam))
                 .andExpect(status().isAccepted());
 
-        verify(bookService, times(1)).addAuthorToBook(bookId, authorDTO);
+        verify(bookService, times(1)).addAuthorToBook(bookId, authorDTO, null);
     }
 
     @Test
@@ -384,7 +825,7 @@ class BookControllerTest {
         var bookId = 88L;
         var authorDTO = easyRandom.nextObject(AuthorRequestDTO.class);
 
-        when(bookService.removeAuthorFromBook(bookId, authorDTO)).thenReturn(true);
+        when(bookService.removeAuthorFromBook(bookId, authorDTO, null)).thenReturn(true);
 
         var authorJsonParam = objectMapper.writeValueAsString(authorDTO);
 
@@ -395,7 +836,7 @@ class BookControllerTest {
                 .andExpect(status().isOk())
                 .andExpect(content().string("true"));
 
-        verify(bookService, times(1)).removeAuthorFromBook(bookId, authorDTO);
+        verify(bookService, times(1)).removeAuthorFromBook(bookId, authorDTO, null);
     }
 
     @Test
@@ -404,7 +845,7 @@ class BookControllerTest {
         var bookId = 88L;
         var authorDTO = easyRandom.nextObject(AuthorRequestDTO.class);
 
-        when(bookService.removeAuthorFromBook(bookId, authorDTO)).thenReturn(false);
+        when(bookService.removeAuthorFromBook(bookId, authorDTO, null)).thenReturn(false);
 
         var authorJsonParam = objectMapper.writeValueAsString(authorDTO);
 
@@ -414,7 +855,7 @@ class BookControllerTest {
                         .content(authorJsonParam))
                 .andExpect(status().isNotFound());
 
-        verify(bookService, times(1)).removeAuthorFromBook(bookId, authorDTO);
+        verify(bookService, times(1)).removeAuthorFromBook(bookId, authorDTO, null);
     }
 
     @Test
@@ -431,6 +872,6 @@ class BookControllerTest {
                         .content(authorsJsonParam))
                 .andExpect(status().isAccepted());
 
-        verify(bookService, times(1)).updateAuthorsForBook(bookId, authorsDTO);
+        verify(bookService, times(1)).updateAuthorsForBook(bookId, authorsDTO, null);
     }
 }
\ No newline at end of file
@@ -0,0 +1,169 @@
+package com.example.repository;
+
+import com.example.cache.AuthorNameDictionary;
+import com.example.cache.CategoryNameDictionary;
+import com.example.model.Book;
+import com.example.sql.SqlStatementCounter;
+import com.example.sql.SqlStatementCounterConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jdbc.JdbcConnectionDetails;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Plans of the book queries on PostgreSQL, for the indexes of the V7 migration and of the join tables.
+ * Every supported combination of filters, sort, direction and page (the first one and a next one) is planned
+ * on a generated catalog, and none of them may scan the books or the join tables. Skipped without Docker.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@TestPropertySource(properties = {
+        "spring.flyway.enabled=true",
+        "spring.jpa.hibernate.ddl-auto=validate"
+})
+@Import({ SqlStatementCounterConfig.class, AuthorNameDictionary.class, CategoryNameDictionary.class, SimpleMeterRegistry.class })
+@Testcontainers(disabledWithoutDocker = true)
+class BookQueryPlanPostgresTest {
+
+    private static final int BOOKS = 20_000;
+    private static final int AUTHORS = 200;
+    private static final int CATEGORIES = 20;
+    private static final int PAGE_SIZE = 20;
+
+    private static final LocalDate PUBLISHED_AT_START = LocalDate.of(2000, 1, 1);
+    private static final LocalDateTime ADDED_AT_START = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    // Filter name -> filter, each one matches a small part of the books
+    private static final Map<String, Specification<Book>> FILTERS = Map.of(
+            "publishedAt", BookSpecifications.publishedBetween(PUBLISHED_AT_START.plusDays(1_000), PUBLISHED_AT_START.plusDays(1_365)),
+            "totalPages", BookSpecifications.totalPagesBetween(100, 120),
+            "addedAt", BookSpecifications.addedBetween(ADDED_AT_START.plusMinutes(5_000), null),
+            "author", BookSpecifications.hasAuthor("author-7"),
+            "category", BookSpecifications.hasCategory("category-3"));
+
+    // The authors and categories tables are small enough to be read whole
+    private static final Pattern SCAN_OF_LARGE_TABLE = Pattern.compile("Seq Scan on (books|books_authors|books_categories)\\b");
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private JdbcConnectionDetails jdbcConnectionDetails;
+
+    @Autowired
+    private SqlStatementCounter sqlStatementCounter;
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)  // The catalog and its statistics are committed for the planning connection
+    void shouldReadBooksAndJoinTablesByIndexesWhenFindKeys() {
+
+        createCatalog();
+
+        var tableScans = new ArrayList<String>();
+        var filterNames = List.copyOf(FILTERS.keySet());
+
+        // Every subset of the filters, with every sort in both directions
+        for (int mask = 0; mask < (1 << filterNames.size()); mask++) {
+
+            var combination = new ArrayList<String>();
+            for (int i = 0; i < filterNames.size(); i++) {
+                if ((mask & (1 << i)) != 0) {
+                    combination.add(filterNames.get(i));
+                }
+            }
+            var filter = filterOf(combination);
+
+            for (var sort : BookSort.values()) {
+                for (var descending : List.of(false, true)) {
+
+                    // The first page, then the page after its last key
+                    sqlStatementCounter.reset();
+                    var keys = bookRepository.findKeys(filter, sort, descending, null, PAGE_SIZE + 1);
+                    checkPlan(combination, sort, descending, "first page", tableScans);
+
+                    if (!keys.isEmpty()) {
+                        sqlStatementCounter.reset();
+                        bookRepository.findKeys(filter, sort, descending, keys.getLast(), PAGE_SIZE + 1);
+                        checkPlan(combination, sort, descending, "next page", tableScans);
+                    }
+                }
+            }
+        }
+
+        assertTrue(tableScans.isEmpty(), "Book queries scan tables instead of indexes:\n" + String.join("\n", tableScans));
+    }
+
+    private void createCatalog() {
+        jdbcTemplate.execute(String.format("""
+                INSERT INTO authors (id, name) SELECT i, 'author-' || i FROM generate_series(0, %2$d - 1) i;
+                INSERT INTO categories (id, name) SELECT i, 'category-' || i FROM generate_series(0, %3$d - 1) i;
+                INSERT INTO books (id, title, published_at, total_pages, added_at)
+                SELECT i, 'book-' || i, DATE '2000-01-01' + i %% 9000, 1 + (i * 7) %% 1000, TIMESTAMP '2024-01-01' + i * INTERVAL '1 minute'
+                FROM generate_series(0, %1$d - 1) i;
+                INSERT INTO books_authors (book_id, author_id) SELECT i, i %% %2$d FROM generate_series(0, %1$d - 1) i;
+                INSERT INTO books_categories (book_id, category_id) SELECT i, i %% %3$d FROM generate_series(0, %1$d - 1) i;
+                ANALYZE;
+                """, BOOKS, AUTHORS, CATEGORIES));
+    }
+
+    /*
+     * The generic plan (PostgreSQL 16) is the one of the statement with its parameters as placeholders,
+     * the plan a prepared statement settles on. It's only planned with the simple query protocol
+     */
+    private void checkPlan(List<String> combination, BookSort sort, boolean descending, String page, List<String> tableScans) {
+
+        var sql = sqlStatementCounter.getStatementsSql().getLast();
+        var parameter = new int[] { 0 };
+        var sqlWithPlaceholders = Pattern.compile("\\?").matcher(sql).replaceAll(match -> "\\$" + ++parameter[0]);
+
+        var plan = String.join("\n", planningJdbcTemplate().queryForList("EXPLAIN (GENERIC_PLAN) " + sqlWithPlaceholders, String.class));
+        if (SCAN_OF_LARGE_TABLE.matcher(plan).find()) {
+            tableScans.add(String.format("filters %s, sort '%s%s', %s:%n%s", combination, sort.getField(),
+                    descending ? ",desc" : "", page, plan));
+        }
+    }
+
+    private JdbcTemplate planningJdbcTemplate() {
+        var url = jdbcConnectionDetails.getJdbcUrl();
+        return new JdbcTemplate(new DriverManagerDataSource(url + (url.contains("?") ? "&" : "?") + "preferQueryMode=simple",
+                jdbcConnectionDetails.getUsername(), jdbcConnectionDetails.getPassword()));
+    }
+
+    private static Specification<Book> filterOf(List<String> filterNames) {
+        if (filterNames.isEmpty()) {
+            return null;
+        }
+        return Specification.allOf(filterNames.stream()
+                .map(FILTERS::get)
+                .toList());
+    }
+}
@@ -1,38 +1,102 @@
 package com.example.repository;
 
+import com.example.cache.AuthorNameDictionary;
+import com.example.cache.CategoryNameDictionary;
 import com.example.model.Author;
 import com.example.model.Book;
+import com.example.model.BookViewName;
 import com.example.model.Category;
+import com.example.sql.SqlStatementCounter;
+import com.example.sql.SqlStatementCounterConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.exception.ConstraintViolationException;
 import org.jeasy.random.EasyRandom;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
-import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
 import org.springframework.test.context.jdbc.Sql;
 import org.springframework.test.context.jdbc.SqlConfig;
-
+import org.springframework.test.context.jdbc.SqlMergeMode;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.Mockito.*;
 
 @DataJpaTest
-@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@Import({ SqlStatementCounterConfig.class, AuthorNameDictionary.class, CategoryNameDictionary.class, SimpleMeterRegistry.class })
+@SqlMergeMode(SqlMergeMode.MergeMode.MERGE)  // The cleanup goes before the data of a test
+@Sql(scripts = "/cleanup-test-data.sql",
+     config = @SqlConfig(transactionMode = SqlConfig.TransactionMode.ISOLATED)  // Forces separate transaction
+)
 class BookRepositoryCustomImplTest {
 
     @Autowired
     private BookRepository bookRepository;
 
+    @Autowired
+    private BookViewRepository bookViewRepository;
+
+    @Autowired
+    private TestEntityManager testEntityManager;
+
     @MockitoSpyBean
     private CategoryRepository categoryRepository;
     @MockitoSpyBean
     private AuthorRepository authorRepository;
 
+    @Autowired
+    private SqlStatementCounter sqlStatementCounter;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private AuthorNameDictionary authorNameDictionary;
+    @Autowired
+    private CategoryNameDictionary categoryNameDictionary;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
     private final EasyRandom easyRandom = new EasyRandom();
 
+    @BeforeEach
+    void setUp() {
+        authorNameDictionary.invalidateAll();
+        categoryNameDictionary.invalidateAll();
+        var sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+        sessionFactory.getCache().evictAllRegions();  // Not only the entities, like evictAll of JPA
+        sessionFactory.getStatistics().clear();
+        meterRegistry.clear();
+        sqlStatementCounter.reset();
+    }
+
     @Test
     void shouldSaveAndReturnNewBookWhenSaveCascading() {
 
@@ -71,6 +135,14 @@ class BookRepositoryCustomImplTest {
         verify(categoryRepository, times(1)).saveAll(anyCollection());
         verify(authorRepository, times(1)).saveAll(anyCollection());
 
+        for (var phase : List.of("categories", "authors", "book")) {
+            assertEquals(1, meterRegistry.get("books.repository.save.phase")
+                    .tag("operation", "saveCascading")
+                    .tag("phase", phase)
+                    .timer()
+                    .count());
+        }
+
         // Verifying current state of data in DB
         var booksFromDBAfter = bookRepository.findAll();
         assertEquals(1, booksFromDBAfter.size());
@@ -87,6 +159,16 @@ class BookRepositoryCustomImplTest {
         var authorsFromDBAfter = authorRepository.findAll();
         assertFalse(authorsFromDBAfter.isEmpty());
         assertEquals(bookSaved.getAuthors(), new HashSet<>(authorsFromDBAfter));
+
+        // The view is written along with the book
+        var viewFromDBAfter = bookViewRepository.findById(bookSaved.getId());
+        assertTrue(viewFromDBAfter.isPresent());
+        assertEquals(bookSaved.getTitle(), viewFromDBAfter.get().getTitle());
+        assertEquals(bookSaved.getVersion(), viewFromDBAfter.get().getVersion());
+        assertEquals(authorsNames.stream().sorted().toList(),
+                viewFromDBAfter.get().getAuthors().stream().map(BookViewName::name).toList());
+        assertEquals(categoriesNames.stream().sorted().toList(),
+                viewFromDBAfter.get().getCategories().stream().map(BookViewName::name).toList());
     }
 
     @Test
@@ -178,6 +260,12 @@ class BookRepositoryCustomImplTest {
         verify(categoryRepository, times(1)).saveAll(anyCollection());
         verify(authorRepository, times(1)).saveAll(anyCollection());
 
+        // The view is updated without loading it, with the new version of the book
+        var view = bookViewRepository.findById(bookSaved.getId()).orElseThrow();
+        assertEquals(bookSaved.getVersion(), view.getVersion());
+        assertEquals(authorsNames.stream().sorted().toList(), view.getAuthors().stream().map(BookViewName::name).toList());
+        assertEquals(categoriesNames.stream().sorted().toList(), view.getCategories().stream().map(BookViewName::name).toList());
+
         // Verifying current state of data in DB
         var booksFromDBAfter = bookRepository.findAll();
         assertEquals(1, booksFromDBAfter.size());
@@ -195,4 +283,418 @@ class BookRepositoryCustomImplTest {
         assertFalse(authorsFromDBAfter.isEmpty());
         assertEquals(bookSaved.getAuthors(), new HashSet<>(authorsFromDBAfter));
     }
-}
\ No newline at end of file
+
+    @Test
+    @Sql(scripts = "/setup-test-data.sql",
+         config = @SqlConfig(transactionMode = SqlConfig.TransactionMode.ISOLATED)  // Forces separate transaction
+    )
+    void shouldSaveAllBooksInBatchesWhenSaveAllCascading() {
+
+        // Preparing data: existing and new names are shared by all the books
+        var books = new ArrayList<Book>();
+        for (int i = 0; i < 120; i++) {
+            var book = easyRandom.nextObject(Book.class);
+            book.setId(null);
+            book.setNew(true);
+            book.setTitle("book-" + i);  // A random title may be too short
+            book.setTotalPages(345);
+            book.setCategories(Set.of(new Category(null, "category-1", new HashSet<>()), new Category(null, "category-new", new HashSet<>())));
+            book.setAuthors(Set.of(new Author(null, "author-1", new HashSet<>()), new Author(null, "author-new", new HashSet<>())));
+            books.add(book);
+        }
+
+        sqlStatementCounter.reset();
+
+        // Testing
+        var booksSaved = bookRepository.saveAllCascading(books);
+
+        // Verifying results
+        assertEquals(120, booksSaved.size());
+        assertTrue(booksSaved.stream().allMatch(book -> book.getId() != null));
+
+        verify(categoryRepository, times(1)).findAllByNameIn(anyList());
+        verify(authorRepository, times(1)).findAllByNameIn(anyList());
+
+        // Inserts go in JDBC batches, so the number of statements does not grow with the number of books (120 + 2 x 240 rows)
+        assertTrue(sqlStatementCounter.getStatements() < 30,
+                "Expected batched inserts, but got " + sqlStatementCounter.getStatements() + " statements");
+
+        // Verifying current state of data in DB
+        assertEquals(121, bookRepository.count());
+        assertEquals(121, bookViewRepository.count());
+        assertEquals(4, categoryRepository.count());
+        assertEquals(4, authorRepository.count());
+
+        var bookFromDBAfter = bookRepository.findWithAssociationsById(booksSaved.getLast().getId());
+        assertTrue(bookFromDBAfter.isPresent());
+        assertEquals(Set.of("category-1", "category-new"),
+                bookFromDBAfter.get().getCategories().stream().map(Category::getName).collect(Collectors.toSet()));
+        assertEquals(Set.of("author-1", "author-new"),
+                bookFromDBAfter.get().getAuthors().stream().map(Author::getName).collect(Collectors.toSet()));
+    }
+
+    @Test
+    @Sql(scripts = "/setup-test-data.sql",
+         config = @SqlConfig(transactionMode = SqlConfig.TransactionMode.ISOLATED)  // Forces separate transaction
+    )
+    void shouldNotQueryNamesKnownByDictionaryWhenSaveCascading() {
+
+        // Preparing data
+        authorNameDictionary.warmUp();
+        categoryNameDictionary.warmUp();
+
+        var book = easyRandom.nextObject(Book.class);
+        book.setId(null);
+        book.setNew(true);
+        book.setTotalPages(345);
+        book.setCategories(Set.of(new Category(null, "category-1", new HashSet<>()), new Category(null, "category-2", new HashSet<>())));
+        book.setAuthors(Set.of(new Author(null, "author-3", new HashSet<>())));
+
+        // Testing
+        var bookSaved = bookRepository.saveCascading(book);
+
+        // Verifying results
+        assertNotNull(bookSaved.getId());
+
+        verify(categoryRepository, never()).findAllByNameIn(anyList());
+        verify(authorRepository, never()).findAllByNameIn(anyList());
+        verify(categoryRepository, never()).saveAll(any());
+        verify(authorRepository, never()).saveAll(any());
+
+        // Verifying current state of data in DB
+        var bookFromDBAfter = bookRepository.findWithAssociationsById(bookSaved.getId());
+        assertTrue(bookFromDBAfter.isPresent());
+        assertEquals(Set.of(1, 2), bookFromDBAfter.get().getCategories().stream().map(Category::getId).collect(Collectors.toSet()));
+        assertEquals(Set.of(3L), bookFromDBAfter.get().getAuthors().stream().map(Author::getId).collect(Collectors.toSet()));
+    }
+
+    @Test
+    @Sql(scripts = "/setup-test-data.sql",
+         config = @SqlConfig(transactionMode = SqlConfig.TransactionMode.ISOLATED)  // Forces separate transaction
+    )
+    void shouldLoadNamesWithoutEntitiesWhenWarmUpDictionaries() {
+
+        var statistics = entityManagerFactory.unwrap(SessionFactory.class)
+                .getStatistics();
+        statistics.clear();
+        sqlStatementCounter.reset();
+
+        authorNameDictionary.warmUp();
+        categoryNameDictionary.warmUp();
+
+        // One query per dictionary, no count queries
+        assertEquals(2, sqlStatementCounter.getStatements());
+        assertEquals(0, statistics.getEntityLoadCount());
+        assertEquals(0, statistics.getSecondLevelCachePutCount());
+
+        assertEquals(3L, authorNameDictionary.get("author-3"));
+        assertEquals(2, categoryNameDictionary.get("category-2"));
+    }
+
+    @Test
+    @Sql(scripts = "/setup-test-data.sql",
+         config = @SqlConfig(transactionMode = SqlConfig.TransactionMode.ISOLATED)  // Forces separate transaction
+    )
+    void shouldChangeViewWithBookWhenAddRemoveAndPatch() {
+
+        assertEquals(JoinRowChange.CHANGED, bookRepository.addAuthor(1L, "author-0", 0L));
+        assertEquals(JoinRowChange.CHANGED, bookRepository.removeCategory(1L, "category-2", 1L));
+        assertTrue(bookRepository.patch(1L, Map.of("title", "book-1-patched", "totalPages", 215), 2L));
+
+        // Not changed, so neither is the view
+        assertEquals(JoinRowChange.UNCHANGED, bookRepository.removeAuthor(1L, "author-new", null));
+        assertEquals(JoinRowChange.UNCHANGED, bookRepository.addAuthor(1L, "author-1", null));
+        assertEquals(JoinRowChange.BOOK_NOT_MATCHED, bookRepository.removeAuthor(1L, "author-1", 2L));
+        assertEquals(JoinRowChange.BOOK_NOT_MATCHED, bookRepository.removeAuthor(99L, "author-1", null));
+
+        // Bulk updates bypass the persistence context
+        testEntityManager.clear();
+
+        var version = bookRepository.findVersionById(1L).orElseThrow();
+        var view = bookViewRepository.findById(1L).orElseThrow();
+
+        assertEquals(3L, view.getVersion());
+        assertEquals(version.version(), view.getVersion());
+        assertEquals(version.updatedAt(), view.getUpdatedAt());
+        assertEquals("book-1-patched", view.getTitle());
+        assertEquals(215, view.getTotalPages());
+
+        // Names stay ordered
+        var newAuthorId = authorRepository.findAllByNameIn(List.of("author-0")).getFirst().getId();
+        assertEquals(List.of(new BookViewName(newAuthorId, "author-0"), new BookViewName(1L, "author-1"),
+                        new BookViewName(2L, "author-2"), new BookViewName(3L, "author-3")),
+                view.getAuthors());
+        assertEquals(List.of(new BookViewName(1L, "category-1"), new BookViewName(3L, "category-3")),
+                view.getCategories());
+    }
+
+    @Test
+    @Sql(scripts = "/setup-test-data.sql",
+         config = @SqlConfig(transactionMode = SqlConfig.TransactionMode.ISOLATED)  // Forces separate transaction
+    )
+    void shouldKeepVersionOfViewWhenAddAndRemoveSameNameRepeatedly() {
+
+        assertEquals(JoinRowChange.CHANGED, bookRepository.addCategory(1L, "category-new", null));
+        assertEquals(JoinRowChange.UNCHANGED, bookRepository.addCategory(1L, "category-new", null));
+        assertEquals(JoinRowChange.CHANGED, bookRepository.removeCategory(1L, "category-new", null));
+        assertEquals(JoinRowChange.UNCHANGED, bookRepository.removeCategory(1L, "category-new", null));
+        assertEquals(JoinRowChange.BOOK_NOT_MATCHED, bookRepository.addCategory(1L, "category-new", 1L));
+
+        // Bulk updates bypass the persistence context
+        testEntityManager.clear();
+
+        var version = bookRepository.findVersionById(1L).orElseThrow();
+        var view = bookViewRepository.findById(1L).orElseThrow();
+
+        assertEquals(2L, version.version());
+        assertEquals(version.version(), view.getVersion());
+        assertEquals(version.updatedAt(), view.getUpdatedAt());
+    }
+
+    @Test
+    @Sql(scripts = "/setup-test-data.sql",
+         config = @SqlConfig(transactionMode = SqlConfig.TransactionMode.ISOLATED)  // Forces separate transaction
+    )
+    void shouldThrowDataIntegrityViolationExceptionWhenPatchTitleOfAnotherBook() {
+
+        // Preparing data
+        var book = easyRandom.nextObject(Book.class);
+        book.setId(null);
+        book.setNew(true);
+        book.setTitle("book-2");
+        book.setPublishedAt(LocalDate.of(2010, 8, 26));
+        book.setTotalPages(345);
+        book.setCategories(new HashSet<>());
+        book.setAuthors(new HashSet<>());
+        var bookSaved = bookRepository.saveCascading(book);
+
+        // Testing, book-1 has the same publication date
+        var e = assertThrows(DataIntegrityViolationException.class,
+                () -> bookRepository.patch(bookSaved.getId(), Map.of("title", "book-1"), null));
+        assertTrue(((ConstraintViolationException) e.getCause()).getConstraintName()
+                .toLowerCase(Locale.ROOT)
+                .contains(Book.TITLE_PUBLISHED_AT_CONSTRAINT.toLowerCase(Locale.ROOT)));
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)  // Cached entries are read by the transactions started after them
+    @Sql(scripts = "/setup-test-data.sql",
+         config = @SqlConfig(transactionMode = SqlConfig.TransactionMode.ISOLATED)  // Forces separate transaction
+    )
+    void shouldReadAuthorsFromSecondLevelCacheUntilAddAuthor() {
+
+        var statistics = entityManagerFactory.unwrap(SessionFactory.class)
+                .getStatistics();
+
+        // The first read puts the authors and the ids of the authors of the book into the cache
+        assertEquals(Set.of("author-1", "author-2", "author-3"), authorsNamesOfBook(1L));
+
+        sqlStatementCounter.reset();
+
+        assertEquals(Set.of("author-1", "author-2", "author-3"), authorsNamesOfBook(1L));
+
+        assertEquals(1, sqlStatementCounter.getStatements());  // Only the book itself
+        assertEquals(1, statistics.getDomainDataRegionStatistics("book-authors").getHitCount());
+        assertEquals(3, statistics.getDomainDataRegionStatistics("authors").getHitCount());
+
+        // The cached ids are evicted along with the insert of the join row
+        assertEquals(JoinRowChange.CHANGED, transactionTemplate().execute(status -> bookRepository.addAuthor(1L, "author-0", 0L)));
+
+        assertEquals(Set.of("author-0", "author-1", "author-2", "author-3"), authorsNamesOfBook(1L));
+        assertEquals(1, statistics.getDomainDataRegionStatistics("book-authors").getHitCount());
+        assertEquals(2, statistics.getDomainDataRegionStatistics("book-authors").getMissCount());
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)  // Cached entries are read by the transactions started after them
+    @Sql(scripts = "/setup-test-data.sql",
+         config = @SqlConfig(transactionMode = SqlConfig.TransactionMode.ISOLATED)  // Forces separate transaction
+    )
+    void shouldKeepCachedAuthorsOfOtherBooksWhenAddAuthorAndPatch() {
+
+        var statistics = entityManagerFactory.unwrap(SessionFactory.class)
+                .getStatistics();
+
+        var book = easyRandom.nextObject(Book.class);
+        book.setId(null);
+        book.setNew(true);
+        book.setTitle("book-2");
+        book.setPublishedAt(LocalDate.of(2011, 3, 14));
+        book.setTotalPages(345);
+        book.setCategories(new HashSet<>());
+        book.setAuthors(new HashSet<>(Set.of(new Author(null, "author-2", new HashSet<>()))));
+        var anotherBookId = transactionTemplate().execute(status -> bookRepository.saveCascading(book).getId());
+
+        // The first read puts the other book's author and the ids of its authors into the cache
+        assertEquals(Set.of("author-2"), authorsNamesOfBook(anotherBookId));
+        var authorsMissCount = statistics.getDomainDataRegionStatistics("authors").getMissCount();
+
+        // Only the changed book is evicted
+        assertEquals(JoinRowChange.CHANGED, transactionTemplate().execute(status -> bookRepository.addAuthor(1L, "author-0", 0L)));
+        assertEquals(JoinRowChange.CHANGED, transactionTemplate().execute(status -> bookRepository.removeAuthor(1L, "author-0", 1L)));
+        assertEquals(Boolean.TRUE, transactionTemplate().execute(status -> bookRepository.patch(1L, Map.of("totalPages", 216), 2L)));
+
+        assertEquals(Set.of("author-2"), authorsNamesOfBook(anotherBookId));
+        assertEquals(1, statistics.getDomainDataRegionStatistics("book-authors").getHitCount());
+        assertEquals(1, statistics.getDomainDataRegionStatistics("book-authors").getMissCount());
+        assertEquals(authorsMissCount, statistics.getDomainDataRegionStatistics("authors").getMissCount());
+    }
+
+    @Test
+    @Sql(scripts = "/setup-test-data.sql",
+         config = @SqlConfig(transactionMode = SqlConfig.TransactionMode.ISOLATED)  // Forces separate transaction
+    )
+    void shouldFetchOneRowPerAssociationWhenFindWithAssociationsById() {
+
+        sqlStatementCounter.reset();
+
+        // Testing
+        var bookOptional = bookRepository.findWithAssociationsById(1L);
+
+        // Verifying results
+        assertTrue(bookOptional.isPresent());
+        var book = bookOptional.get();
+        assertEquals(3, book.getAuthors().size());
+        assertEquals(3, book.getCategories().size());
+
+        // One statement per collection and one row per association (3 + 3), not the 3 x 3 Cartesian product
+        assertEquals(2, sqlStatementCounter.getStatements());
+        assertEquals(6, sqlStatementCounter.getRows());
+    }
+
+    @Test
+    @Sql(scripts = "/setup-test-data.sql",
+         config = @SqlConfig(transactionMode = SqlConfig.TransactionMode.ISOLATED)  // Forces separate transaction
+    )
+    void shouldFetchOneRowPerAssociationWhenFindAllWithAssociationsByIdIn() {
+
+        sqlStatementCounter.reset();
+
+        // Testing
+        var books = bookRepository.findAllWithAssociationsByIdIn(List.of(1L, 2L));
+
+        // Verifying results
+        assertEquals(1, books.size());
+        assertEquals(3, books.getFirst().getAuthors().size());
+        assertEquals(3, books.getFirst().getCategories().size());
+
+        assertEquals(2, sqlStatementCounter.getStatements());
+        assertEquals(6, sqlStatementCounter.getRows());
+    }
+
+    @Test
+    void shouldQueryOnceWhenFindWithAssociationsByIdOfMissingBook() {
+
+        sqlStatementCounter.reset();
+
+        var bookOptional = bookRepository.findWithAssociationsById(99L);
+
+        assertTrue(bookOptional.isEmpty());
+        assertEquals(1, sqlStatementCounter.getStatements());
+        assertEquals(0, sqlStatementCounter.getRows());
+    }
+
+    @Test
+    @Sql(scripts = "/setup-test-books.sql",
+         config = @SqlConfig(transactionMode = SqlConfig.TransactionMode.ISOLATED)  // Forces separate transaction
+    )
+    void shouldReturnPagesOfKeysInOrderOfSortWhenFindKeysByAuthor() {
+
+        sqlStatementCounter.reset();
+
+        // Testing
+        var firstPage = bookRepository.findKeysByAuthor("author-1", BookSort.TITLE, true, null, 2);
+        var secondPage = bookRepository.findKeysByAuthor("author-1", BookSort.TITLE, true, firstPage.getLast(), 2);
+
+        // Verifying results
+        assertEquals(List.of(new BookSortKey(5L, "book-5"), new BookSortKey(4L, "book-4")), firstPage);
+        assertEquals(List.of(new BookSortKey(3L, "book-3"), new BookSortKey(2L, "book-2")), secondPage);
+
+        // One statement and only the rows of the page each
+        assertEquals(2, sqlStatementCounter.getStatements());
+        assertEquals(4, sqlStatementCounter.getRows());
+    }
+
+    @Test
+    @Sql(scripts = "/setup-test-books.sql",
+         config = @SqlConfig(transactionMode = SqlConfig.TransactionMode.ISOLATED)  // Forces separate transaction
+    )
+    void shouldReturnKeysAfterGivenOneWhenFindKeysByCategory() {
+
+        var keys = bookRepository.findKeysByCategory("category-2", BookSort.ID, false, new BookSortKey(2L, 2L), 10);
+        assertEquals(List.of(3L, 4L, 5L), keys.stream().map(BookSortKey::id).toList());
+
+        var keysByPublishedAt = bookRepository.findKeysByCategory("category-2", BookSort.PUBLISHED_AT, false,
+                new BookSortKey(4L, LocalDate.of(2010, 8, 24)), 10);
+        assertEquals(List.of(new BookSortKey(5L, LocalDate.of(2010, 8, 25))), keysByPublishedAt);
+
+        assertTrue(bookRepository.findKeysByCategory("category-missing", BookSort.ID, false, null, 10).isEmpty());
+    }
+
+    @Test
+    @Sql(scripts = "/setup-test-books.sql",
+         config = @SqlConfig(transactionMode = SqlConfig.TransactionMode.ISOLATED)  // Forces separate transaction
+    )
+    void shouldReturnKeysOfBooksMatchingAllFiltersWhenFindKeys() {
+
+        var filter = Specification.allOf(
+                BookSpecifications.publishedBetween(LocalDate.of(2010, 8, 22), LocalDate.of(2010, 8, 24)),
+                BookSpecifications.totalPagesBetween(300, null),
+                BookSpecifications.addedBetween(null, LocalDateTime.of(2024, 12, 2, 13, 57, 27)),
+                BookSpecifications.hasAuthor("author-1"),
+                BookSpecifications.hasCategory("category-3"));
+
+        var keys = bookRepository.findKeys(filter, BookSort.TOTAL_PAGES, true, null, 10);
+        assertEquals(List.of(new BookSortKey(4L, 400), new BookSortKey(3L, 300)), keys);
+
+        var keysAfter = bookRepository.findKeys(filter, BookSort.TOTAL_PAGES, true, new BookSortKey(4L, 400), 10);
+        assertEquals(List.of(new BookSortKey(3L, 300)), keysAfter);
+
+        // Without filters all the books match, the equal keys are ordered by id
+        var keysByAddedAt = bookRepository.findKeys(null, BookSort.ADDED_AT, false, null, 3);
+        assertEquals(List.of(1L, 2L, 3L), keysByAddedAt.stream().map(BookSortKey::id).toList());
+
+        assertTrue(bookRepository.findKeys(BookSpecifications.totalPagesBetween(501, null), BookSort.ID, false, null, 10).isEmpty());
+    }
+
+    @Test
+    @Sql(scripts = "/setup-test-books.sql",
+         config = @SqlConfig(transactionMode = SqlConfig.TransactionMode.ISOLATED)  // Forces separate transaction
+    )
+    void shouldReadAllBooksWithAssociationsByOneStatementWhenForEachWithAssociations() {
+
+        sqlStatementCounter.reset();
+
+        var books = new ArrayList<Book>();
+        bookRepository.forEachWithAssociations(books::add);
+
+        assertEquals(1, sqlStatementCounter.getStatements());
+
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L), books.stream().map(Book::getId).toList());
+
+        var book = books.getFirst();
+        assertEquals("book-1", book.getTitle());
+        assertEquals(LocalDate.of(2010, 8, 21), book.getPublishedAt());
+        assertEquals(100, book.getTotalPages());
+        assertEquals(LocalDateTime.of(2024, 12, 2, 13, 57, 27), book.getAddedAt());
+
+        // Names keep their order, ids come with them
+        assertEquals(List.of(new Author(1L, "author-1", new HashSet<>()), new Author(2L, "author-2", new HashSet<>()),
+                        new Author(3L, "author-3", new HashSet<>())),
+                List.copyOf(book.getAuthors()));
+        assertEquals(List.of(1L, 2L, 3L), book.getAuthors().stream().map(Author::getId).toList());
+        assertEquals(List.of(1, 2, 3), book.getCategories().stream().map(Category::getId).toList());
+    }
+
+    private Set<String> authorsNamesOfBook(Long bookId) {
+        return transactionTemplate().execute(status -> testEntityManager.find(Book.class, bookId)
+                .getAuthors()
+                .stream()
+                .map(Author::getName)
+                .collect(Collectors.toSet()));
+    }
+
+    private TransactionTemplate transactionTemplate() {
+        return new TransactionTemplate(transactionManager);
+    }
+}
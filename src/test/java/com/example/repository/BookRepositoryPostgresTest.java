@@ -0,0 +1,393 @@
+package com.example.repository;
+
+import com.example.cache.AuthorNameDictionary;
+import com.example.cache.CategoryNameDictionary;
+import com.example.model.Author;
+import com.example.model.Book;
+import com.example.model.BookViewName;
+import com.example.model.Category;
+import com.example.sql.SqlStatementCounter;
+import com.example.sql.SqlStatementCounterConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jdbc.JdbcConnectionDetails;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Migrations and the PostgreSQL specific statements (upsert of names, full-text search, export, join table keys, jsonb view),
+ * which the H2 based tests don't run. Skipped without Docker.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@TestPropertySource(properties = {
+        "spring.flyway.enabled=true",
+        "spring.jpa.hibernate.ddl-auto=validate"
+})
+@Import({ SqlStatementCounterConfig.class, AuthorNameDictionary.class, CategoryNameDictionary.class, SimpleMeterRegistry.class })
+@Testcontainers(disabledWithoutDocker = true)
+class BookRepositoryPostgresTest {
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private BookViewRepository bookViewRepository;
+
+    @Autowired
+    private AuthorRepository authorRepository;
+
+    @Autowired
+    private TestEntityManager testEntityManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private JdbcConnectionDetails jdbcConnectionDetails;
+
+    @Autowired
+    private SqlStatementCounter sqlStatementCounter;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void shouldMigrateExistingBooks() {
+
+        // A database of the first version, with a duplicate join row
+        var dataSource = createDatabase("books_before_migrations");
+        var legacyJdbcTemplate = new JdbcTemplate(dataSource);
+
+        Flyway.configure().dataSource(dataSource).target("2").load().migrate();
+
+        legacyJdbcTemplate.execute("""
+                INSERT INTO authors (id, name) VALUES (1, 'Zadie Smith'), (2, 'Alan Moore');
+                INSERT INTO categories (id, name) VALUES (1, 'novel');
+                INSERT INTO books (id, title, published_at, total_pages, added_at)
+                VALUES (1, 'White Teeth', '2000-01-27', 448, '2024-12-02 13:57:27');
+                INSERT INTO books_authors (book_id, author_id) VALUES (1, 1), (1, 2), (1, 1);
+                INSERT INTO books_categories (book_id, category_id) VALUES (1, 1), (1, 1);
+                """);
+
+        Flyway.configure().dataSource(dataSource).load().migrate();
+
+        // Duplicates are removed, the primary keys reject new ones
+        assertEquals(2, legacyJdbcTemplate.queryForObject("SELECT count(*) FROM books_authors", Integer.class));
+        assertEquals(1, legacyJdbcTemplate.queryForObject("SELECT count(*) FROM books_categories", Integer.class));
+        assertThrows(DataIntegrityViolationException.class,
+                () -> legacyJdbcTemplate.update("INSERT INTO books_authors (book_id, author_id) VALUES (1, 1)"));
+
+        // Sequences continue after the existing ids
+        assertTrue(legacyJdbcTemplate.queryForObject("SELECT nextval('authors_seq')", Long.class) > 2);
+
+        // The search vector and the view of the existing book are filled
+        assertEquals(List.of(1L), legacyJdbcTemplate.queryForList("""
+                SELECT id FROM books WHERE search_vector @@ websearch_to_tsquery('simple', 'moore novel')""", Long.class));
+        assertEquals(Boolean.TRUE, legacyJdbcTemplate.queryForObject("""
+                SELECT authors = CAST(? AS jsonb) AND categories = CAST(? AS jsonb) FROM book_view WHERE id = 1""",
+                Boolean.class,
+                "[{\"id\": 2, \"name\": \"Alan Moore\"}, {\"id\": 1, \"name\": \"Zadie Smith\"}]",
+                "[{\"id\": 1, \"name\": \"novel\"}]"));
+    }
+
+    @Test
+    void shouldRankTitleOverAuthorOverCategoryWhenSearch() {
+
+        var bookByTitle = bookRepository.saveCascading(newBook("Winter in the Fjord", List.of("Ola Berg"), List.of("travel")));
+        var bookByAuthor = bookRepository.saveCascading(newBook("Northern Lights", List.of("Ida Fjord"), List.of("travel")));
+        var bookByCategory = bookRepository.saveCascading(newBook("Salt and Ice", List.of("Ola Berg"), List.of("fjord")));
+
+        var results = bookRepository.search("fjord", null, 10);
+
+        assertEquals(List.of(bookByTitle.getId(), bookByAuthor.getId(), bookByCategory.getId()),
+                results.stream().map(BookSearchResult::id).toList());
+
+        // Pages by keyset continue after the last result
+        var secondPage = bookRepository.search("fjord", results.getFirst(), 1);
+        assertEquals(List.of(bookByAuthor.getId()), secondPage.stream().map(BookSearchResult::id).toList());
+
+        // Vectors follow the join rows, refreshed by the triggers
+        assertEquals(JoinRowChange.CHANGED, bookRepository.removeAuthor(bookByAuthor.getId(), "Ida Fjord", null));
+        assertEquals(JoinRowChange.CHANGED, bookRepository.addAuthor(bookByCategory.getId(), "Ida Fjord", null));
+
+        results = bookRepository.search("ida fjord", null, 10);
+
+        assertEquals(List.of(bookByCategory.getId()), results.stream().map(BookSearchResult::id).toList());
+    }
+
+    @Test
+    void shouldAddJoinRowOnceWhenAddAuthorTwice() {
+
+        var book = bookRepository.saveCascading(newBook("Dune", List.of("Frank Herbert"), List.of("science fiction")));
+
+        assertEquals(JoinRowChange.CHANGED, bookRepository.addAuthor(book.getId(), "Brian Herbert", null));
+        assertEquals(JoinRowChange.UNCHANGED, bookRepository.addAuthor(book.getId(), "Brian Herbert", null));
+
+        assertEquals(2, jdbcTemplate.queryForObject("SELECT count(*) FROM books_authors WHERE book_id = ?",
+                Integer.class, book.getId()));
+        assertEquals(1L, bookRepository.findVersionById(book.getId()).orElseThrow().version());
+
+        var authorId = authorRepository.findAllByNameIn(List.of("Brian Herbert")).getFirst().getId();
+        assertThrows(DataIntegrityViolationException.class,
+                () -> jdbcTemplate.update("INSERT INTO books_authors (book_id, author_id) VALUES (?, ?)", book.getId(), authorId));
+    }
+
+    @Test
+    void shouldKeepJsonbViewInSyncWhenAddAndRemoveNames() {
+
+        var book = bookRepository.saveCascading(newBook("Solaris", List.of("Stanislaw Lem"), List.of("science fiction", "classic")));
+
+        assertEquals(JoinRowChange.CHANGED, bookRepository.addAuthor(book.getId(), "Bill Johnston", 0L));
+        assertEquals(JoinRowChange.CHANGED, bookRepository.removeCategory(book.getId(), "classic", 1L));
+
+        testEntityManager.flush();
+        testEntityManager.clear();
+
+        var view = bookViewRepository.findById(book.getId()).orElseThrow();
+
+        assertEquals(2L, view.getVersion());
+        assertEquals(List.of("Bill Johnston", "Stanislaw Lem"), view.getAuthors().stream().map(BookViewName::name).toList());
+        assertEquals(List.of("science fiction"), view.getCategories().stream().map(BookViewName::name).toList());
+        assertEquals("array", jdbcTemplate.queryForObject("SELECT jsonb_typeof(authors) FROM book_view WHERE id = ?",
+                String.class, book.getId()));
+    }
+
+    @Test
+    void shouldExportNamesWithIdsInOrderWhenForEachWithAssociations() {
+
+        var book = bookRepository.saveCascading(newBook("Collected Stories", List.of("Poe: Edgar Allan", "Borges"), List.of("short stories")));
+        testEntityManager.clear();
+
+        var books = new ArrayList<Book>();
+        bookRepository.forEachWithAssociations(books::add);
+
+        var bookExported = books.stream()
+                .filter(bookRead -> bookRead.getId().equals(book.getId()))
+                .findFirst()
+                .orElseThrow();
+
+        assertEquals("Collected Stories", bookExported.getTitle());
+        assertEquals(0L, bookExported.getVersion());
+
+        // A name may contain the separator
+        assertEquals(List.of("Borges", "Poe: Edgar Allan"), bookExported.getAuthors().stream().map(Author::getName).toList());
+        assertEquals(authorRepository.findAllByNameIn(List.of("Borges")).getFirst().getId(),
+                bookExported.getAuthors().iterator().next().getId());
+        assertEquals(List.of("short stories"), bookExported.getCategories().stream().map(Category::getName).toList());
+    }
+
+    @Test
+    void shouldResolveNamesByAtMostTwoStatementsWhenSaveCascading() {
+
+        var authorsNamesExisting = List.of("Terry Pratchett", "Neil Gaiman", "Stephen Baxter");
+        var authorsNamesNew = IntStream.rangeClosed(1, 20).mapToObj(i -> "Co-author " + i).toList();
+
+        // All new
+        sqlStatementCounter.reset();
+        bookRepository.saveCascading(newBook("The Long Earth", authorsNamesExisting, List.of()));
+
+        assertEquals(1, statementsOf("authors").size());
+
+        // Existing and new ones, the existing ones are not known by the dictionary until the commit
+        sqlStatementCounter.reset();
+        var authorsNames = new ArrayList<>(authorsNamesExisting);
+        authorsNames.addAll(authorsNamesNew);
+        var book = bookRepository.saveCascading(newBook("Good Omens", authorsNames, List.of()));
+
+        var statements = statementsOf("authors");
+        assertEquals(2, statements.size());
+        assertTrue(statements.getFirst().contains("ON CONFLICT (name) DO NOTHING"));
+        assertEquals(23, book.getAuthors().stream().map(Author::getId).distinct().count());
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)  // Transactions of their own, committed in the order set below
+    void shouldResolveSameNewNameToOneAuthorWhenUpsertedByConcurrentTransactions() throws Exception {
+
+        var authorName = "Ursula K. Le Guin " + UUID.randomUUID();
+        var bookId = transactionTemplate().execute(status ->
+                bookRepository.saveCascading(newBook("The Dispossessed", List.of("Anonymous"), List.of())).getId());
+        var anotherBookId = transactionTemplate().execute(status ->
+                bookRepository.saveCascading(newBook("The Lathe of Heaven", List.of("Anonymous"), List.of())).getId());
+
+        var upserted = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+
+            // Inserts the name and holds the transaction open
+            var added = executor.submit(() -> transactionTemplate().execute(status -> {
+                var result = bookRepository.addAuthor(bookId, authorName, null);
+                testEntityManager.flush();
+                upserted.countDown();
+                await(release);
+                return result;
+            }));
+            await(upserted);
+
+            sqlStatementCounter.reset();
+
+            // Waits for the first transaction on the unique index entry of the name
+            var addedConcurrently = executor.submit(() -> transactionTemplate().execute(status ->
+                    bookRepository.addAuthor(anotherBookId, authorName, null)));
+            awaitLockWaiting();
+
+            release.countDown();
+
+            assertEquals(JoinRowChange.CHANGED, added.get(10, TimeUnit.SECONDS));
+            assertEquals(JoinRowChange.CHANGED, addedConcurrently.get(10, TimeUnit.SECONDS));
+        }
+
+        // The conflicting insert returned nothing, the name was selected after it
+        assertEquals(2, statementsOf("authors").size());
+
+        var authorsIds = jdbcTemplate.queryForList("SELECT id FROM authors WHERE name = ?", Long.class, authorName);
+        assertEquals(1, authorsIds.size());
+        assertEquals(List.of(bookId, anotherBookId), jdbcTemplate.queryForList(
+                "SELECT book_id FROM books_authors WHERE author_id = ? ORDER BY book_id", Long.class, authorsIds.getFirst()));
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)  // Transactions of their own, committed in the order set below
+    void shouldKeepVersionOfViewWhenSameAuthorAddedAndRemovedByConcurrentTransactions() throws Exception {
+
+        var bookId = transactionTemplate().execute(status ->
+                bookRepository.saveCascading(newBook("Roadside Picnic " + UUID.randomUUID(), List.of("Arkady Strugatsky"), List.of()))
+                        .getId());
+
+        // The second transaction waits for the join row of the first one and changes nothing then
+        assertEquals(List.of(JoinRowChange.CHANGED, JoinRowChange.UNCHANGED),
+                concurrently(() -> bookRepository.addAuthor(bookId, "Boris Strugatsky", null)));
+        assertEquals(List.of(JoinRowChange.CHANGED, JoinRowChange.UNCHANGED),
+                concurrently(() -> bookRepository.removeAuthor(bookId, "Boris Strugatsky", null)));
+
+        assertEquals(List.of(2L, 2L), jdbcTemplate.queryForList("""
+                SELECT version FROM books WHERE id = ?
+                UNION ALL
+                SELECT version FROM book_view WHERE id = ?""", Long.class, bookId, bookId));
+    }
+
+    private static Book newBook(String title, List<String> authorsNames, List<String> categoriesNames) {
+
+        var book = new Book();
+        book.setNew(true);
+        book.setTitle(title);
+        book.setPublishedAt(LocalDate.of(2001, 2, 3));
+        book.setTotalPages(300);
+        book.setAddedAt(LocalDateTime.of(2024, 12, 2, 13, 57, 27));
+        book.setAuthors(authorsNames.stream()
+                .map(name -> new Author(null, name, new HashSet<>()))
+                .collect(Collectors.toSet()));
+        book.setCategories(categoriesNames.stream()
+                .map(name -> new Category(null, name, new HashSet<>()))
+                .collect(Collectors.toSet()));
+        return book;
+    }
+
+    // Statements reading or writing the table itself, not the join table or a column of the same name
+    private List<String> statementsOf(String table) {
+        var pattern = Pattern.compile("\\b(from|into)\\s+" + table + "\\b", Pattern.CASE_INSENSITIVE);
+        return sqlStatementCounter.getStatementsSql()
+                .stream()
+                .filter(sql -> pattern.matcher(sql).find())
+                .toList();
+    }
+
+    // Runs the change in two transactions, the second one starts while the first one is still open
+    private List<JoinRowChange> concurrently(Supplier<JoinRowChange> change) throws Exception {
+
+        var changed = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+
+            var first = executor.submit(() -> transactionTemplate().execute(status -> {
+                var result = change.get();
+                changed.countDown();
+                await(release);
+                return result;
+            }));
+            await(changed);
+
+            var second = executor.submit(() -> transactionTemplate().execute(status -> change.get()));
+            awaitLockWaiting();
+
+            release.countDown();
+
+            return List.of(first.get(10, TimeUnit.SECONDS), second.get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    private void awaitLockWaiting() throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            var waiting = jdbcTemplate.queryForObject("SELECT count(*) FROM pg_stat_activity WHERE wait_event_type = 'Lock'",
+                    Integer.class);
+            if (waiting > 0) {
+                return;
+            }
+            Thread.sleep(100);
+        }
+        fail("No transaction is waiting for a lock");
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private TransactionTemplate transactionTemplate() {
+        return new TransactionTemplate(transactionManager);
+    }
+
+    // A database of its own, so the migrations run from the start there
+    private DriverManagerDataSource createDatabase(String name) {
+
+        var adminJdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(
+                jdbcConnectionDetails.getJdbcUrl(), jdbcConnectionDetails.getUsername(), jdbcConnectionDetails.getPassword()));
+        adminJdbcTemplate.execute("DROP DATABASE IF EXISTS " + name);
+        adminJdbcTemplate.execute("CREATE DATABASE " + name);
+
+        var url = jdbcConnectionDetails.getJdbcUrl().replaceFirst("/[^/?]*(\\?|$)", "/" + name + "$1");
+        return new DriverManagerDataSource(url, jdbcConnectionDetails.getUsername(), jdbcConnectionDetails.getPassword());
+    }
+}
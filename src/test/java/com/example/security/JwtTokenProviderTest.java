@@ -0,0 +1,98 @@
+package com.example.security;
+
+import com.example.model.Role;
+import com.example.model.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class JwtTokenProviderTest {
+
+    private final UserDetailsService userDetailsService = mock(UserDetailsService.class);
+
+    private JwtTokenProvider jwtTokenProvider;
+
+    private final User testUser = new User(1, "test-user", "test-password", Role.ADMIN);
+
+    @BeforeEach
+    void setUp() {
+        jwtTokenProvider = createJwtTokenProvider(true, 1);
+    }
+
+    @Test
+    void shouldBuildAuthenticationFromClaimsWithoutUserLookupWhenGetAuthentication() {
+
+        var token = jwtTokenProvider.createToken(testUser.getUsername(), testUser.getAuthorities());
+
+        var authentication = jwtTokenProvider.getAuthentication(jwtTokenProvider.parseToken(token));
+
+        assertEquals(testUser.getUsername(), ((UserDetails) authentication.getPrincipal()).getUsername());
+        assertEquals(
+                testUser.getAuthorities().stream().map(GrantedAuthority::getAuthority).toList(),
+                authentication.getAuthorities().stream().map(GrantedAuthority::getAuthority).toList());
+
+        verify(userDetailsService, never()).loadUserByUsername(any());
+    }
+
+    @Test
+    void shouldLoadUserWhenGetAuthenticationOfTokenWithOlderVersion() {
+
+        var token = createJwtTokenProvider(true, 0).createToken(testUser.getUsername(), testUser.getAuthorities());
+
+        when(userDetailsService.loadUserByUsername(testUser.getUsername())).thenReturn(testUser);
+
+        var authentication = jwtTokenProvider.getAuthentication(jwtTokenProvider.parseToken(token));
+
+        assertSame(testUser, authentication.getPrincipal());
+        verify(userDetailsService, times(1)).loadUserByUsername(testUser.getUsername());
+    }
+
+    @Test
+    void shouldLoadUserWhenGetAuthenticationInStatefulMode() {
+
+        var statefulJwtTokenProvider = createJwtTokenProvider(false, 1);
+        var token = statefulJwtTokenProvider.createToken(testUser.getUsername(), testUser.getAuthorities());
+
+        when(userDetailsService.loadUserByUsername(testUser.getUsername())).thenReturn(testUser);
+
+        var authentication = statefulJwtTokenProvider.getAuthentication(statefulJwtTokenProvider.parseToken(token));
+
+        assertSame(testUser, authentication.getPrincipal());
+        verify(userDetailsService, times(1)).loadUserByUsername(testUser.getUsername());
+    }
+
+    @Test
+    void shouldReturnSameClaimsWhenParseTokenTwice() {
+
+        var token = jwtTokenProvider.createToken(testUser.getUsername(), testUser.getAuthorities());
+
+        var claims = jwtTokenProvider.parseToken(token);
+        var claimsAgain = jwtTokenProvider.parseToken(token);
+
+        assertSame(claims, claimsAgain);
+    }
+
+    @Test
+    void shouldThrowExceptionWhenParseTamperedToken() {
+        var token = jwtTokenProvider.createToken(testUser.getUsername(), testUser.getAuthorities());
+        assertThrows(RuntimeException.class, () -> jwtTokenProvider.parseToken(token + "1"));
+    }
+
+    private JwtTokenProvider createJwtTokenProvider(boolean stateless, int tokenVersion) {
+        var provider = new JwtTokenProvider(userDetailsService);
+        ReflectionTestUtils.setField(provider, "requestHeader", "authorization");
+        ReflectionTestUtils.setField(provider, "secretKey", "testKey-testKey-testKey");
+        ReflectionTestUtils.setField(provider, "validityInSeconds", 3600L);
+        ReflectionTestUtils.setField(provider, "stateless", stateless);
+        ReflectionTestUtils.setField(provider, "tokenVersion", tokenVersion);
+        ReflectionTestUtils.setField(provider, "verifiedTokensCacheSize", 100L);
+        ReflectionTestUtils.invokeMethod(provider, "init");
+        return provider;
+    }
+}
@@ -1,26 +1,33 @@
 package com.example.service;
 
+import com.example.api.pagination.PageCursor;
 import com.example.api.request.AuthorRequestDTO;
+import com.example.api.request.InvalidRequestException;
 import com.example.api.response.BookResponseDTO;
 import com.example.model.Author;
 import com.example.model.Book;
-import com.example.repository.AuthorRepository;
+import com.example.model.BookView;
 import com.example.repository.BookRepository;
+import com.example.repository.BookSort;
+import com.example.repository.BookSortKey;
+import com.example.repository.BookVersion;
+import com.example.repository.BookViewRepository;
+import com.example.repository.JoinRowChange;
 import jakarta.persistence.EntityNotFoundException;
 import org.jeasy.random.EasyRandom;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 
-import java.util.ArrayList;
-import java.util.HashSet;
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
-import java.util.Set;
 import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
-import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
 @SpringBootTest
@@ -29,147 +36,186 @@ class AuthorServiceTest {
     @Autowired
     private AuthorService authorService;
 
-    @MockitoBean
-    private AuthorRepository authorRepository;
     @MockitoBean
     private BookRepository bookRepository;
 
+    @MockitoBean
+    private BookViewRepository bookViewRepository;
+
     private final EasyRandom easyRandom = new EasyRandom();
 
     @Test
-    void shouldReturnCollectionOfBooksResponseDTOWhenGetBooksByAuthorName() {
-
-        var author = easyRandom.nextObject(Author.class);
+    void shouldReturnPageOfBooksResponseDTOInOrderOfKeysWhenGetBooksByAuthorName() {
 
-        var books = easyRandom.objects(Book.class, 3).collect(Collectors.toSet());
-        for (var book : books) {
-            book.setAuthors(easyRandom.objects(Author.class, 3).collect(Collectors.toSet()));
-            book.addAuthor(author);
-        }
-
-        author.setBooks(books);
+        var authorName = "test-author";
 
-        when(authorRepository.findByName(author.getName())).thenReturn(Optional.of(author));
+        var books = easyRandom.objects(Book.class, 3).toList();
+        var keys = books.reversed()
+                .stream()
+                .map(book -> new BookSortKey(book.getId(), book.getTitle()))
+                .toList();
 
-        var booksExpected = BookResponseDTO.fromBooks(books);
+        when(bookRepository.findKeysByAuthor(authorName, BookSort.TITLE, true, null, 51)).thenReturn(keys);
+        when(bookViewRepository.findAllById(anyList())).thenReturn(views(books));
 
-        var booksReceived = authorService.getBooksByAuthorName(author.getName());
-        assertNotNull(booksReceived);
-        assertEquals(booksExpected.size(), booksReceived.size());
-        assertEquals(booksExpected, new ArrayList<>(booksReceived));
+        var page = authorService.getBooksByAuthorName(authorName, "title,desc", null, null);
+        assertNotNull(page);
+        assertEquals(BookResponseDTO.fromBooks(books.reversed()), page.getContent());
+        assertNull(page.getNext());
 
-        verify(authorRepository, times(1)).findByName(author.getName());
+        verify(bookRepository, times(1)).findKeysByAuthor(authorName, BookSort.TITLE, true, null, 51);
+        verify(bookViewRepository, times(1)).findAllById(keys.stream().map(BookSortKey::id).toList());
     }
 
     @Test
-    void shouldReturnEmptyCollectionWhenGetBooksByAuthorName() {
+    void shouldReturnPageWithNextCursorWhenGetBooksByAuthorName() {
 
         var authorName = "test-author";
 
-        when(authorRepository.findByName(anyString())).thenReturn(Optional.empty());
+        var books = easyRandom.objects(Book.class, 3).toList();
+        var keys = books.stream()
+                .map(book -> new BookSortKey(book.getId(), book.getPublishedAt()))
+                .toList();
+
+        when(bookRepository.findKeysByAuthor(authorName, BookSort.PUBLISHED_AT, false, null, 3)).thenReturn(keys);
+        when(bookViewRepository.findAllById(anyList())).thenReturn(views(books.subList(0, 2)));
+
+        var page = authorService.getBooksByAuthorName(authorName, "publishedAt", null, 2);
+        assertEquals(2, page.getContent().size());
+        assertNotNull(page.getNext());
 
-        var booksReceived = authorService.getBooksByAuthorName(authorName);
-        assertNotNull(booksReceived);
-        assertTrue(booksReceived.isEmpty());
+        // The next page starts after the last key of this one
+        var lastKey = keys.get(1);
+        when(bookRepository.findKeysByAuthor(authorName, BookSort.PUBLISHED_AT, false, lastKey, 3)).thenReturn(keys.subList(2, 3));
+        when(bookViewRepository.findAllById(List.of(books.get(2).getId()))).thenReturn(views(books.subList(2, 3)));
 
-        verify(authorRepository, times(1)).findByName(authorName);
+        var nextPage = authorService.getBooksByAuthorName(authorName, "publishedAt", page.getNext(), 2);
+        assertEquals(1, nextPage.getContent().size());
+        assertNull(nextPage.getNext());
+
+        verify(bookRepository, times(1)).findKeysByAuthor(authorName, BookSort.PUBLISHED_AT, false, lastKey, 3);
     }
 
     @Test
-    void shouldAddNewAuthorWhenAddAuthorToBook() {
-
-        var book = easyRandom.nextObject(Book.class);
-        var author = easyRandom.nextObject(Author.class);
+    void shouldReturnEmptyPageWhenGetBooksByAuthorName() {
 
-        when(bookRepository.findById(book.getId())).thenReturn(Optional.of(book));
+        var authorName = "test-author";
 
-        var authorDTO = AuthorRequestDTO.fromAuthor(author);
+        when(bookRepository.findKeysByAuthor(anyString(), any(), anyBoolean(), any(), anyInt())).thenReturn(List.of());
 
-        assertFalse(book.getAuthors().contains(author));
-        authorService.addAuthorToBook(book.getId(), authorDTO);
-        assertTrue(book.getAuthors().contains(author));
+        var page = authorService.getBooksByAuthorName(authorName, null, null, null);
+        assertNotNull(page);
+        assertTrue(page.getContent().isEmpty());
+        assertNull(page.getNext());
 
-        verify(bookRepository, times(1)).findById(book.getId());
-        verify(bookRepository, times(1)).saveCascading(book);
+        verify(bookRepository, times(1)).findKeysByAuthor(authorName, BookSort.ID, false, null, 51);
+        verify(bookViewRepository, never()).findAllById(any());
     }
 
     @Test
-    void shouldNotAddNewAuthorWhenAddAuthorToBook() {
+    void shouldThrowInvalidRequestExceptionWhenGetBooksByAuthorNameWithUnknownSortOrCursorOfAnotherSort() {
 
-        var author = easyRandom.nextObject(Author.class);
+        var authorName = "test-author";
+        var cursorOfTitleSort = PageCursor.of("title,asc", "Some title", 5L).encode();
 
-        var book = easyRandom.nextObject(Book.class);
-        book.setAuthors(new HashSet<>(Set.of(author)));
+        assertThrows(InvalidRequestException.class, () -> authorService.getBooksByAuthorName(authorName, "pages", null, null));
+        assertThrows(InvalidRequestException.class, () -> authorService.getBooksByAuthorName(authorName, "title,up", null, null));
+        assertThrows(InvalidRequestException.class, () -> authorService.getBooksByAuthorName(authorName, "publishedAt", cursorOfTitleSort, null));
 
-        when(bookRepository.findById(book.getId())).thenReturn(Optional.of(book));
+        verify(bookRepository, never()).findKeysByAuthor(any(), any(), anyBoolean(), any(), anyInt());
+    }
 
-        var authorDTO = AuthorRequestDTO.fromAuthor(author);
+    @Test
+    void shouldAddNewAuthorWhenAddAuthorToBook() {
 
-        authorService.addAuthorToBook(book.getId(), authorDTO);
+        var bookId = 97L;
+        var authorDTO = easyRandom.nextObject(AuthorRequestDTO.class);
 
-        verify(bookRepository, times(1)).findById(book.getId());
-        verify(bookRepository, never()).saveCascading(any());
+        when(bookRepository.addAuthor(bookId, authorDTO.getName(), null)).thenReturn(JoinRowChange.CHANGED);
+
+        authorService.addAuthorToBook(bookId, authorDTO, null);
+
+        verify(bookRepository, times(1)).addAuthor(bookId, authorDTO.getName(), null);
+        verify(bookRepository, never()).findVersionById(any());
+        verify(bookRepository, never()).findWithAssociationsById(any());
         verify(bookRepository, never()).saveCascading(any());
     }
 
     @Test
-    void shouldThrowEntityNotFoundExceptionWhenAddAuthorToBook() {
+    void shouldNotAddNewAuthorWhenAddAuthorToBook() {
 
-        var bookId = 99L;
+        var bookId = 97L;
         var authorDTO = easyRandom.nextObject(AuthorRequestDTO.class);
 
-        when(bookRepository.findById(anyLong())).thenReturn(Optional.empty());
+        when(bookRepository.addAuthor(bookId, authorDTO.getName(), null)).thenReturn(JoinRowChange.UNCHANGED);
 
-        assertThrows(EntityNotFoundException.class, () -> authorService.addAuthorToBook(bookId, authorDTO));
+        authorService.addAuthorToBook(bookId, authorDTO, null);
 
-        verify(bookRepository, times(1)).findById(bookId);
-        verify(bookRepository, never()).saveCascading(any());
+        verify(bookRepository, times(1)).addAuthor(bookId, authorDTO.getName(), null);
+        verify(bookRepository, never()).findVersionById(any());
         verify(bookRepository, never()).saveCascading(any());
     }
 
     @Test
-    void shouldReturnTrueWhenRemoveAuthorFromBook() {
+    void shouldThrowOptimisticLockingFailureExceptionWhenAddAuthorToBookWithOutdatedVersion() {
 
-        var author = easyRandom.nextObject(Author.class);
+        var bookId = 97L;
+        var authorDTO = easyRandom.nextObject(AuthorRequestDTO.class);
 
-        var book = easyRandom.nextObject(Book.class);
-        book.setAuthors(new HashSet<>(Set.of(author)));
+        when(bookRepository.addAuthor(bookId, authorDTO.getName(), 4L)).thenReturn(JoinRowChange.BOOK_NOT_MATCHED);
+        when(bookRepository.findVersionById(bookId)).thenReturn(Optional.of(new BookVersion(bookId, 5L, LocalDateTime.now())));
 
-        when(bookRepository.findById(book.getId())).thenReturn(Optional.of(book));
+        assertThrows(OptimisticLockingFailureException.class, () -> authorService.addAuthorToBook(bookId, authorDTO, 4L));
 
-        var authorDTO = AuthorRequestDTO.fromAuthor(author);
+        verify(bookRepository, times(1)).addAuthor(bookId, authorDTO.getName(), 4L);
+        verify(bookRepository, times(1)).findVersionById(bookId);
+    }
 
-        assertTrue(book.getAuthors().contains(author));
+    @Test
+    void shouldThrowEntityNotFoundExceptionWhenAddAuthorToBook() {
 
-        var result = authorService.removeAuthorFromBook(book.getId(), authorDTO);
-        assertTrue(result);
+        var bookId = 99L;
+        var authorDTO = easyRandom.nextObject(AuthorRequestDTO.class);
 
-        assertFalse(book.getAuthors().contains(author));
+        when(bookRepository.addAuthor(bookId, authorDTO.getName(), null)).thenReturn(JoinRowChange.BOOK_NOT_MATCHED);
+        when(bookRepository.findVersionById(bookId)).thenReturn(Optional.empty());
 
-        verify(bookRepository, times(1)).findById(book.getId());
-        verify(bookRepository, times(1)).saveCascading(book);
+        assertThrows(EntityNotFoundException.class, () -> authorService.addAuthorToBook(bookId, authorDTO, null));
+
+        verify(bookRepository, times(1)).addAuthor(bookId, authorDTO.getName(), null);
+        verify(bookRepository, times(1)).findVersionById(bookId);
     }
 
     @Test
-    void shouldReturnFalseWhenRemoveAuthorFromBook() {
+    void shouldReturnTrueWhenRemoveAuthorFromBook() {
 
-        var author = easyRandom.nextObject(Author.class);
+        var bookId = 97L;
+        var authorDTO = easyRandom.nextObject(AuthorRequestDTO.class);
 
-        var book = easyRandom.nextObject(Book.class);
+        when(bookRepository.removeAuthor(bookId, authorDTO.getName(), null)).thenReturn(JoinRowChange.CHANGED);
 
-        when(bookRepository.findById(book.getId())).thenReturn(Optional.of(book));
+        var result = authorService.removeAuthorFromBook(bookId, authorDTO, null);
+        assertTrue(result);
 
-        var authorDTO = AuthorRequestDTO.fromAuthor(author);
+        verify(bookRepository, times(1)).removeAuthor(bookId, authorDTO.getName(), null);
+        verify(bookRepository, never()).findVersionById(any());
+        verify(bookRepository, never()).findWithAssociationsById(any());
+        verify(bookRepository, never()).saveCascading(any());
+    }
 
-        assertFalse(book.getAuthors().contains(author));
+    @Test
+    void shouldReturnFalseWhenRemoveAuthorFromBook() {
 
-        var result = authorService.removeAuthorFromBook(book.getId(), authorDTO);
-        assertFalse(result);
+        var bookId = 97L;
+        var authorDTO = easyRandom.nextObject(AuthorRequestDTO.class);
 
-        assertFalse(book.getAuthors().contains(author));
+        when(bookRepository.removeAuthor(bookId, authorDTO.getName(), null)).thenReturn(JoinRowChange.UNCHANGED);
 
-        verify(bookRepository, times(1)).findById(book.getId());
-        verify(bookRepository, never()).saveCascading(any());
+        var result = authorService.removeAuthorFromBook(bookId, authorDTO, null);
+        assertFalse(result);
+
+        verify(bookRepository, times(1)).removeAuthor(bookId, authorDTO.getName(), null);
+        verify(bookRepository, never()).findVersionById(any());
     }
 
     @Test
@@ -178,13 +224,13 @@ class AuthorServiceTest {
         var bookId = 99L;
         var authorDTO = easyRandom.nextObject(AuthorRequestDTO.class);
 
-        when(bookRepository.findById(anyLong())).thenReturn(Optional.empty());
+        when(bookRepository.removeAuthor(bookId, authorDTO.getName(), null)).thenReturn(JoinRowChange.BOOK_NOT_MATCHED);
+        when(bookRepository.findVersionById(bookId)).thenReturn(Optional.empty());
 
-        assertThrows(EntityNotFoundException.class, () -> authorService.removeAuthorFromBook(bookId, authorDTO));
+        assertThrows(EntityNotFoundException.class, () -> authorService.removeAuthorFromBook(bookId, authorDTO, null));
 
-        verify(bookRepository, times(1)).findById(bookId);
-        verify(bookRepository, never()).saveCascading(any());
-        verify(bookRepository, never()).saveCascading(any());
+        verify(bookRepository, times(1)).removeAuthor(bookId, authorDTO.getName(), null);
+        verify(bookRepository, times(1)).findVersionById(bookId);
     }
 
     @Test
@@ -194,15 +240,15 @@ class AuthorServiceTest {
 
         var book = easyRandom.nextObject(Book.class);
 
-        when(bookRepository.findById(book.getId())).thenReturn(Optional.of(book));
+        when(bookRepository.findWithAssociationsById(book.getId())).thenReturn(Optional.of(book));
 
         var authorsDTO = AuthorRequestDTO.fromAuthors(authors);
 
         assertTrue(book.getAuthors().isEmpty());
-        authorService.updateAuthorsForBook(book.getId(), authorsDTO);
+        authorService.updateAuthorsForBook(book.getId(), authorsDTO, null);
         assertEquals(authors, book.getAuthors());
 
-        verify(bookRepository, times(1)).findById(book.getId());
+        verify(bookRepository, times(1)).findWithAssociationsById(book.getId());
         verify(bookRepository, times(1)).saveCascading(book);
     }
 
@@ -212,12 +258,18 @@ class AuthorServiceTest {
         var bookId = 99L;
         var authorsDTO = easyRandom.objects(AuthorRequestDTO.class, 4).toList();
 
-        when(bookRepository.findById(anyLong())).thenReturn(Optional.empty());
+        when(bookRepository.findWithAssociationsById(anyLong())).thenReturn(Optional.empty());
 
-        assertThrows(EntityNotFoundException.class, () -> authorService.updateAuthorsForBook(bookId, authorsDTO));
+        assertThrows(EntityNotFoundException.class, () -> authorService.updateAuthorsForBook(bookId, authorsDTO, null));
 
-        verify(bookRepository, times(1)).findById(bookId);
+        verify(bookRepository, times(1)).findWithAssociationsById(bookId);
         verify(bookRepository, never()).saveCascading(any());
         verify(bookRepository, never()).saveCascading(any());
     }
-}
\ No newline at end of file
+
+    private static List<BookView> views(List<Book> books) {
+        return books.stream()
+                .map(BookView::fromBook)
+                .toList();
+    }
+}
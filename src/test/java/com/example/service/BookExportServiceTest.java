@@ -0,0 +1,122 @@
+package com.example.service;
+
+import com.example.api.response.BookResponseDTO;
+import com.example.model.Author;
+import com.example.model.Book;
+import com.example.model.Category;
+import com.example.repository.BookRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest
+class BookExportServiceTest {
+
+    @Autowired
+    private BookExportService bookExportService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @MockitoBean
+    private BookRepository bookRepository;
+
+    private final List<Book> books = List.of(
+            newBook(1L, "Dune", Set.of("Frank Herbert"), Set.of("sci-fi")),
+            newBook(2L, "Good Omens, \"the nice\" one", new LinkedHashSet<>(List.of("Neil Gaiman", "Terry Pratchett")), Set.of()));
+
+    @Test
+    void shouldWriteBookPerLineWhenExportAsNDJSON() throws IOException {
+
+        mockBooks();
+
+        var outputStream = new ByteArrayOutputStream();
+        bookExportService.export(BookExportFormat.NDJSON, outputStream);
+
+        var lines = outputStream.toString(StandardCharsets.UTF_8).split("\n", -1);
+        assertEquals(3, lines.length);
+        assertEquals("", lines[2]);  // Every line ends with '\n'
+
+        for (int i = 0; i < books.size(); i++) {
+            var bookDTO = objectMapper.readValue(lines[i], BookResponseDTO.class);
+            assertEquals(BookResponseDTO.fromBook(books.get(i)), bookDTO);
+        }
+
+        verify(bookRepository, times(1)).forEachWithAssociations(any());
+    }
+
+    @Test
+    void shouldWriteHeaderAndQuotedValuesWhenExportAsCSV() throws IOException {
+
+        mockBooks();
+
+        var outputStream = new ByteArrayOutputStream();
+        bookExportService.export(BookExportFormat.CSV, outputStream);
+
+        var expected = """
+                id,title,publishedAt,totalPages,addedAt,version,updatedAt,authors,categories
+                1,Dune,1965-08-01,412,2024-12-02T13:57:27,3,2024-12-03T10:00:00,Frank Herbert,sci-fi
+                2,"Good Omens, ""the nice"" one",1965-08-01,412,2024-12-02T13:57:27,3,2024-12-03T10:00:00,Neil Gaiman; Terry Pratchett,
+                """;
+        assertEquals(expected, outputStream.toString(StandardCharsets.UTF_8));
+
+        verify(bookRepository, times(1)).forEachWithAssociations(any());
+    }
+
+    @Test
+    void shouldWriteOnlyHeaderWhenExportEmptyCatalogAsCSV() throws IOException {
+
+        var outputStream = new ByteArrayOutputStream();
+        bookExportService.export(BookExportFormat.CSV, outputStream);
+
+        assertEquals("id,title,publishedAt,totalPages,addedAt,version,updatedAt,authors,categories\n",
+                outputStream.toString(StandardCharsets.UTF_8));
+    }
+
+    private void mockBooks() {
+        doAnswer(invocation -> {
+            Consumer<Book> action = invocation.getArgument(0);
+            books.forEach(action);
+            return null;
+        }).when(bookRepository).forEachWithAssociations(any());
+    }
+
+    private static Book newBook(Long id, String title, Set<String> authors, Set<String> categories) {
+
+        var book = new Book();
+        book.setId(id);
+        book.setTitle(title);
+        book.setPublishedAt(LocalDate.of(1965, 8, 1));
+        book.setTotalPages(412);
+        book.setAddedAt(LocalDateTime.of(2024, 12, 2, 13, 57, 27));
+        book.setVersion(3L);
+        book.setUpdatedAt(LocalDateTime.of(2024, 12, 3, 10, 0));
+
+        var bookAuthors = new LinkedHashSet<Author>();
+        authors.forEach(name -> bookAuthors.add(new Author(id * 10, name, new HashSet<>())));
+        book.setAuthors(bookAuthors);
+
+        var bookCategories = new LinkedHashSet<Category>();
+        categories.forEach(name -> bookCategories.add(new Category(id.intValue(), name, new HashSet<>())));
+        book.setCategories(bookCategories);
+
+        return book;
+    }
+}
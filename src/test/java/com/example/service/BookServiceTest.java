@@ -1,20 +1,46 @@
 package com.example.service;
 
+import com.example.api.pagination.PageCursor;
+import com.example.api.request.BookPatchDTO;
+import com.example.api.request.BookQueryDTO;
 import com.example.api.request.BookRequestDTO;
+import com.example.api.request.InvalidRequestException;
 import com.example.api.response.BookResponseDTO;
+import com.example.cache.BookResponseCache;
 import com.example.model.Book;
+import com.example.model.BookView;
 import com.example.repository.BookRepository;
+import com.example.repository.BookSearchResult;
+import com.example.repository.BookSort;
+import com.example.repository.BookSortKey;
+import com.example.repository.BookVersion;
+import com.example.repository.BookViewRepository;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import jakarta.persistence.EntityNotFoundException;
 import org.jeasy.random.EasyRandom;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.ArgumentMatchers.notNull;
 import static org.mockito.Mockito.*;
 
 @SpringBootTest
@@ -25,21 +51,139 @@ class BookServiceTest {
 
     @MockitoBean
     private BookRepository bookRepository;
+
+    @MockitoBean
+    private BookViewRepository bookViewRepository;
+
+    @Autowired
+    private BookResponseCache bookResponseCache;
     
     private final EasyRandom easyRandom = new EasyRandom();
 
+    // The cache outlives a test, and EasyRandom generates the same books in each of them
+    @BeforeEach
+    void setUp() {
+        bookResponseCache.invalidateAll();
+    }
+
     @Test
-    void shouldReturnCollectionOfBooksResponseDTOWhenGetAllBooks() {
+    void shouldReturnPageOfBooksResponseDTOWhenGetAllBooks() {
 
         var books = easyRandom.objects(Book.class, 4).toList();
         var booksDTO = BookResponseDTO.fromBooks(books);
+        var ids = books.stream().map(Book::getId).toList();
+
+        when(bookRepository.findIdsAfter(eq(0L), any())).thenReturn(ids);
+        when(bookViewRepository.findAllById(ids)).thenReturn(views(books));
+
+        var pageReceived = bookService.getAll(null, 10);
+        assertEquals(booksDTO, pageReceived.getContent());
+        assertNull(pageReceived.getNext());
+
+        verify(bookRepository, times(1)).findIdsAfter(0L, PageRequest.ofSize(11));
+        verify(bookViewRepository, times(1)).findAllById(ids);
+    }
+
+    @Test
+    void shouldReturnPageWithNextCursorWhenGetAllBooks() {
+
+        var books = easyRandom.objects(Book.class, 3).toList();
+        var ids = List.of(5L, 8L, 13L);
+        for (int i = 0; i < ids.size(); i++) {
+            books.get(i).setId(ids.get(i));
+        }
+
+        when(bookRepository.findIdsAfter(eq(3L), any())).thenReturn(ids);
+        when(bookViewRepository.findAllById(ids.subList(0, 2))).thenReturn(views(books.subList(0, 2)));
+
+        var cursor = PageCursor.of(3L).encode();
+
+        var pageReceived = bookService.getAll(cursor, 2);
+        assertEquals(2, pageReceived.getContent().size());
+        assertEquals(PageCursor.of(8L).encode(), pageReceived.getNext());
+
+        verify(bookRepository, times(1)).findIdsAfter(3L, PageRequest.ofSize(3));
+    }
+
+    @Test
+    void shouldThrowInvalidRequestExceptionWhenGetAllBooksWithMalformedCursor() {
+        assertThrows(InvalidRequestException.class, () -> bookService.getAll("not-a-cursor!", 10));
+        verify(bookRepository, never()).findIdsAfter(any(), any());
+    }
+
+    @Test
+    void shouldReturnBooksInOrderOfRankWhenSearch() {
+
+        var books = easyRandom.objects(Book.class, 3).toList();
+        var results = List.of(
+                new BookSearchResult(books.get(2).getId(), 0.9f),
+                new BookSearchResult(books.get(0).getId(), 0.5f),
+                new BookSearchResult(books.get(1).getId(), 0.1f));
+        var ids = results.stream().map(BookSearchResult::id).toList();
+
+        when(bookRepository.search("tolkien", null, 3)).thenReturn(results);
+        when(bookViewRepository.findAllById(ids.subList(0, 2))).thenReturn(views(List.of(books.get(0), books.get(2))));
+
+        var pageReceived = bookService.search("tolkien", null, 2);
+        assertEquals(BookResponseDTO.fromBooks(List.of(books.get(2), books.get(0))), pageReceived.getContent());
+        assertEquals(PageCursor.of(0.5f, books.get(0).getId()).encode(), pageReceived.getNext());
+
+        verify(bookRepository, times(1)).search("tolkien", null, 3);
+    }
+
+    @Test
+    void shouldSearchAfterCursorWhenSearch() {
+
+        var cursor = PageCursor.of(0.5f, 8L).encode();
+
+        when(bookRepository.search(any(), any(), anyInt())).thenReturn(Collections.emptyList());
+
+        var pageReceived = bookService.search("tolkien", cursor, 2);
+        assertTrue(pageReceived.getContent().isEmpty());
+        assertNull(pageReceived.getNext());
+
+        verify(bookRepository, times(1)).search("tolkien", new BookSearchResult(8L, 0.5f), 3);
+        verify(bookViewRepository, never()).findAllById(any());
+    }
+
+    @Test
+    void shouldThrowInvalidRequestExceptionWhenSearchByBlankQuery() {
+        assertThrows(InvalidRequestException.class, () -> bookService.search(" ", null, 10));
+        verify(bookRepository, never()).search(any(), any(), anyInt());
+    }
 
-        when(bookRepository.findAll()).thenReturn(books);
+    @Test
+    void shouldReturnPageOfBooksResponseDTOInOrderOfKeysWhenQuery() {
+
+        var query = new BookQueryDTO(LocalDate.of(2000, 1, 1), null, 100, 500, null, null, "test-author", null);
+
+        var books = easyRandom.objects(Book.class, 3).toList();
+        var keys = books.reversed()
+                .stream()
+                .map(book -> new BookSortKey(book.getId(), book.getTotalPages()))
+                .toList();
+
+        when(bookRepository.findKeys(any(), eq(BookSort.TOTAL_PAGES), eq(true), isNull(), eq(51))).thenReturn(keys);
+        when(bookViewRepository.findAllById(anyList())).thenReturn(views(books));
+
+        var page = bookService.query(query, "totalPages,desc", null, null);
+        assertEquals(BookResponseDTO.fromBooks(books.reversed()), page.getContent());
+        assertNull(page.getNext());
+
+        verify(bookRepository, times(1)).findKeys(notNull(), eq(BookSort.TOTAL_PAGES), eq(true), isNull(), eq(51));
+        verify(bookViewRepository, times(1)).findAllById(keys.stream().map(BookSortKey::id).toList());
+    }
+
+    @Test
+    void shouldThrowInvalidRequestExceptionWhenQueryWithReversedRange() {
+
+        var reversedPublishedAt = new BookQueryDTO(LocalDate.of(2000, 1, 2), LocalDate.of(2000, 1, 1), null, null, null, null, null, null);
+        var reversedTotalPages = new BookQueryDTO(null, null, 500, 100, null, null, null, null);
 
-        var booksReceived = bookService.getAll();
-        assertEquals(booksDTO, booksReceived);
+        assertThrows(InvalidRequestException.class, () -> bookService.query(reversedPublishedAt, null, null, null));
+        assertThrows(InvalidRequestException.class, () -> bookService.query(reversedTotalPages, null, null, null));
 
-        verify(bookRepository, times(1)).findAll();
+        verify(bookRepository, never()).findKeys(any(), any(), anyBoolean(), any(), anyInt());
     }
 
     @Test
@@ -48,12 +192,33 @@ class BookServiceTest {
         var book = easyRandom.nextObject(Book.class);
         var bookDTO = BookResponseDTO.fromBook(book);
 
-        when(bookRepository.findById(book.getId())).thenReturn(Optional.of(book));
+        when(bookViewRepository.findById(book.getId())).thenReturn(Optional.of(BookView.fromBook(book)));
 
         var bookReceived = bookService.getById(book.getId());
         assertEquals(bookDTO, bookReceived);
 
-        verify(bookRepository, times(1)).findById(book.getId());
+        verify(bookViewRepository, times(1)).findById(book.getId());
+    }
+
+    @Test
+    void shouldReturnCachedBookResponseDTOWhenGetBookByIdAndByTitle() {
+
+        var book = easyRandom.nextObject(Book.class);
+
+        when(bookViewRepository.findById(book.getId())).thenReturn(Optional.of(BookView.fromBook(book)));
+
+        var bookReceived = bookService.getById(book.getId());
+        var bookReceivedAgain = bookService.getById(book.getId());
+        var bookReceivedByTitle = bookService.getByTitle(book.getTitle());
+
+        var serializedBookReceived = bookService.getSerializedById(book.getId());
+
+        assertSame(bookReceived, bookReceivedAgain);
+        assertSame(bookReceived, bookReceivedByTitle);
+        assertSame(bookReceived, serializedBookReceived.book());
+
+        verify(bookViewRepository, times(1)).findById(book.getId());
+        verify(bookViewRepository, never()).findFirstByTitleOrderByIdAsc(any());
     }
 
     @Test
@@ -61,12 +226,12 @@ class BookServiceTest {
 
         var bookId = 32L;
 
-        when(bookRepository.findById(bookId)).thenReturn(Optional.empty());
+        when(bookViewRepository.findById(bookId)).thenReturn(Optional.empty());
 
         var bookReceived = bookService.getById(bookId);
         assertNull(bookReceived);
 
-        verify(bookRepository, times(1)).findById(bookId);
+        verify(bookViewRepository, times(1)).findById(bookId);
     }
 
     @Test
@@ -75,12 +240,26 @@ class BookServiceTest {
         var book = easyRandom.nextObject(Book.class);
         var bookDTO = BookResponseDTO.fromBook(book);
 
-        when(bookRepository.findByTitle(book.getTitle())).thenReturn(Optional.of(book));
+        when(bookViewRepository.findFirstByTitleOrderByIdAsc(book.getTitle())).thenReturn(Optional.of(BookView.fromBook(book)));
 
         var bookReceived = bookService.getByTitle(book.getTitle());
         assertEquals(bookDTO, bookReceived);
 
-        verify(bookRepository, times(1)).findByTitle(book.getTitle());
+        verify(bookViewRepository, times(1)).findFirstByTitleOrderByIdAsc(book.getTitle());
+    }
+
+    @Test
+    void shouldReturnBookVersionWhenGetVersionById() {
+
+        var bookVersion = new BookVersion(14L, 2L, LocalDateTime.now());
+
+        when(bookRepository.findVersionById(bookVersion.id())).thenReturn(Optional.of(bookVersion));
+
+        var bookVersionReceived = bookService.getVersionById(bookVersion.id());
+        assertEquals(bookVersion, bookVersionReceived);
+
+        verify(bookRepository, times(1)).findVersionById(bookVersion.id());
+        verify(bookViewRepository, never()).findById(any());
     }
 
     @Test
@@ -104,6 +283,37 @@ class BookServiceTest {
         verify(bookRepository, times(1)).saveCascading(book);
     }
 
+    @Test
+    void shouldReturnIdsOfCreatedBooksWhenCreateAll() {
+
+        var booksRequest = easyRandom.objects(BookRequestDTO.class, 3).toList();
+
+        when(bookRepository.saveAllCascading(anyList())).thenAnswer(invocation -> {
+            List<Book> books = invocation.getArgument(0);
+            for (int i = 0; i < books.size(); i++) {
+                books.get(i).setId(100L + i);
+            }
+            return books;
+        });
+
+        var importReceived = bookService.createAll(booksRequest);
+        assertEquals(3, importReceived.getImported());
+        assertEquals(List.of(100L, 101L, 102L), importReceived.getIds());
+
+        verify(bookRepository, times(1)).saveAllCascading(argThat(books -> books.size() == 3
+                && books.stream().allMatch(book -> book.isNew() && book.getAddedAt() != null)));
+    }
+
+    @Test
+    void shouldThrowExceptionWhenCreateAllWithTooManyBooks() {
+
+        var booksRequest = Collections.nCopies(10_001, easyRandom.nextObject(BookRequestDTO.class));
+
+        assertThrows(InvalidRequestException.class, () -> bookService.createAll(booksRequest));
+
+        verify(bookRepository, never()).saveAllCascading(anyList());
+    }
+
     @Test
     void shouldReturnBookResponseDTOWhenUpdateBook() {
 
@@ -122,14 +332,16 @@ class BookServiceTest {
         bookNew.setId(bookId);
         var bookResponse = BookResponseDTO.fromBook(bookNew);
         
-        when(bookRepository.findById(bookId)).thenReturn(Optional.of(bookCurrent));
-        when(bookRepository.save(bookNew)).thenReturn(bookNew);
+        when(bookRepository.findWithAssociationsById(bookId)).thenReturn(Optional.of(bookCurrent));
+        when(bookRepository.saveAndFlush(bookNew)).thenReturn(bookNew);
 
-        var bookReceived = bookService.update(bookId, bookRequest);
+        var bookReceived = bookService.update(bookId, bookRequest, null);
         assertEquals(bookResponse, bookReceived);
 
-        verify(bookRepository, times(1)).findById(bookId);
-        verify(bookRepository, times(1)).save(bookNew);
+        verify(bookRepository, times(1)).findWithAssociationsById(bookId);
+        verify(bookRepository, times(1)).saveAndFlush(bookNew);
+        verify(bookViewRepository, times(1)).updateWithoutLoading(argThat(view -> view.getId().equals(bookId)
+                && view.getTitle().equals(bookNew.getTitle())));
     }
 
     @Test
@@ -138,19 +350,154 @@ class BookServiceTest {
         var bookId = 97L;
         var bookRequest = easyRandom.nextObject(BookRequestDTO.class);
 
-        when(bookRepository.findById(bookId)).thenReturn(Optional.empty());
+        when(bookRepository.findWithAssociationsById(bookId)).thenReturn(Optional.empty());
 
-        assertThrows(EntityNotFoundException.class, () -> bookService.update(bookId, bookRequest));
+        assertThrows(EntityNotFoundException.class, () -> bookService.update(bookId, bookRequest, null));
 
-        verify(bookRepository, times(1)).findById(bookId);
-        verify(bookRepository, never()).save(any());
+        verify(bookRepository, times(1)).findWithAssociationsById(bookId);
+        verify(bookRepository, never()).saveAndFlush(any());
         verify(bookRepository, never()).saveCascading(any());
     }
 
     @Test
     void shouldDeleteBookWhenDeleteBookById() {
         var bookId = 97L;
-        bookService.deleteById(bookId);
+        bookService.deleteById(bookId, null);
         verify(bookRepository, times(1)).deleteById(bookId);
+        verify(bookViewRepository, times(1)).deleteWithoutLoadingById(bookId);
+    }
+
+    @Test
+    void shouldThrowOptimisticLockingFailureExceptionWhenUpdateBookWithOutdatedVersion() {
+
+        var bookId = 97L;
+
+        var bookCurrent = easyRandom.nextObject(Book.class);
+        bookCurrent.setId(bookId);
+        bookCurrent.setVersion(5L);
+
+        var bookRequest = easyRandom.nextObject(BookRequestDTO.class);
+
+        when(bookRepository.findWithAssociationsById(bookId)).thenReturn(Optional.of(bookCurrent));
+
+        assertThrows(OptimisticLockingFailureException.class, () -> bookService.update(bookId, bookRequest, 4L));
+
+        verify(bookRepository, times(1)).findWithAssociationsById(bookId);
+        verify(bookRepository, never()).saveAndFlush(any());
+    }
+
+    @Test
+    void shouldDeleteBookOfExpectedVersionWhenDeleteBookById() {
+
+        var book = easyRandom.nextObject(Book.class);
+        book.setVersion(5L);
+
+        when(bookRepository.findById(book.getId())).thenReturn(Optional.of(book));
+
+        bookService.deleteById(book.getId(), 5L);
+
+        verify(bookRepository, times(1)).delete(book);
+        verify(bookRepository, never()).deleteById(any());
+        verify(bookViewRepository, times(1)).deleteWithoutLoadingById(book.getId());
+    }
+
+    @Test
+    void shouldThrowOptimisticLockingFailureExceptionWhenDeleteBookByIdWithOutdatedVersion() {
+
+        var book = easyRandom.nextObject(Book.class);
+        book.setVersion(5L);
+
+        when(bookRepository.findById(book.getId())).thenReturn(Optional.of(book));
+
+        assertThrows(OptimisticLockingFailureException.class, () -> bookService.deleteById(book.getId(), 4L));
+
+        verify(bookRepository, never()).delete(any());
+        verify(bookRepository, never()).deleteById(any());
+        verify(bookViewRepository, never()).deleteWithoutLoadingById(any());
+    }
+
+    @Test
+    void shouldPatchBookWithoutLoadingItWhenPatch() {
+
+        var bookId = 97L;
+        var patch = BookPatchDTO.fromJson(JsonNodeFactory.instance.objectNode()
+                .put("title", "New title")
+                .put("totalPages", 215));
+
+        when(bookRepository.patch(bookId, patch.getFields(), 5L)).thenReturn(true);
+
+        bookService.patch(bookId, patch, 5L);
+
+        verify(bookRepository, times(1)).patch(bookId, patch.getFields(), 5L);
+        verify(bookRepository, never()).findById(any());
+        verify(bookRepository, never()).findWithAssociationsById(any());
+        verify(bookRepository, never()).save(any());
+    }
+
+    @Test
+    void shouldLoadBookByTitleWhenPatchAnotherBookWithCachedTitle() {
+
+        var book = easyRandom.nextObject(Book.class);
+        book.setId(50L);
+        var anotherBook = easyRandom.nextObject(Book.class);
+        anotherBook.setId(7L);
+        anotherBook.setTitle(book.getTitle());
+        var patch = BookPatchDTO.fromJson(JsonNodeFactory.instance.objectNode().put("title", book.getTitle()));
+
+        when(bookViewRepository.findById(book.getId())).thenReturn(Optional.of(BookView.fromBook(book)));
+        when(bookRepository.patch(anotherBook.getId(), patch.getFields(), 3L)).thenReturn(true);
+        when(bookViewRepository.findFirstByTitleOrderByIdAsc(book.getTitle())).thenReturn(Optional.of(BookView.fromBook(anotherBook)));
+
+        bookService.getById(book.getId());
+        bookService.patch(anotherBook.getId(), patch, 3L);
+        var bookReceivedByTitle = bookService.getByTitle(book.getTitle());
+
+        assertEquals(anotherBook.getId(), bookReceivedByTitle.getId());
+
+        verify(bookViewRepository, times(1)).findFirstByTitleOrderByIdAsc(book.getTitle());
+    }
+
+    @Test
+    void shouldThrowInvalidRequestExceptionWhenPatchWithInvalidValue() {
+
+        var bookId = 97L;
+        var patch = BookPatchDTO.fromJson(JsonNodeFactory.instance.objectNode()
+                .put("totalPages", 0));
+
+        assertThrows(InvalidRequestException.class, () -> bookService.patch(bookId, patch, null));
+
+        verify(bookRepository, never()).patch(any(), any(), any());
+    }
+
+    @Test
+    void shouldThrowEntityNotFoundExceptionWhenPatch() {
+
+        var bookId = 99L;
+        var patch = BookPatchDTO.fromJson(JsonNodeFactory.instance.objectNode()
+                .put("title", "New title"));
+
+        when(bookRepository.patch(bookId, patch.getFields(), null)).thenReturn(false);
+        when(bookRepository.findVersionById(bookId)).thenReturn(Optional.empty());
+
+        assertThrows(EntityNotFoundException.class, () -> bookService.patch(bookId, patch, null));
+    }
+
+    @Test
+    void shouldThrowOptimisticLockingFailureExceptionWhenPatchWithOutdatedVersion() {
+
+        var bookId = 97L;
+        var patch = BookPatchDTO.fromJson(JsonNodeFactory.instance.objectNode()
+                .put("title", "New title"));
+
+        when(bookRepository.patch(bookId, patch.getFields(), 4L)).thenReturn(false);
+        when(bookRepository.findVersionById(bookId)).thenReturn(Optional.of(new BookVersion(bookId, 5L, LocalDateTime.now())));
+
+        assertThrows(OptimisticLockingFailureException.class, () -> bookService.patch(bookId, patch, 4L));
+    }
+
+    private static List<BookView> views(List<Book> books) {
+        return books.stream()
+                .map(BookView::fromBook)
+                .toList();
     }
-}
\ No newline at end of file
+}
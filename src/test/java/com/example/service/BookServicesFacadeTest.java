@@ -1,16 +1,25 @@
 package com.example.service;
 
 import com.example.api.request.AuthorRequestDTO;
+import com.example.api.request.BookPatchDTO;
+import com.example.api.request.BookQueryDTO;
 import com.example.api.request.BookRequestDTO;
 import com.example.api.request.CategoryRequestDTO;
 import com.example.api.response.BookResponseDTO;
+import com.example.api.response.BulkImportResponseDTO;
+import com.example.api.response.PageResponseDTO;
+import com.example.cache.SerializedBookResponse;
 import com.example.model.Book;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import org.jeasy.random.EasyRandom;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.mockito.Mockito.*;
 
@@ -26,20 +35,59 @@ class BookServicesFacadeTest {
     private CategoryService categoryService;
     @MockitoBean
     private AuthorService authorService;
+    @MockitoBean
+    private BookExportService bookExportService;
 
     private final EasyRandom easyRandom = new EasyRandom();
 
     @Test
-    void shouldReturnCollectionOfBooksResponseDTOWhenGetAllBooks() {
+    void shouldReturnPageOfBooksResponseDTOWhenGetAllBooks() {
+
+        var books = easyRandom.objects(BookResponseDTO.class, 4).toList();
+        var page = new PageResponseDTO<>(books, "next-cursor");
+
+        when(bookService.getAll("cursor", 4)).thenReturn(page);
+
+        var pageReceived = bookServicesFacade.getAllBooks("cursor", 4);
+        assertSame(page, pageReceived);
+
+        verify(bookService, times(1)).getAll("cursor", 4);
+    }
+
+    @Test
+    void shouldReturnPageOfBooksResponseDTOWhenSearchBooks() {
 
         var books = easyRandom.objects(BookResponseDTO.class, 4).toList();
+        var page = new PageResponseDTO<>(books, "next-cursor");
 
-        when(bookService.getAll()).thenReturn(books);
+        when(bookService.search("tolkien", "cursor", 4)).thenReturn(page);
 
-        var booksReceived = bookServicesFacade.getAllBooks();
-        assertSame(books, booksReceived);
+        var pageReceived = bookServicesFacade.searchBooks("tolkien", "cursor", 4);
+        assertSame(page, pageReceived);
+
+        verify(bookService, times(1)).search("tolkien", "cursor", 4);
+    }
+
+    @Test
+    void shouldReturnPageOfBooksResponseDTOWhenQueryBooks() {
+
+        var query = new BookQueryDTO(null, null, 100, 500, null, null, "test-author", null);
+        var books = easyRandom.objects(BookResponseDTO.class, 4).toList();
+        var page = new PageResponseDTO<>(books, "next-cursor");
+
+        when(bookService.query(query, "totalPages", "cursor", 4)).thenReturn(page);
+
+        var pageReceived = bookServicesFacade.queryBooks(query, "totalPages", "cursor", 4);
+        assertSame(page, pageReceived);
+
+        verify(bookService, times(1)).query(query, "totalPages", "cursor", 4);
+    }
 
-        verify(bookService, times(1)).getAll();
+    @Test
+    void shouldExportBooksWhenExportBooks() throws IOException {
+        var outputStream = new ByteArrayOutputStream();
+        bookServicesFacade.exportBooks(BookExportFormat.CSV, outputStream);
+        verify(bookExportService, times(1)).export(BookExportFormat.CSV, outputStream);
     }
 
     @Test
@@ -69,31 +117,46 @@ class BookServicesFacadeTest {
     }
 
     @Test
-    void shouldReturnCollectionsOfBooksResponseDTOWhenGetBooksByCategory() {
+    void shouldReturnSerializedBookWhenGetSerializedBookById() {
+
+        var book = new SerializedBookResponse(easyRandom.nextObject(BookResponseDTO.class), new byte[] { '{', '}' }, new byte[0]);
+
+        when(bookService.getSerializedById(book.book().getId())).thenReturn(book);
+
+        var bookReceived = bookServicesFacade.getSerializedBookById(book.book().getId());
+        assertSame(book, bookReceived);
+
+        verify(bookService, times(1)).getSerializedById(book.book().getId());
+    }
+
+    @Test
+    void shouldReturnPageOfBooksResponseDTOWhenGetBooksByCategory() {
 
         var categoryName = "test-category";
         var books = easyRandom.objects(BookResponseDTO.class, 5).toList();
+        var page = new PageResponseDTO<>(books, "next-cursor");
 
-        when(categoryService.getBooksByCategoryName(categoryName)).thenReturn(books);
+        when(categoryService.getBooksByCategoryName(categoryName, "title", "cursor", 5)).thenReturn(page);
 
-        var booksReceived = bookServicesFacade.getBooksByCategory(categoryName);
-        assertSame(books, booksReceived);
+        var pageReceived = bookServicesFacade.getBooksByCategory(categoryName, "title", "cursor", 5);
+        assertSame(page, pageReceived);
 
-        verify(categoryService, times(1)).getBooksByCategoryName(categoryName);
+        verify(categoryService, times(1)).getBooksByCategoryName(categoryName, "title", "cursor", 5);
     }
 
     @Test
-    void shouldReturnCollectionsOfBooksResponseDTOWhenGetBooksByAuthor() {
+    void shouldReturnPageOfBooksResponseDTOWhenGetBooksByAuthor() {
 
         var authorName = "test-author";
         var books = easyRandom.objects(BookResponseDTO.class, 5).toList();
+        var page = new PageResponseDTO<>(books, "next-cursor");
 
-        when(authorService.getBooksByAuthorName(authorName)).thenReturn(books);
+        when(authorService.getBooksByAuthorName(authorName, "title", "cursor", 5)).thenReturn(page);
 
-        var booksReceived = bookServicesFacade.getBooksByAuthor(authorName);
-        assertSame(books, booksReceived);
+        var pageReceived = bookServicesFacade.getBooksByAuthor(authorName, "title", "cursor", 5);
+        assertSame(page, pageReceived);
 
-        verify(authorService, times(1)).getBooksByAuthorName(authorName);
+        verify(authorService, times(1)).getBooksByAuthorName(authorName, "title", "cursor", 5);
     }
 
     @Test
@@ -110,6 +173,20 @@ class BookServicesFacadeTest {
         verify(bookService, times(1)).create(bookRequest);
     }
 
+    @Test
+    void shouldReturnBulkImportResponseDTOWhenCreateBooks() {
+
+        var booksRequest = easyRandom.objects(BookRequestDTO.class, 3).toList();
+        var importResponse = easyRandom.nextObject(BulkImportResponseDTO.class);
+
+        when(bookService.createAll(booksRequest)).thenReturn(importResponse);
+
+        var importReceived = bookServicesFacade.createBooks(booksRequest);
+        assertSame(importResponse, importReceived);
+
+        verify(bookService, times(1)).createAll(booksRequest);
+    }
+
     @Test
     void shouldReturnBookResponseDTOWhenUpdateBook() {
 
@@ -118,19 +195,27 @@ class BookServicesFacadeTest {
         var bookRequest = easyRandom.nextObject(BookRequestDTO.class);
         var bookResponse = easyRandom.nextObject(BookResponseDTO.class);
 
-        when(bookService.update(bookId, bookRequest)).thenReturn(bookResponse);
+        when(bookService.update(bookId, bookRequest, null)).thenReturn(bookResponse);
 
-        var bookReceived = bookServicesFacade.updateBook(bookId, bookRequest);
+        var bookReceived = bookServicesFacade.updateBook(bookId, bookRequest, null);
         assertSame(bookResponse, bookReceived);
 
-        verify(bookService, times(1)).update(bookId, bookRequest);
+        verify(bookService, times(1)).update(bookId, bookRequest, null);
+    }
+
+    @Test
+    void shouldPatchBookWhenPatchBook() {
+        var bookId = 97L;
+        var bookPatch = BookPatchDTO.fromJson(JsonNodeFactory.instance.objectNode().put("totalPages", 300));
+        bookServicesFacade.patchBook(bookId, bookPatch, 3L);
+        verify(bookService, times(1)).patch(bookId, bookPatch, 3L);
     }
 
     @Test
     void shouldDeleteBookWhenDeleteBookById() {
         var bookId = 97L;
-        bookServicesFacade.deleteBookById(bookId);
-        verify(bookService, times(1)).deleteById(bookId);
+        bookServicesFacade.deleteBookById(bookId, null);
+        verify(bookService, times(1)).deleteById(bookId, null);
     }
 
     @Test
@@ -139,9 +224,9 @@ class BookServicesFacadeTest {
         var categoryDTO = easyRandom.nextObject(CategoryRequestDTO.class);
         var book = easyRandom.nextObject(Book.class);
 
-        bookServicesFacade.addCategoryToBook(book.getId(), categoryDTO);
+        bookServicesFacade.addCategoryToBook(book.getId(), categoryDTO, null);
 
-        verify(categoryService, times(1)).addCategoryToBook(book.getId(), categoryDTO);
+        verify(categoryService, times(1)).addCategoryToBook(book.getId(), categoryDTO, null);
     }
 
     @Test
@@ -152,9 +237,9 @@ class BookServicesFacadeTest {
         var book = easyRandom.nextObject(Book.class);
         book.addCategory(categoryDTO.toCategory());
 
-        bookServicesFacade.removeCategoryFromBook(book.getId(), categoryDTO);
+        bookServicesFacade.removeCategoryFromBook(book.getId(), categoryDTO, null);
 
-        verify(categoryService, times(1)).removeCategoryFromBook(book.getId(), categoryDTO);
+        verify(categoryService, times(1)).removeCategoryFromBook(book.getId(), categoryDTO, null);
     }
 
     @Test
@@ -163,9 +248,9 @@ class BookServicesFacadeTest {
         var categoriesDTO = easyRandom.objects(CategoryRequestDTO.class, 5).toList();
         var book = easyRandom.nextObject(Book.class);
 
-        bookServicesFacade.updateCategoriesForBook(book.getId(), categoriesDTO);
+        bookServicesFacade.updateCategoriesForBook(book.getId(), categoriesDTO, null);
 
-        verify(categoryService, times(1)).updateCategoriesForBook(book.getId(), categoriesDTO);
+        verify(categoryService, times(1)).updateCategoriesForBook(book.getId(), categoriesDTO, null);
     }
 
     @Test
@@ -174,9 +259,9 @@ class BookServicesFacadeTest {
         var authorDTO = easyRandom.nextObject(AuthorRequestDTO.class);
         var book = easyRandom.nextObject(Book.class);
 
-        bookServicesFacade.addAuthorToBook(book.getId(), authorDTO);
+        bookServicesFacade.addAuthorToBook(book.getId(), authorDTO, null);
 
-        verify(authorService, times(1)).addAuthorToBook(book.getId(), authorDTO);
+        verify(authorService, times(1)).addAuthorToBook(book.getId(), authorDTO, null);
     }
 
     @Test
@@ -187,9 +272,9 @@ class BookServicesFacadeTest {
         var book = easyRandom.nextObject(Book.class);
         book.addAuthor(authorDTO.toAuthor());
 
-        bookServicesFacade.removeAuthorFromBook(book.getId(), authorDTO);
+        bookServicesFacade.removeAuthorFromBook(book.getId(), authorDTO, null);
 
-        verify(authorService, times(1)).removeAuthorFromBook(book.getId(), authorDTO);
+        verify(authorService, times(1)).removeAuthorFromBook(book.getId(), authorDTO, null);
     }
 
     @Test
@@ -198,8 +283,8 @@ class BookServicesFacadeTest {
         var authorsDTO = easyRandom.objects(AuthorRequestDTO.class, 5).toList();
         var book = easyRandom.nextObject(Book.class);
 
-        bookServicesFacade.updateAuthorsForBook(book.getId(), authorsDTO);
+        bookServicesFacade.updateAuthorsForBook(book.getId(), authorsDTO, null);
 
-        verify(authorService, times(1)).updateAuthorsForBook(book.getId(), authorsDTO);
+        verify(authorService, times(1)).updateAuthorsForBook(book.getId(), authorsDTO, null);
     }
 }
\ No newline at end of file
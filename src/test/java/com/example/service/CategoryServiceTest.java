@@ -1,22 +1,29 @@
 package com.example.service;
 
+import com.example.api.pagination.PageCursor;
 import com.example.api.request.CategoryRequestDTO;
+import com.example.api.request.InvalidRequestException;
 import com.example.api.response.BookResponseDTO;
 import com.example.model.Book;
+import com.example.model.BookView;
 import com.example.model.Category;
 import com.example.repository.BookRepository;
-import com.example.repository.CategoryRepository;
+import com.example.repository.BookSort;
+import com.example.repository.BookSortKey;
+import com.example.repository.BookVersion;
+import com.example.repository.BookViewRepository;
+import com.example.repository.JoinRowChange;
 import jakarta.persistence.EntityNotFoundException;
 import org.jeasy.random.EasyRandom;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 
-import java.util.ArrayList;
-import java.util.HashSet;
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
-import java.util.Set;
 import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -29,147 +36,186 @@ class CategoryServiceTest {
     @Autowired
     private CategoryService categoryService;
 
-    @MockitoBean
-    private CategoryRepository categoryRepository;
     @MockitoBean
     private BookRepository bookRepository;
 
+    @MockitoBean
+    private BookViewRepository bookViewRepository;
+
     private final EasyRandom easyRandom = new EasyRandom();
 
     @Test
-    void shouldReturnCollectionOfBooksResponseDTOWhenGetBooksByCategoryName() {
-
-        var category = easyRandom.nextObject(Category.class);
+    void shouldReturnPageOfBooksResponseDTOInOrderOfKeysWhenGetBooksByCategoryName() {
 
-        var books = easyRandom.objects(Book.class, 3).collect(Collectors.toSet());
-        for (var book : books) {
-            book.setCategories(easyRandom.objects(Category.class, 3).collect(Collectors.toSet()));
-            book.addCategory(category);
-        }
-
-        category.setBooks(books);
+        var categoryName = "test-category";
 
-        when(categoryRepository.findByName(category.getName())).thenReturn(Optional.of(category));
+        var books = easyRandom.objects(Book.class, 3).toList();
+        var keys = books.reversed()
+                .stream()
+                .map(book -> new BookSortKey(book.getId(), book.getTitle()))
+                .toList();
 
-        var booksExpected = BookResponseDTO.fromBooks(books);
+        when(bookRepository.findKeysByCategory(categoryName, BookSort.TITLE, true, null, 51)).thenReturn(keys);
+        when(bookViewRepository.findAllById(anyList())).thenReturn(views(books));
 
-        var booksReceived = categoryService.getBooksByCategoryName(category.getName());
-        assertNotNull(booksReceived);
-        assertEquals(booksExpected.size(), booksReceived.size());
-        assertEquals(booksExpected, new ArrayList<>(booksReceived));
+        var page = categoryService.getBooksByCategoryName(categoryName, "title,desc", null, null);
+        assertNotNull(page);
+        assertEquals(BookResponseDTO.fromBooks(books.reversed()), page.getContent());
+        assertNull(page.getNext());
 
-        verify(categoryRepository, times(1)).findByName(category.getName());
+        verify(bookRepository, times(1)).findKeysByCategory(categoryName, BookSort.TITLE, true, null, 51);
+        verify(bookViewRepository, times(1)).findAllById(keys.stream().map(BookSortKey::id).toList());
     }
 
     @Test
-    void shouldReturnEmptyCollectionWhenGetBooksByCategoryName() {
+    void shouldReturnPageWithNextCursorWhenGetBooksByCategoryName() {
 
         var categoryName = "test-category";
 
-        when(categoryRepository.findByName(anyString())).thenReturn(Optional.empty());
+        var books = easyRandom.objects(Book.class, 3).toList();
+        var keys = books.stream()
+                .map(book -> new BookSortKey(book.getId(), book.getPublishedAt()))
+                .toList();
+
+        when(bookRepository.findKeysByCategory(categoryName, BookSort.PUBLISHED_AT, false, null, 3)).thenReturn(keys);
+        when(bookViewRepository.findAllById(anyList())).thenReturn(views(books.subList(0, 2)));
+
+        var page = categoryService.getBooksByCategoryName(categoryName, "publishedAt", null, 2);
+        assertEquals(2, page.getContent().size());
+        assertNotNull(page.getNext());
 
-        var booksReceived = categoryService.getBooksByCategoryName(categoryName);
-        assertNotNull(booksReceived);
-        assertTrue(booksReceived.isEmpty());
+        // The next page starts after the last key of this one
+        var lastKey = keys.get(1);
+        when(bookRepository.findKeysByCategory(categoryName, BookSort.PUBLISHED_AT, false, lastKey, 3)).thenReturn(keys.subList(2, 3));
+        when(bookViewRepository.findAllById(List.of(books.get(2).getId()))).thenReturn(views(books.subList(2, 3)));
 
-        verify(categoryRepository, times(1)).findByName(categoryName);
+        var nextPage = categoryService.getBooksByCategoryName(categoryName, "publishedAt", page.getNext(), 2);
+        assertEquals(1, nextPage.getContent().size());
+        assertNull(nextPage.getNext());
+
+        verify(bookRepository, times(1)).findKeysByCategory(categoryName, BookSort.PUBLISHED_AT, false, lastKey, 3);
     }
 
     @Test
-    void shouldAddNewCategoryWhenAddCategoryToBook() {
-
-        var book = easyRandom.nextObject(Book.class);
-        var category = easyRandom.nextObject(Category.class);
+    void shouldReturnEmptyPageWhenGetBooksByCategoryName() {
 
-        when(bookRepository.findById(book.getId())).thenReturn(Optional.of(book));
+        var categoryName = "test-category";
 
-        var categoryDTO = CategoryRequestDTO.fromCategory(category);
+        when(bookRepository.findKeysByCategory(anyString(), any(), anyBoolean(), any(), anyInt())).thenReturn(List.of());
 
-        assertFalse(book.getCategories().contains(category));
-        categoryService.addCategoryToBook(book.getId(), categoryDTO);
-        assertTrue(book.getCategories().contains(category));
+        var page = categoryService.getBooksByCategoryName(categoryName, null, null, null);
+        assertNotNull(page);
+        assertTrue(page.getContent().isEmpty());
+        assertNull(page.getNext());
 
-        verify(bookRepository, times(1)).findById(book.getId());
-        verify(bookRepository, times(1)).saveCascading(book);
+        verify(bookRepository, times(1)).findKeysByCategory(categoryName, BookSort.ID, false, null, 51);
+        verify(bookViewRepository, never()).findAllById(any());
     }
 
     @Test
-    void shouldNotAddNewCategoryWhenAddCategoryToBook() {
+    void shouldThrowInvalidRequestExceptionWhenGetBooksByCategoryNameWithUnknownSortOrCursorOfAnotherSort() {
 
-        var category = easyRandom.nextObject(Category.class);
+        var categoryName = "test-category";
+        var cursorOfTitleSort = PageCursor.of("title,asc", "Some title", 5L).encode();
 
-        var book = easyRandom.nextObject(Book.class);
-        book.setCategories(new HashSet<>(Set.of(category)));
+        assertThrows(InvalidRequestException.class, () -> categoryService.getBooksByCategoryName(categoryName, "pages", null, null));
+        assertThrows(InvalidRequestException.class, () -> categoryService.getBooksByCategoryName(categoryName, "title,up", null, null));
+        assertThrows(InvalidRequestException.class, () -> categoryService.getBooksByCategoryName(categoryName, "publishedAt", cursorOfTitleSort, null));
 
-        when(bookRepository.findById(book.getId())).thenReturn(Optional.of(book));
+        verify(bookRepository, never()).findKeysByCategory(any(), any(), anyBoolean(), any(), anyInt());
+    }
 
-        var categoryDTO = CategoryRequestDTO.fromCategory(category);
+    @Test
+    void shouldAddNewCategoryWhenAddCategoryToBook() {
 
-        categoryService.addCategoryToBook(book.getId(), categoryDTO);
+        var bookId = 97L;
+        var categoryDTO = easyRandom.nextObject(CategoryRequestDTO.class);
 
-        verify(bookRepository, times(1)).findById(book.getId());
-        verify(bookRepository, never()).saveCascading(any());
+        when(bookRepository.addCategory(bookId, categoryDTO.getName(), null)).thenReturn(JoinRowChange.CHANGED);
+
+        categoryService.addCategoryToBook(bookId, categoryDTO, null);
+
+        verify(bookRepository, times(1)).addCategory(bookId, categoryDTO.getName(), null);
+        verify(bookRepository, never()).findVersionById(any());
+        verify(bookRepository, never()).findWithAssociationsById(any());
         verify(bookRepository, never()).saveCascading(any());
     }
 
     @Test
-    void shouldThrowEntityNotFoundExceptionWhenAddCategoryToBook() {
+    void shouldNotAddNewCategoryWhenAddCategoryToBook() {
 
-        var bookId = 99L;
+        var bookId = 97L;
         var categoryDTO = easyRandom.nextObject(CategoryRequestDTO.class);
 
-        when(bookRepository.findById(anyLong())).thenReturn(Optional.empty());
+        when(bookRepository.addCategory(bookId, categoryDTO.getName(), null)).thenReturn(JoinRowChange.UNCHANGED);
 
-        assertThrows(EntityNotFoundException.class, () -> categoryService.addCategoryToBook(bookId, categoryDTO));
+        categoryService.addCategoryToBook(bookId, categoryDTO, null);
 
-        verify(bookRepository, times(1)).findById(bookId);
-        verify(bookRepository, never()).saveCascading(any());
+        verify(bookRepository, times(1)).addCategory(bookId, categoryDTO.getName(), null);
+        verify(bookRepository, never()).findVersionById(any());
         verify(bookRepository, never()).saveCascading(any());
     }
 
     @Test
-    void shouldReturnTrueWhenRemoveCategoryFromBook() {
+    void shouldThrowOptimisticLockingFailureExceptionWhenAddCategoryToBookWithOutdatedVersion() {
 
-        var category = easyRandom.nextObject(Category.class);
+        var bookId = 97L;
+        var categoryDTO = easyRandom.nextObject(CategoryRequestDTO.class);
 
-        var book = easyRandom.nextObject(Book.class);
-        book.setCategories(new HashSet<>(Set.of(category)));
+        when(bookRepository.addCategory(bookId, categoryDTO.getName(), 4L)).thenReturn(JoinRowChange.BOOK_NOT_MATCHED);
+        when(bookRepository.findVersionById(bookId)).thenReturn(Optional.of(new BookVersion(bookId, 5L, LocalDateTime.now())));
 
-        when(bookRepository.findById(book.getId())).thenReturn(Optional.of(book));
+        assertThrows(OptimisticLockingFailureException.class, () -> categoryService.addCategoryToBook(bookId, categoryDTO, 4L));
 
-        var categoryDTO = CategoryRequestDTO.fromCategory(category);
+        verify(bookRepository, times(1)).addCategory(bookId, categoryDTO.getName(), 4L);
+        verify(bookRepository, times(1)).findVersionById(bookId);
+    }
 
-        assertTrue(book.getCategories().contains(category));
+    @Test
+    void shouldThrowEntityNotFoundExceptionWhenAddCategoryToBook() {
 
-        var result = categoryService.removeCategoryFromBook(book.getId(), categoryDTO);
-        assertTrue(result);
+        var bookId = 99L;
+        var categoryDTO = easyRandom.nextObject(CategoryRequestDTO.class);
 
-        assertFalse(book.getCategories().contains(category));
+        when(bookRepository.addCategory(bookId, categoryDTO.getName(), null)).thenReturn(JoinRowChange.BOOK_NOT_MATCHED);
+        when(bookRepository.findVersionById(bookId)).thenReturn(Optional.empty());
 
-        verify(bookRepository, times(1)).findById(book.getId());
-        verify(bookRepository, times(1)).saveCascading(book);
+        assertThrows(EntityNotFoundException.class, () -> categoryService.addCategoryToBook(bookId, categoryDTO, null));
+
+        verify(bookRepository, times(1)).addCategory(bookId, categoryDTO.getName(), null);
+        verify(bookRepository, times(1)).findVersionById(bookId);
     }
 
     @Test
-    void shouldReturnFalseWhenRemoveCategoryFromBook() {
+    void shouldReturnTrueWhenRemoveCategoryFromBook() {
 
-        var category = easyRandom.nextObject(Category.class);
+        var bookId = 97L;
+        var categoryDTO = easyRandom.nextObject(CategoryRequestDTO.class);
 
-        var book = easyRandom.nextObject(Book.class);
+        when(bookRepository.removeCategory(bookId, categoryDTO.getName(), null)).thenReturn(JoinRowChange.CHANGED);
 
-        when(bookRepository.findById(book.getId())).thenReturn(Optional.of(book));
+        var result = categoryService.removeCategoryFromBook(bookId, categoryDTO, null);
+        assertTrue(result);
 
-        var categoryDTO = CategoryRequestDTO.fromCategory(category);
+        verify(bookRepository, times(1)).removeCategory(bookId, categoryDTO.getName(), null);
+        verify(bookRepository, never()).findVersionById(any());
+        verify(bookRepository, never()).findWithAssociationsById(any());
+        verify(bookRepository, never()).saveCascading(any());
+    }
 
-        assertFalse(book.getCategories().contains(category));
+    @Test
+    void shouldReturnFalseWhenRemoveCategoryFromBook() {
 
-        var result = categoryService.removeCategoryFromBook(book.getId(), categoryDTO);
-        assertFalse(result);
+        var bookId = 97L;
+        var categoryDTO = easyRandom.nextObject(CategoryRequestDTO.class);
 
-        assertFalse(book.getCategories().contains(category));
+        when(bookRepository.removeCategory(bookId, categoryDTO.getName(), null)).thenReturn(JoinRowChange.UNCHANGED);
 
-        verify(bookRepository, times(1)).findById(book.getId());
-        verify(bookRepository, never()).saveCascading(any());
+        var result = categoryService.removeCategoryFromBook(bookId, categoryDTO, null);
+        assertFalse(result);
+
+        verify(bookRepository, times(1)).removeCategory(bookId, categoryDTO.getName(), null);
+        verify(bookRepository, never()).findVersionById(any());
     }
 
     @Test
@@ -178,13 +224,13 @@ class CategoryServiceTest {
         var bookId = 99L;
         var categoryDTO = easyRandom.nextObject(CategoryRequestDTO.class);
 
-        when(bookRepository.findById(anyLong())).thenReturn(Optional.empty());
+        when(bookRepository.removeCategory(bookId, categoryDTO.getName(), null)).thenReturn(JoinRowChange.BOOK_NOT_MATCHED);
+        when(bookRepository.findVersionById(bookId)).thenReturn(Optional.empty());
 
-        assertThrows(EntityNotFoundException.class, () -> categoryService.removeCategoryFromBook(bookId, categoryDTO));
+        assertThrows(EntityNotFoundException.class, () -> categoryService.removeCategoryFromBook(bookId, categoryDTO, null));
 
-        verify(bookRepository, times(1)).findById(bookId);
-        verify(bookRepository, never()).saveCascading(any());
-        verify(bookRepository, never()).saveCascading(any());
+        verify(bookRepository, times(1)).removeCategory(bookId, categoryDTO.getName(), null);
+        verify(bookRepository, times(1)).findVersionById(bookId);
     }
 
     @Test
@@ -194,15 +240,15 @@ class CategoryServiceTest {
 
         var book = easyRandom.nextObject(Book.class);
 
-        when(bookRepository.findById(book.getId())).thenReturn(Optional.of(book));
+        when(bookRepository.findWithAssociationsById(book.getId())).thenReturn(Optional.of(book));
 
         var categoriesDTO = CategoryRequestDTO.fromCategories(categories);
 
         assertTrue(book.getCategories().isEmpty());
-        categoryService.updateCategoriesForBook(book.getId(), categoriesDTO);
+        categoryService.updateCategoriesForBook(book.getId(), categoriesDTO, null);
         assertEquals(categories, book.getCategories());
 
-        verify(bookRepository, times(1)).findById(book.getId());
+        verify(bookRepository, times(1)).findWithAssociationsById(book.getId());
         verify(bookRepository, times(1)).saveCascading(book);
     }
 
@@ -212,12 +258,18 @@ class CategoryServiceTest {
         var bookId = 99L;
         var categoriesDTO = easyRandom.objects(CategoryRequestDTO.class, 4).toList();
 
-        when(bookRepository.findById(anyLong())).thenReturn(Optional.empty());
+        when(bookRepository.findWithAssociationsById(anyLong())).thenReturn(Optional.empty());
 
-        assertThrows(EntityNotFoundException.class, () -> categoryService.updateCategoriesForBook(bookId, categoriesDTO));
+        assertThrows(EntityNotFoundException.class, () -> categoryService.updateCategoriesForBook(bookId, categoriesDTO, null));
 
-        verify(bookRepository, times(1)).findById(bookId);
+        verify(bookRepository, times(1)).findWithAssociationsById(bookId);
         verify(bookRepository, never()).saveCascading(any());
         verify(bookRepository, never()).saveCascading(any());
     }
-}
\ No newline at end of file
+
+    private static List<BookView> views(List<Book> books) {
+        return books.stream()
+                .map(BookView::fromBook)
+                .toList();
+    }
+}
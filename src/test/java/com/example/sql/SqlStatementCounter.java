@@ -0,0 +1,117 @@
+package com.example.sql;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts SQL statements executed through a {@link DataSource} and rows read from their result sets, keeps the SQL as well.
+ * Works with plain JDK proxies around the JDBC objects, so the real driver and pool stay untouched.
+ */
+public class SqlStatementCounter {
+
+    private static final Set<String> EXECUTE_METHODS = Set.of(
+            "execute", "executeQuery", "executeUpdate", "executeLargeUpdate", "executeBatch", "executeLargeBatch");
+
+    private final AtomicLong statements = new AtomicLong();
+    private final AtomicLong rows = new AtomicLong();
+    private final Queue<String> statementsSql = new ConcurrentLinkedQueue<>();
+
+    public void reset() {
+        statements.set(0);
+        rows.set(0);
+        statementsSql.clear();
+    }
+
+    public long getStatements() {
+        return statements.get();
+    }
+
+    public long getRows() {
+        return rows.get();
+    }
+
+    // SQL of the executed statements in the order of execution, a batch is there once
+    public List<String> getStatementsSql() {
+        return List.copyOf(statementsSql);
+    }
+
+    public DataSource wrap(DataSource dataSource) {
+        return proxy(DataSource.class, dataSource, (method, args, result) -> {
+            if (result instanceof Connection connection) {
+                return wrapConnection(connection);
+            }
+            return result;
+        });
+    }
+
+    private Connection wrapConnection(Connection connection) {
+        return proxy(Connection.class, connection, (method, args, result) -> {
+            if (result instanceof Statement statement && Statement.class.isAssignableFrom(method.getReturnType())) {
+                // SQL of a prepared statement is given here, of a plain one - on execution
+                var sql = args != null && args.length > 0 && args[0] instanceof String preparedSql ? preparedSql : null;
+                return wrapStatement(method.getReturnType(), statement, sql);
+            }
+            return result;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T wrapStatement(Class<T> statementType, Object statement, String preparedSql) {
+        return proxy(statementType, (T) statement, (method, args, result) -> {
+            if (EXECUTE_METHODS.contains(method.getName())) {
+                statements.incrementAndGet();
+                var sql = args != null && args.length > 0 && args[0] instanceof String executedSql ? executedSql : preparedSql;
+                statementsSql.add(String.valueOf(sql));
+            }
+            if (result instanceof ResultSet resultSet) {
+                return wrapResultSet(resultSet);
+            }
+            return result;
+        });
+    }
+
+    private ResultSet wrapResultSet(ResultSet resultSet) {
+        return proxy(ResultSet.class, resultSet, (method, args, result) -> {
+            if (method.getName().equals("next") && Boolean.TRUE.equals(result)) {
+                rows.incrementAndGet();
+            }
+            return result;
+        });
+    }
+
+    private static <T> T proxy(Class<T> type, T target, AfterInvocation afterInvocation) {
+        var proxy = Proxy.newProxyInstance(SqlStatementCounter.class.getClassLoader(), new Class<?>[] { type },
+                (self, method, args) -> {
+                    // A proxy equals itself only, otherwise Spring can't match it with the DataSource of the transaction manager
+                    if (method.getName().equals("equals") && method.getParameterCount() == 1) {
+                        return self == args[0];
+                    }
+                    if (method.getName().equals("hashCode") && method.getParameterCount() == 0) {
+                        return System.identityHashCode(self);
+                    }
+                    Object result;
+                    try {
+                        result = method.invoke(target, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                    return afterInvocation.apply(method, args, result);
+                });
+        return type.cast(proxy);
+    }
+
+    @FunctionalInterface
+    private interface AfterInvocation {
+        Object apply(Method method, Object[] args, Object result);
+    }
+}
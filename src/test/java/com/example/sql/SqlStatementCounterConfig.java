@@ -0,0 +1,35 @@
+package com.example.sql;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+
+import javax.sql.DataSource;
+
+/**
+ * Import it into a test to route every JDBC call through a shared {@link SqlStatementCounter}.
+ */
+@TestConfiguration
+public class SqlStatementCounterConfig {
+
+    private static final SqlStatementCounter SQL_STATEMENT_COUNTER = new SqlStatementCounter();
+
+    @Bean
+    public SqlStatementCounter sqlStatementCounter() {
+        return SQL_STATEMENT_COUNTER;
+    }
+
+    // Static, so the post-processor is registered before the DataSource is created
+    @Bean
+    public static BeanPostProcessor sqlStatementCountingDataSourcePostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource) {
+                    return SQL_STATEMENT_COUNTER.wrap(dataSource);
+                }
+                return bean;
+            }
+        };
+    }
+}
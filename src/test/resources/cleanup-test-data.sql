@@ -0,0 +1,7 @@
+-- Data of the previous tests, the tests of a class share one context (and database)
+DELETE FROM book_view;
+DELETE FROM books_authors;
+DELETE FROM books_categories;
+DELETE FROM books;
+DELETE FROM authors;
+DELETE FROM categories;
@@ -0,0 +1,59 @@
+-- 5 books, each one with the same 3 authors and 3 categories
+
+INSERT INTO categories (id, name) VALUES (1, 'category-1');
+INSERT INTO categories (id, name) VALUES (2, 'category-2');
+INSERT INTO categories (id, name) VALUES (3, 'category-3');
+
+INSERT INTO authors (id, name) VALUES (1, 'author-1');
+INSERT INTO authors (id, name) VALUES (2, 'author-2');
+INSERT INTO authors (id, name) VALUES (3, 'author-3');
+
+INSERT INTO books (id, title, published_at, total_pages, added_at) VALUES (1, 'book-1', '2010-08-21', 100, '2024-12-02 13:57:27.0');
+INSERT INTO books (id, title, published_at, total_pages, added_at) VALUES (2, 'book-2', '2010-08-22', 200, '2024-12-02 13:57:27.0');
+INSERT INTO books (id, title, published_at, total_pages, added_at) VALUES (3, 'book-3', '2010-08-23', 300, '2024-12-02 13:57:27.0');
+INSERT INTO books (id, title, published_at, total_pages, added_at) VALUES (4, 'book-4', '2010-08-24', 400, '2024-12-02 13:57:27.0');
+INSERT INTO books (id, title, published_at, total_pages, added_at) VALUES (5, 'book-5', '2010-08-25', 500, '2024-12-02 13:57:27.0');
+
+INSERT INTO books_authors (book_id, author_id) VALUES (1, 1);
+INSERT INTO books_authors (book_id, author_id) VALUES (1, 2);
+INSERT INTO books_authors (book_id, author_id) VALUES (1, 3);
+INSERT INTO books_authors (book_id, author_id) VALUES (2, 1);
+INSERT INTO books_authors (book_id, author_id) VALUES (2, 2);
+INSERT INTO books_authors (book_id, author_id) VALUES (2, 3);
+INSERT INTO books_authors (book_id, author_id) VALUES (3, 1);
+INSERT INTO books_authors (book_id, author_id) VALUES (3, 2);
+INSERT INTO books_authors (book_id, author_id) VALUES (3, 3);
+INSERT INTO books_authors (book_id, author_id) VALUES (4, 1);
+INSERT INTO books_authors (book_id, author_id) VALUES (4, 2);
+INSERT INTO books_authors (book_id, author_id) VALUES (4, 3);
+INSERT INTO books_authors (book_id, author_id) VALUES (5, 1);
+INSERT INTO books_authors (book_id, author_id) VALUES (5, 2);
+INSERT INTO books_authors (book_id, author_id) VALUES (5, 3);
+
+INSERT INTO books_categories (book_id, category_id) VALUES (1, 1);
+INSERT INTO books_categories (book_id, category_id) VALUES (1, 2);
+INSERT INTO books_categories (book_id, category_id) VALUES (1, 3);
+INSERT INTO books_categories (book_id, category_id) VALUES (2, 1);
+INSERT INTO books_categories (book_id, category_id) VALUES (2, 2);
+INSERT INTO books_categories (book_id, category_id) VALUES (2, 3);
+INSERT INTO books_categories (book_id, category_id) VALUES (3, 1);
+INSERT INTO books_categories (book_id, category_id) VALUES (3, 2);
+INSERT INTO books_categories (book_id, category_id) VALUES (3, 3);
+INSERT INTO books_categories (book_id, category_id) VALUES (4, 1);
+INSERT INTO books_categories (book_id, category_id) VALUES (4, 2);
+INSERT INTO books_categories (book_id, category_id) VALUES (4, 3);
+INSERT INTO books_categories (book_id, category_id) VALUES (5, 1);
+INSERT INTO books_categories (book_id, category_id) VALUES (5, 2);
+INSERT INTO books_categories (book_id, category_id) VALUES (5, 3);
+
+-- Views of the books (see book_view), every book has the same authors and categories
+INSERT INTO book_view (id, title, published_at, total_pages, added_at, version, updated_at, authors, categories)
+SELECT id, title, published_at, total_pages, added_at, version, updated_at,
+       '[{"id":1,"name":"author-1"},{"id":2,"name":"author-2"},{"id":3,"name":"author-3"}]' FORMAT JSON,
+       '[{"id":1,"name":"category-1"},{"id":2,"name":"category-2"},{"id":3,"name":"category-3"}]' FORMAT JSON
+FROM books;
+
+-- Ids generated by the entities' sequences must not collide with the explicit ones above
+ALTER SEQUENCE categories_seq RESTART WITH 100;
+ALTER SEQUENCE authors_seq RESTART WITH 100;
+ALTER SEQUENCE books_seq RESTART WITH 100;
@@ -1,12 +1,12 @@
-INSERT INTO categories (name) VALUES ('category-1');
-INSERT INTO categories (name) VALUES ('category-2');
-INSERT INTO categories (name) VALUES ('category-3');
+INSERT INTO categories (id, name) VALUES (1, 'category-1');
+INSERT INTO categories (id, name) VALUES (2, 'category-2');
+INSERT INTO categories (id, name) VALUES (3, 'category-3');
 
-INSERT INTO authors (name) VALUES ('author-1');
-INSERT INTO authors (name) VALUES ('author-2');
-INSERT INTO authors (name) VALUES ('author-3');
+INSERT INTO authors (id, name) VALUES (1, 'author-1');
+INSERT INTO authors (id, name) VALUES (2, 'author-2');
+INSERT INTO authors (id, name) VALUES (3, 'author-3');
 
-INSERT INTO books (title, published_at, total_pages, added_at) values ('book-1', '2010-08-26', 2, '2024-12-02 13:57:27.0');
+INSERT INTO books (id, title, published_at, total_pages, added_at) values (1, 'book-1', '2010-08-26', 2, '2024-12-02 13:57:27.0');
 
 INSERT INTO books_authors (book_id, author_id) VALUES (1, 1);
 INSERT INTO books_authors (book_id, author_id) VALUES (1, 2);
@@ -15,3 +15,15 @@ INSERT INTO books_authors (book_id, author_id) VALUES (1, 3);
 INSERT INTO books_categories (book_id, category_id) VALUES (1, 1);
 INSERT INTO books_categories (book_id, category_id) VALUES (1, 2);
 INSERT INTO books_categories (book_id, category_id) VALUES (1, 3);
+
+-- Views of the books (see book_view), every book has the same authors and categories
+INSERT INTO book_view (id, title, published_at, total_pages, added_at, version, updated_at, authors, categories)
+SELECT id, title, published_at, total_pages, added_at, version, updated_at,
+       '[{"id":1,"name":"author-1"},{"id":2,"name":"author-2"},{"id":3,"name":"author-3"}]' FORMAT JSON,
+       '[{"id":1,"name":"category-1"},{"id":2,"name":"category-2"},{"id":3,"name":"category-3"}]' FORMAT JSON
+FROM books;
+
+-- Ids generated by the entities' sequences must not collide with the explicit ones above
+ALTER SEQUENCE categories_seq RESTART WITH 100;
+ALTER SEQUENCE authors_seq RESTART WITH 100;
+ALTER SEQUENCE books_seq RESTART WITH 100;